@@ -0,0 +1,295 @@
+package org.lucener;
+
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.index.IndexCommit;
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.store.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * result of a backup , and file level backup and restore of commits
+ * <p>
+ * index files are written once and never changed , so a file of the same name , length and checksum in the target
+ * is the same file and is kept . new files are hard linked when both sides are on a file system , else copied .
+ * segments_N is written last , so the target always holds a complete commit .
+ */
+public final class Backup {
+    /**
+     * files of the commit
+     */
+    private final int files;
+    /**
+     * files kept from the previous backup
+     */
+    private final int reused;
+    /**
+     * files hard linked
+     */
+    private final int linked;
+    /**
+     * files copied
+     */
+    private final int copied;
+    /**
+     * bytes copied
+     */
+    private final long copiedBytes;
+
+    private Backup(int files, int reused, int linked, int copied, long copiedBytes) {
+        this.files = files;
+        this.reused = reused;
+        this.linked = linked;
+        this.copied = copied;
+        this.copiedBytes = copiedBytes;
+    }
+
+    public int getFiles() {
+        return files;
+    }
+
+    public int getReused() {
+        return reused;
+    }
+
+    public int getLinked() {
+        return linked;
+    }
+
+    public int getCopied() {
+        return copied;
+    }
+
+    public long getCopiedBytes() {
+        return copiedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "Backup{files=" + files + ", reused=" + reused + ", linked=" + linked + ", copied=" + copied + ", copiedBytes=" + copiedBytes + '}';
+    }
+
+    /**
+     * write the files of the commit to the target , remove files of older commits from the target
+     *
+     * @param commit
+     * @param source directory of the commit
+     * @param target
+     * @return
+     * @throws IOException
+     */
+    static Backup transfer(IndexCommit commit, Directory source, Directory target) throws IOException {
+        Collection<String> names = commit.getFileNames();
+        String segments = commit.getSegmentsFileName();
+        List<String> files = new ArrayList<>(names.size());
+        for (String name : names) {
+            if (!name.equals(segments)) {
+                files.add(name);
+            }
+        }
+        Backup ret = copy(source, target, files);
+        int reused = ret.reused, linked = ret.linked, copied = ret.copied;
+        long bytes = ret.copiedBytes;
+        if (same(source, target, segments)) {
+            reused++;
+        } else {
+            deleteIfExists(target, segments);
+            Path from = path(source, segments);
+            Path to = path(target, segments);
+            if (from != null && to != null && link(from, to)) {
+                linked++;
+            } else {
+                // copied under a pending name , visible when complete
+                String pending = IndexFileNames.PENDING_SEGMENTS + segments.substring(IndexFileNames.SEGMENTS.length());
+                deleteIfExists(target, pending);
+                target.copyFrom(source, segments, pending, IOContext.READONCE);
+                target.sync(Collections.singleton(pending));
+                target.rename(pending, segments);
+                copied++;
+                bytes += source.fileLength(segments);
+            }
+        }
+        target.syncMetaData();
+        // index files of older commits
+        clean(target, new HashSet<>(names));
+        return new Backup(names.size(), reused, linked, copied, bytes);
+    }
+
+    /**
+     * hard link or copy files not in the target , copied files are synced
+     *
+     * @param source
+     * @param target
+     * @param names
+     * @return
+     * @throws IOException
+     */
+    static Backup copy(Directory source, Directory target, Collection<String> names) throws IOException {
+        int reused = 0, linked = 0, copied = 0;
+        long bytes = 0;
+        List<String> toSync = new ArrayList<>();
+        for (String name : names) {
+            if (same(source, target, name)) {
+                reused++;
+                continue;
+            }
+            deleteIfExists(target, name);
+            Path from = path(source, name);
+            Path to = path(target, name);
+            if (from != null && to != null && link(from, to)) {
+                linked++;
+            } else {
+                target.copyFrom(source, name, name, IOContext.READONCE);
+                toSync.add(name);
+                copied++;
+                bytes += source.fileLength(name);
+            }
+        }
+        target.sync(toSync);
+        return new Backup(names.size(), reused, linked, copied, bytes);
+    }
+
+    /**
+     * delete index files not kept
+     *
+     * @param target
+     * @param keep
+     * @throws IOException
+     */
+    static void clean(Directory target, Set<String> keep) throws IOException {
+        for (String name : target.listAll()) {
+            if (!keep.contains(name) && indexFile(name)) {
+                deleteIfExists(target, name);
+            }
+        }
+    }
+
+    /**
+     * latest commit of the directory
+     *
+     * @param dir
+     * @return
+     * @throws IOException
+     */
+    static IndexCommit latest(Directory dir) throws IOException {
+        SegmentInfos infos = SegmentInfos.readLatestCommit(dir);
+        return new IndexCommit() {
+            @Override
+            public String getSegmentsFileName() {
+                return infos.getSegmentsFileName();
+            }
+
+            @Override
+            public Collection<String> getFileNames() throws IOException {
+                return infos.files(true);
+            }
+
+            @Override
+            public Directory getDirectory() {
+                return dir;
+            }
+
+            @Override
+            public void delete() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public boolean isDeleted() {
+                return false;
+            }
+
+            @Override
+            public int getSegmentCount() {
+                return infos.size();
+            }
+
+            @Override
+            public long getGeneration() {
+                return infos.getGeneration();
+            }
+
+            @Override
+            public Map<String, String> getUserData() {
+                return infos.getUserData();
+            }
+        };
+    }
+
+    /**
+     * same file in both directories , by length and footer checksum
+     *
+     * @param source
+     * @param target
+     * @param name
+     * @return
+     */
+    private static boolean same(Directory source, Directory target, String name) {
+        try {
+            if (source.fileLength(name) != target.fileLength(name)) {
+                return false;
+            }
+            try (IndexInput a = source.openInput(name, IOContext.READONCE);
+                 IndexInput b = target.openInput(name, IOContext.READONCE)) {
+                return CodecUtil.retrieveChecksum(a) == CodecUtil.retrieveChecksum(b);
+            }
+        } catch (IOException e) {
+            // missing or not comparable
+            return false;
+        }
+    }
+
+    private static void deleteIfExists(Directory dir, String name) throws IOException {
+        try {
+            dir.deleteFile(name);
+        } catch (NoSuchFileException e) {
+            // new file
+        }
+    }
+
+    /**
+     * hard link
+     *
+     * @param from
+     * @param to
+     * @return false if links are not supported , or across file systems
+     */
+    private static boolean link(Path from, Path to) {
+        try {
+            Files.createLink(to, from);
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    /**
+     * path of the file on a file system directory , null if the directory is not a plain file system directory
+     *
+     * @param dir
+     * @param name
+     * @return
+     */
+    private static Path path(Directory dir, String name) {
+        Directory d = FilterDirectory.unwrap(dir);
+        if (d instanceof FSDirectory && !(dir instanceof NRTCachingDirectory && Arrays.asList(((NRTCachingDirectory) dir).listCachedFiles()).contains(name))) {
+            return ((FSDirectory) d).getDirectory().resolve(name);
+        }
+        return null;
+    }
+
+    /**
+     * file of a segment or a commit
+     *
+     * @param name
+     * @return
+     */
+    private static boolean indexFile(String name) {
+        return IndexFileNames.CODEC_FILE_PATTERN.matcher(name).matches() || name.startsWith(IndexFileNames.SEGMENTS);
+    }
+}
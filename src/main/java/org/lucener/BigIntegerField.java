@@ -16,5 +16,5 @@ public @interface BigIntegerField {
 
     boolean stored() default false;
 
-    //boolean sort() default false;
+    boolean sort() default false;
 }
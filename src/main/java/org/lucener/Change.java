@@ -0,0 +1,75 @@
+package org.lucener;
+
+/**
+ * a change in the history of an index with soft deletes
+ *
+ * @param <T>
+ */
+public final class Change<T> {
+    /**
+     * operation of a change
+     */
+    public enum Op {
+        /**
+         * add or update , the entity is the new version
+         */
+        INDEX,
+        /**
+         * delete , no entity
+         */
+        DELETE
+    }
+
+    /**
+     * operation
+     */
+    private final Op op;
+    /**
+     * sequence number , increasing in the order of writes
+     */
+    private final long seq;
+    /**
+     * doc id
+     */
+    private final String id;
+    /**
+     * entity of an index , null for a delete
+     */
+    private final T entity;
+
+    /**
+     * change
+     *
+     * @param op
+     * @param seq
+     * @param id
+     * @param entity
+     */
+    public Change(Op op, long seq, String id, T entity) {
+        this.op = op;
+        this.seq = seq;
+        this.id = id;
+        this.entity = entity;
+    }
+
+    public Op getOp() {
+        return op;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public T getEntity() {
+        return entity;
+    }
+
+    @Override
+    public String toString() {
+        return "Change{op=" + op + ", seq=" + seq + ", id='" + id + '\'' + ", entity=" + entity + '}';
+    }
+}
@@ -0,0 +1,64 @@
+package org.lucener;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.index.IndexFileNames;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+
+/**
+ * notify new commits of an index path , a commit is visible when its segments_N is created or renamed into place
+ * <p>
+ * events of a watch service may be late or lost , so this is a shortcut to polling and not a replacement .
+ */
+@Slf4j
+final class CommitWatcher implements Closeable {
+    /**
+     * watch service of the path
+     */
+    private final WatchService watch;
+
+    /**
+     * watch the path in a daemon thread
+     *
+     * @param name     name of the thread
+     * @param path     index path
+     * @param onCommit called for new commits
+     * @throws IOException
+     */
+    CommitWatcher(String name, Path path, Runnable onCommit) throws IOException {
+        watch = path.getFileSystem().newWatchService();
+        path.register(watch, StandardWatchEventKinds.ENTRY_CREATE);
+        Thread t = new Thread(() -> {
+            try {
+                while (true) {
+                    WatchKey key = watch.take();
+                    boolean commit = false;
+                    for (WatchEvent<?> e : key.pollEvents()) {
+                        Object context = e.context();
+                        commit |= e.kind() == StandardWatchEventKinds.OVERFLOW
+                                || context instanceof Path && ((Path) context).getFileName().toString().startsWith(IndexFileNames.SEGMENTS + "_");
+                    }
+                    if (commit) {
+                        onCommit.run();
+                    }
+                    if (!key.reset()) {
+                        return;
+                    }
+                }
+            } catch (ClosedWatchServiceException e) {
+                // closed
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "lucener-watch-" + name);
+        t.setDaemon(true);
+        t.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        watch.close();
+    }
+}
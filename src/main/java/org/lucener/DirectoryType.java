@@ -0,0 +1,72 @@
+package org.lucener;
+
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.store.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * directory of a persistent index
+ */
+public enum DirectoryType {
+    /**
+     * MMapDirectory
+     */
+    MMAP,
+    /**
+     * NRTCachingDirectory over MMapDirectory , small segments flushed for NRT stay in RAM until merged or committed
+     */
+    NRT_CACHING,
+    /**
+     * MMapDirectory with files of the preload extensions loaded into physical memory on open
+     */
+    MMAP_PRELOAD,
+    /**
+     * NIOFSDirectory , positional reads without mapping
+     */
+    NIO,
+    /**
+     * FileSwitchDirectory , stored fields under storedFieldsPath and others under the index path .
+     * files of compound segments stay under the index path . storedFieldsPath is required
+     */
+    FILE_SWITCH;
+
+    /**
+     * extensions of stored fields
+     */
+    private static final Set<String> STORED_FIELDS = new HashSet<>(Arrays.asList("fdt", "fdx", "fdm"));
+
+    /**
+     * open the directory
+     *
+     * @param path index path
+     * @param ian  index
+     * @return
+     * @throws IOException
+     */
+    Directory open(Path path, Index ian) throws IOException {
+        switch (this) {
+            case NRT_CACHING:
+                return new NRTCachingDirectory(new MMapDirectory(path), ian.nrtCacheMaxMergeSizeMB(), ian.nrtCacheMaxCachedMB());
+            case MMAP_PRELOAD:
+                Set<String> preload = new HashSet<>(Arrays.asList(ian.preload()));
+                MMapDirectory mmap = new MMapDirectory(path);
+                mmap.setPreload((name, context) -> preload.contains(IndexFileNames.getExtension(name)));
+                return mmap;
+            case NIO:
+                return new NIOFSDirectory(path);
+            case FILE_SWITCH:
+                if (ian.storedFieldsPath().isEmpty()) {
+                    throw new IllegalArgumentException("storedFieldsPath is required for FILE_SWITCH");
+                }
+                Path stored = path.getFileSystem().getPath(ian.storedFieldsPath());
+                return new FileSwitchDirectory(STORED_FIELDS, new MMapDirectory(stored), new MMapDirectory(path), true);
+            default:
+                return new MMapDirectory(path);
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package org.lucener;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import org.lucener.util.Mappers;
 
+import java.util.Map;
+
 /**
  * deserialize and serialize for doc
  */
@@ -22,6 +25,12 @@ public abstract class DocSerializable<T> {
      */
     public int shardIndex;
 
+    /**
+     * highlight snippets by field , only for query with highlights
+     */
+    @JsonIgnore
+    public Map<String, String> highlights;
+
     /**
      * serialize
      *
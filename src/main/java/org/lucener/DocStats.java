@@ -0,0 +1,31 @@
+package org.lucener;
+
+/**
+ * doc stats of an index , from the writer or from the reader of a read only lucener
+ */
+public final class DocStats {
+    /**
+     * docs including deleted docs not merged away yet
+     */
+    public final int maxDoc;
+    /**
+     * live docs
+     */
+    public final int numDocs;
+
+    /**
+     * doc stats
+     *
+     * @param maxDoc
+     * @param numDocs
+     */
+    DocStats(int maxDoc, int numDocs) {
+        this.maxDoc = maxDoc;
+        this.numDocs = numDocs;
+    }
+
+    @Override
+    public String toString() {
+        return "DocStats{maxDoc=" + maxDoc + ", numDocs=" + numDocs + '}';
+    }
+}
@@ -0,0 +1,168 @@
+package org.lucener;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.SimpleCollector;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * count terms of facet fields by segment ordinals
+ * <p>
+ * counts are kept in an int[] per segment and only the non-zero ordinals are
+ * resolved to terms and merged into the global counts when the segment is done .
+ * one collector counts a slice of the searcher , collectors of all slices are reduced to the result .
+ */
+final class FacetCollector extends SimpleCollector {
+
+    /**
+     * facet fields
+     */
+    private final String[] fields;
+    /**
+     * global counts for every field
+     */
+    private final List<Map<String, Long>> counts;
+    /**
+     * doc values for current segment
+     */
+    private final SortedSetDocValues[] multi;
+    /**
+     * single valued doc values for current segment
+     */
+    private final SortedDocValues[] single;
+    /**
+     * ordinal counts for current segment
+     */
+    private final int[][] segmentCounts;
+    /**
+     * docs collected
+     */
+    private long total;
+
+    FacetCollector(String... fields) {
+        this.fields = fields;
+        this.counts = new ArrayList<>(fields.length);
+        for (int i = 0; i < fields.length; i++) {
+            counts.add(new HashMap<>());
+        }
+        this.multi = new SortedSetDocValues[fields.length];
+        this.single = new SortedDocValues[fields.length];
+        this.segmentCounts = new int[fields.length][];
+    }
+
+    @Override
+    protected void doSetNextReader(LeafReaderContext context) throws IOException {
+        flush();
+        for (int i = 0; i < fields.length; i++) {
+            SortedSetDocValues dv = DocValues.getSortedSet(context.reader(), fields[i]);
+            single[i] = DocValues.unwrapSingleton(dv);
+            multi[i] = single[i] == null ? dv : null;
+            segmentCounts[i] = new int[(int) dv.getValueCount()];
+        }
+    }
+
+    @Override
+    public void collect(int doc) throws IOException {
+        total++;
+        for (int i = 0; i < fields.length; i++) {
+            int[] c = segmentCounts[i];
+            if (single[i] != null) {
+                if (single[i].advanceExact(doc)) {
+                    c[single[i].ordValue()]++;
+                }
+            } else if (multi[i].advanceExact(doc)) {
+                SortedSetDocValues dv = multi[i];
+                for (int j = 0, n = dv.docValueCount(); j < n; j++) {
+                    c[(int) dv.nextOrd()]++;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void finish() throws IOException {
+        flush();
+    }
+
+    @Override
+    public ScoreMode scoreMode() {
+        return ScoreMode.COMPLETE_NO_SCORES;
+    }
+
+    /**
+     * merge counts of current segment to global counts
+     *
+     * @throws IOException
+     */
+    private void flush() throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            int[] c = segmentCounts[i];
+            if (c == null) {
+                continue;
+            }
+            Map<String, Long> global = counts.get(i);
+            for (int ord = 0; ord < c.length; ord++) {
+                if (c[ord] > 0) {
+                    String term = (single[i] != null ? single[i].lookupOrd(ord) : multi[i].lookupOrd(ord)).utf8ToString();
+                    global.merge(term, (long) c[ord], Long::sum);
+                }
+            }
+            segmentCounts[i] = null;
+        }
+    }
+
+    /**
+     * top k terms for every field , counts of all collectors merged
+     *
+     * @param collectors collectors of the slices , done
+     * @param topK
+     * @return
+     */
+    static Map<String, FacetResult> reduce(Collection<FacetCollector> collectors, int topK) {
+        Iterator<FacetCollector> it = collectors.iterator();
+        FacetCollector first = it.next();
+        while (it.hasNext()) {
+            FacetCollector c = it.next();
+            first.total += c.total;
+            for (int i = 0; i < first.fields.length; i++) {
+                Map<String, Long> global = first.counts.get(i);
+                c.counts.get(i).forEach((term, n) -> global.merge(term, n, Long::sum));
+            }
+        }
+        return first.result(topK);
+    }
+
+    /**
+     * top k terms for every field
+     *
+     * @param topK
+     * @return
+     */
+    private Map<String, FacetResult> result(int topK) {
+        Map<String, FacetResult> ret = new LinkedHashMap<>();
+        Comparator<Map.Entry<String, Long>> cmp = Map.Entry.<String, Long>comparingByValue().thenComparing(Map.Entry.comparingByKey(Comparator.reverseOrder()));
+        for (int i = 0; i < fields.length; i++) {
+            PriorityQueue<Map.Entry<String, Long>> pq = new PriorityQueue<>(Math.max(1, topK), cmp);
+            for (Map.Entry<String, Long> e : counts.get(i).entrySet()) {
+                if (pq.size() < topK) {
+                    pq.add(e);
+                } else if (topK > 0 && cmp.compare(e, pq.peek()) > 0) {
+                    pq.poll();
+                    pq.add(e);
+                }
+            }
+            TermCount[] top = new TermCount[pq.size()];
+            for (int j = top.length - 1; j >= 0; j--) {
+                Map.Entry<String, Long> e = pq.poll();
+                top[j] = new TermCount(e.getKey(), e.getValue());
+            }
+            ret.put(fields[i], new FacetResult(fields[i], total, Arrays.asList(top)));
+        }
+        return ret;
+    }
+}
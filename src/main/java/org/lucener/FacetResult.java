@@ -0,0 +1,68 @@
+package org.lucener;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * facet result of a field
+ */
+public final class FacetResult {
+
+    /**
+     * facet field
+     */
+    private final String field;
+
+    /**
+     * total docs counted
+     */
+    private final long total;
+
+    /**
+     * top terms order by count desc
+     */
+    private final List<TermCount> counts;
+
+    /**
+     * result with field , total and top terms
+     *
+     * @param field
+     * @param total
+     * @param counts
+     */
+    public FacetResult(String field, long total, List<TermCount> counts) {
+        this.field = field;
+        this.total = total;
+        this.counts = counts == null ? Collections.emptyList() : counts;
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public List<TermCount> getCounts() {
+        return counts;
+    }
+
+    /**
+     * size of terms
+     *
+     * @return
+     */
+    public int size() {
+        return counts.size();
+    }
+
+    @Override
+    public String toString() {
+        return "FacetResult{" +
+                "field='" + field + '\'' +
+                ", total=" + total +
+                ", counts=" + counts +
+                '}';
+    }
+}
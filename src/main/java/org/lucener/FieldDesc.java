@@ -16,6 +16,8 @@ public class FieldDesc {
     private boolean end;
     private boolean index;
     private boolean justSize;
+    private boolean facet;
+    private boolean offsets;
 
     /**
      * construct
@@ -56,6 +58,43 @@ public class FieldDesc {
      * @param justSize
      */
     public FieldDesc(Field field, boolean collection, Class inner, boolean stored, boolean sort, boolean tokenized, boolean end, boolean index, boolean justSize) {
+        this(field, collection, inner, stored, sort, tokenized, end, index, justSize, false);
+    }
+
+    /**
+     * construct
+     *
+     * @param field
+     * @param collection
+     * @param inner
+     * @param stored
+     * @param sort
+     * @param tokenized
+     * @param end
+     * @param index
+     * @param justSize
+     * @param facet
+     */
+    public FieldDesc(Field field, boolean collection, Class inner, boolean stored, boolean sort, boolean tokenized, boolean end, boolean index, boolean justSize, boolean facet) {
+        this(field, collection, inner, stored, sort, tokenized, end, index, justSize, facet, false);
+    }
+
+    /**
+     * construct
+     *
+     * @param field
+     * @param collection
+     * @param inner
+     * @param stored
+     * @param sort
+     * @param tokenized
+     * @param end
+     * @param index
+     * @param justSize
+     * @param facet
+     * @param offsets
+     */
+    public FieldDesc(Field field, boolean collection, Class inner, boolean stored, boolean sort, boolean tokenized, boolean end, boolean index, boolean justSize, boolean facet, boolean offsets) {
         this.field = field;
         this.collection = collection;
         this.inner = inner;
@@ -65,6 +104,8 @@ public class FieldDesc {
         this.end = end;
         this.index = index;
         this.justSize = justSize;
+        this.facet = facet;
+        this.offsets = offsets;
     }
 
     public boolean isCollection() {
@@ -108,6 +149,24 @@ public class FieldDesc {
         return justSize;
     }
 
+    /**
+     * term doc values for faceting
+     *
+     * @return
+     */
+    public boolean isFacet() {
+        return facet;
+    }
+
+    /**
+     * offsets in postings for highlighting
+     *
+     * @return
+     */
+    public boolean isOffsets() {
+        return offsets;
+    }
+
     @Override
     public String toString() {
         return field.getName();
@@ -0,0 +1,80 @@
+package org.lucener;
+
+/**
+ * how to fuse lexical and vector results of a hybrid query
+ */
+public final class Fusion {
+
+    /**
+     * reciprocal rank fusion or weighted scores
+     */
+    private final boolean rrf;
+
+    /**
+     * rank constant for reciprocal rank fusion
+     */
+    private final int rankConstant;
+
+    /**
+     * weight of the lexical score for weighted fusion , the vector score weights 1 - lexicalWeight
+     */
+    private final float lexicalWeight;
+
+    private Fusion(boolean rrf, int rankConstant, float lexicalWeight) {
+        this.rrf = rrf;
+        this.rankConstant = rankConstant;
+        this.lexicalWeight = lexicalWeight;
+    }
+
+    /**
+     * reciprocal rank fusion with rank constant 60
+     *
+     * @return
+     */
+    public static Fusion rrf() {
+        return rrf(60);
+    }
+
+    /**
+     * reciprocal rank fusion , score = sum of 1 / (rankConstant + rank)
+     *
+     * @param rankConstant
+     * @return
+     */
+    public static Fusion rrf(int rankConstant) {
+        if (rankConstant < 1) {
+            throw new IllegalArgumentException("rank constant should be positive");
+        }
+        return new Fusion(true, rankConstant, 0);
+    }
+
+    /**
+     * weighted fusion of min-max normalized scores
+     *
+     * @param lexicalWeight weight of lexical score in [0, 1]
+     * @return
+     */
+    public static Fusion weighted(float lexicalWeight) {
+        if (lexicalWeight < 0 || lexicalWeight > 1) {
+            throw new IllegalArgumentException("lexical weight should be in [0, 1]");
+        }
+        return new Fusion(false, 0, lexicalWeight);
+    }
+
+    public boolean isRrf() {
+        return rrf;
+    }
+
+    public int getRankConstant() {
+        return rankConstant;
+    }
+
+    public float getLexicalWeight() {
+        return lexicalWeight;
+    }
+
+    @Override
+    public String toString() {
+        return rrf ? "rrf(" + rankConstant + ")" : "weighted(" + lexicalWeight + ")";
+    }
+}
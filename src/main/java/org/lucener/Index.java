@@ -57,4 +57,199 @@ public @interface Index {
      * @return
      */
     boolean ikSmart() default false;
+
+    /**
+     * shards of the index , more than 1 for ShardedLucener
+     *
+     * @return
+     */
+    int shards() default 1;
+
+    /**
+     * indexed LongField of epoch millis , not empty for PartitionedLucener
+     *
+     * @return
+     */
+    String partitionField() default "";
+
+    /**
+     * time partition of PartitionedLucener
+     *
+     * @return
+     */
+    Partition partition() default Partition.DAY;
+
+    /**
+     * max staleness in millis of searchers for managed refresh by a background reopen thread ,
+     * 0 for manual refresh by maybeRefresh
+     *
+     * @return
+     */
+    long maxStaleMillis() default 0;
+
+    /**
+     * min staleness in millis of searchers for managed refresh , when some request is waiting for a generation
+     *
+     * @return
+     */
+    long minStaleMillis() default 25;
+
+    /**
+     * write ahead log for writes between commits , replayed on open . needs persistence
+     *
+     * @return
+     */
+    boolean translog() default false;
+
+    /**
+     * fsync the translog every interval in millis , 0 to fsync before index returns with concurrent writes batched
+     *
+     * @return
+     */
+    long translogSyncMillis() default 0;
+
+    /**
+     * commit in background at most every interval in millis , 0 for no interval
+     *
+     * @return
+     */
+    long commitIntervalMillis() default 0;
+
+    /**
+     * commit in background when the translog is larger than the bytes , 0 for no limit
+     *
+     * @return
+     */
+    long commitBytes() default 0;
+
+    /**
+     * commit in background when the translog has more ops , 0 for no limit
+     *
+     * @return
+     */
+    long commitOps() default 0;
+
+    /**
+     * directory of a persistent index
+     *
+     * @return
+     */
+    DirectoryType directory() default DirectoryType.MMAP;
+
+    /**
+     * extensions of files to preload for MMAP_PRELOAD , doc values , terms , points and norms by default
+     *
+     * @return
+     */
+    String[] preload() default {"dvd", "dvm", "tim", "tip", "tmd", "kdd", "kdi", "kdm", "nvd", "nvm"};
+
+    /**
+     * max size of a flushed or merged segment cached in RAM for NRT_CACHING
+     *
+     * @return
+     */
+    double nrtCacheMaxMergeSizeMB() default 5;
+
+    /**
+     * max RAM of cached segments for NRT_CACHING
+     *
+     * @return
+     */
+    double nrtCacheMaxCachedMB() default 60;
+
+    /**
+     * path for stored fields of FILE_SWITCH , required , on another disk than the index path and not shared
+     * with other indexes
+     *
+     * @return
+     */
+    String storedFieldsPath() default "";
+
+    /**
+     * keep a non persistent index in direct buffers out of the heap instead of heap byte arrays
+     *
+     * @return
+     */
+    boolean offHeap() default false;
+
+    /**
+     * max MB of an off heap index , 0 for no limit
+     *
+     * @return
+     */
+    long offHeapMaxMB() default 0;
+
+    /**
+     * move files to a temp directory on disk when the off heap limit is exceeded , or writes fail
+     *
+     * @return
+     */
+    boolean offHeapSpill() default false;
+
+    /**
+     * replica path the writer publishes refreshed segments to , for read only luceners of other processes ,
+     * empty for no replica . not supported by sharded and partitioned indexes
+     *
+     * @return
+     */
+    String replicaPath() default "";
+
+    /**
+     * millis between publishes to the replica path , 0 for publish on demand only
+     *
+     * @return
+     */
+    long replicaPublishMillis() default 1000;
+
+    /**
+     * millis between checks of a read only lucener for new commits , besides notifications of the file system ,
+     * 0 for notifications only
+     *
+     * @return
+     */
+    long readOnlyRefreshMillis() default 1000;
+
+    /**
+     * soft deletes with a sequence number on every write , deleted and replaced documents are kept as the history
+     * of changes , for changesSince
+     *
+     * @return
+     */
+    boolean softDeletes() default false;
+
+    /**
+     * latest operations kept in the history of changes , older deleted and replaced documents are removed by merges
+     *
+     * @return
+     */
+    long changesRetainOps() default 100000;
+
+    /**
+     * millis between purges of expired docs , for a class with a Ttl field , 0 for purge on demand only
+     *
+     * @return
+     */
+    long ttlPurgeMillis() default 60000;
+
+    /**
+     * expired docs deleted in one batch of a purge
+     *
+     * @return
+     */
+    int ttlPurgeBatch() default 1000;
+
+    /**
+     * max expired docs deleted per second by a purge , 0 for no limit
+     *
+     * @return
+     */
+    int ttlPurgeDocsPerSec() default 10000;
+
+    /**
+     * delete segments whose docs are all expired at once before the batches , the writer drops them without merging ,
+     * not for soft deletes
+     *
+     * @return
+     */
+    boolean ttlDropSegments() default false;
 }
@@ -1,38 +1,58 @@
 package org.lucener;
 
+import lombok.extern.slf4j.Slf4j;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.codecs.KnnVectorsFormat;
+import org.apache.lucene.codecs.lucene99.Lucene99Codec;
+import org.apache.lucene.codecs.lucene99.Lucene99HnswScalarQuantizedVectorsFormat;
+import org.apache.lucene.codecs.lucene99.Lucene99HnswVectorsFormat;
 import org.apache.lucene.document.*;
 import org.apache.lucene.index.*;
+import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.sandbox.document.BigIntegerPoint;
 import org.apache.lucene.search.*;
+import org.apache.lucene.search.uhighlight.UnifiedHighlighter;
 import org.apache.lucene.store.ByteBuffersDirectory;
 import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.Lock;
+import org.apache.lucene.store.LockObtainFailedException;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.IOFunction;
+import org.apache.lucene.util.IOSupplier;
+import org.apache.lucene.util.IOUtils;
 import org.apache.lucene.util.NumericUtils;
 import org.wltea.analyzer.lucene.IKAnalyzer;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.ParameterizedType;
 import java.math.BigInteger;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Collectors;
 
 
 /**
  * representation for lucene index of type T
  */
-public class Lucener<T extends DocSerializable<T>> {
-    /**
-     * all representation
-     */
-    private static final Map<Class<? extends DocSerializable>, Lucener<? extends DocSerializable>> knownIndex;
+@Slf4j
+public class Lucener<T extends DocSerializable<T>> implements Closeable {
     /**
      * the directory
      */
@@ -41,6 +61,14 @@ public class Lucener<T extends DocSerializable<T>> {
      * analyzer for faceting
      */
     private final Analyzer defaultAnalyzer;
+    /**
+     * per field analyzer for index and query
+     */
+    private final Analyzer analyzer;
+    /**
+     * parsed query string cache
+     */
+    private final Map<String, Query> parsedQueries;
     /**
      * writer
      */
@@ -49,6 +77,38 @@ public class Lucener<T extends DocSerializable<T>> {
      * manager for refresh and search
      */
     private final SearcherManager searcherManager;
+    /**
+     * background reopen for managed refresh , null for manual refresh
+     */
+    private final ControlledRealTimeReopenThread<IndexSearcher> reopenThread;
+    /**
+     * write ahead log for writes between commits , null if not enabled
+     */
+    private final Translog translog;
+    /**
+     * writes hold the read lock , commit holds the write lock to roll the translog
+     */
+    private final ReadWriteLock translogLock;
+    /**
+     * fsync the translog before index returns , or by the scheduler
+     */
+    private final boolean syncEveryWrite;
+    /**
+     * background commit and translog sync , null if not required
+     */
+    private final ScheduledExecutorService scheduler;
+    /**
+     * time of last commit in millis
+     */
+    private volatile long lastCommit;
+    /**
+     * ops replayed from translog on open
+     */
+    private final long replayed;
+    /**
+     * closed or not
+     */
+    private final AtomicBoolean closed = new AtomicBoolean();
     /**
      * index file path
      */
@@ -61,14 +121,74 @@ public class Lucener<T extends DocSerializable<T>> {
      * id field
      */
     private FieldDesc docId;
+    /**
+     * expiry field , null if the class has no Ttl field
+     */
+    private Field ttl;
     /**
      * all fields that contain fields and sub-fields
      */
     private final Map<String, List<FieldDesc>> allFields;
+    /**
+     * field type of vector fields
+     */
+    private final Map<String, FieldType> vectorTypes;
     /**
      * type
      */
     private final Class<? extends DocSerializable> type;
+    /**
+     * writer settings applied
+     */
+    private volatile WriterSettings writerSettings;
+    /**
+     * watcher of new commits for read only , null if not read only
+     */
+    private final CommitWatcher watcher;
+    /**
+     * publisher to the replica path , null if no replica
+     */
+    private final ReplicaPublisher publisher;
+    /**
+     * commits held for backups
+     */
+    private final SnapshotDeletionPolicy snapshotPolicy;
+    /**
+     * codec of the writer
+     */
+    private final Codec codec;
+    /**
+     * persist to disk or not
+     */
+    private final boolean persistence;
+    /**
+     * sequence numbers of the history of changes , null if soft deletes are not enabled
+     */
+    private final SeqTracker changeSeq;
+    /**
+     * latest operations kept in the history of changes
+     */
+    private final long changesRetainOps;
+    /**
+     * periodic purge of expired docs , null if no Ttl field or purge on demand only
+     */
+    private final ScheduledExecutorService purgeScheduler;
+    /**
+     * expired docs deleted in one batch
+     */
+    private final int purgeBatch;
+    /**
+     * max expired docs deleted per second , 0 for no limit
+     */
+    private final int purgeDocsPerSec;
+    /**
+     * delete fully expired segments at once
+     */
+    private final boolean dropExpiredSegments;
+    /**
+     * one purge at a time
+     */
+    private final Object purgeLock = new Object();
     /**
      * root path for index directory
      */
@@ -77,12 +197,57 @@ public class Lucener<T extends DocSerializable<T>> {
      * _doc field
      */
     private static final Set<String> docSet = Collections.singleton("_doc");
+    /**
+     * sequence number of a write , with soft deletes
+     */
+    static final String SEQ_FIELD = "_seq";
+    /**
+     * soft deletes field , set on replaced docs and tombstones
+     */
+    static final String SOFT_DELETES_FIELD = "_deleted";
+    /**
+     * marker of a tombstone , a doc recording a delete
+     */
+    static final String TOMBSTONE_FIELD = "_tombstone";
+    /**
+     * expiry time of a doc , max long for never
+     */
+    static final String EXPIRE_FIELD = "_expire";
+    /**
+     * text field type with offsets in postings
+     */
+    private static final FieldType TEXT_OFFSETS;
+    /**
+     * stored text field type with offsets in postings
+     */
+    private static final FieldType TEXT_OFFSETS_STORED;
+    /**
+     * max parsed query string cached
+     */
+    private static final int PARSED_QUERY_CACHE_SIZE = 1024;
+    /**
+     * period to check the commit policy
+     */
+    private static final long COMMIT_CHECK_MILLIS = 100;
+    /**
+     * threads for the lexical leg of hybrid queries , not the common pool as searches block on io
+     */
+    private static final ExecutorService HYBRID_EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "lucener-hybrid");
+        t.setDaemon(true);
+        return t;
+    });
 
     /*
       init
      */
     static {
-        knownIndex = new HashMap<>();
+        TEXT_OFFSETS = new FieldType(org.apache.lucene.document.TextField.TYPE_NOT_STORED);
+        TEXT_OFFSETS.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+        TEXT_OFFSETS.freeze();
+        TEXT_OFFSETS_STORED = new FieldType(org.apache.lucene.document.TextField.TYPE_STORED);
+        TEXT_OFFSETS_STORED.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+        TEXT_OFFSETS_STORED.freeze();
     }
 
     /**
@@ -93,61 +258,255 @@ public class Lucener<T extends DocSerializable<T>> {
      * @return
      * @throws Exception
      */
-    public synchronized static <U> Lucener forClass(Class<? extends DocSerializable<U>> entityClass) throws Exception {
+    public static <U> Lucener forClass(Class<? extends DocSerializable<U>> entityClass) throws Exception {
         return forClass(entityClass, null);
     }
 
     /**
-     * lucener for class
+     * lucener for class , one instance for a class and an index path
+     * <p>
+     * the open instance is found without lock , it is opened on first use and removed from the registry when closed .
      *
      * @param entityClass
+     * @param root        root path , null for the value of Index
      * @return
      */
-    public synchronized static <V> Lucener forClass(Class<? extends DocSerializable<V>> entityClass, String root) throws Exception {
-        if (knownIndex.containsKey(entityClass)) {
-            return knownIndex.get(entityClass);
-        }
-        if (DocSerializable.class.isAssignableFrom(entityClass)) {
-            Lucener entityRepresentation = new Lucener<>(entityClass, root);
-            knownIndex.put(entityClass, entityRepresentation);
-            return entityRepresentation;
-        } else {
+    public static <V> Lucener forClass(Class<? extends DocSerializable<V>> entityClass, String root) throws Exception {
+        if (!DocSerializable.class.isAssignableFrom(entityClass)) {
             error(entityClass, "not implement DocSerializable interface");
         }
-        return null;
+        return builder(entityClass).root(root).build();
     }
 
     /**
-     * init class for representation
+     * builder of the lucener for class
      *
-     * @param entityClass entity class
-     * @param root        root path
-     * @throws IOException
+     * @param entityClass
+     * @return
      */
-    private <U> Lucener(Class<? extends DocSerializable<U>> entityClass, String root) throws Exception {
-        type = entityClass;
-        verifyIndexAnnotation(entityClass);
-        Index ian = entityClass.getAnnotation(Index.class);
+    public static <V> Builder<V> builder(Class<? extends DocSerializable<V>> entityClass) {
+        return new Builder<>(entityClass);
+    }
+
+    /**
+     * builder of a lucener , root path and writer settings
+     */
+    public static final class Builder<V> {
+        private final Class<? extends DocSerializable<V>> entityClass;
+        private String root;
         /**
-         * persist to disk or not
+         * null for BALANCED on open and no change of an open instance
          */
-        boolean persistence = ian.persistence();
-        root = root == null ? ian.value() : root;
-        if (root.isEmpty()) {
-            root = ROOT_DEFAULT;
+        private WriterSettings settings;
+        private boolean readOnly;
+
+        private Builder(Class<? extends DocSerializable<V>> entityClass) {
+            this.entityClass = entityClass;
         }
-        String dir = (root.endsWith("/") ? root : root + "/") + ian.prefix() + replaceAll(entityClass.getName(), '.', '/') + "/";
-        Path path = Paths.get(dir);
-        File file = path.toFile();
-        indexPath = file.getAbsolutePath();
-        if (persistence && !file.exists()) {
-            boolean ret = file.mkdirs();
-            if (!ret) {
-                error(entityClass, "can not create file : " + dir);
+
+        /**
+         * root path , null for the value of Index
+         *
+         * @param root
+         * @return
+         */
+        public Builder<V> root(String root) {
+            this.root = root;
+            return this;
+        }
+
+        /**
+         * writer settings of the profile
+         *
+         * @param profile
+         * @return
+         */
+        public Builder<V> profile(WriterProfile profile) {
+            this.settings = profile.settings();
+            return this;
+        }
+
+        /**
+         * writer settings
+         *
+         * @param settings
+         * @return
+         */
+        public Builder<V> settings(WriterSettings settings) {
+            this.settings = settings.copy();
+            return this;
+        }
+
+        /**
+         * read only , searchers on commits of the index path without a writer , other processes may write the index
+         *
+         * @param readOnly
+         * @return
+         */
+        public Builder<V> readOnly(boolean readOnly) {
+            this.readOnly = readOnly;
+            return this;
+        }
+
+        /**
+         * the lucener , one instance for a class and an index path
+         * <p>
+         * the open instance is found without lock , it is opened on first use and removed from the registry when
+         * closed . settings given to the builder are applied to an instance already open , as writerSettings .
+         *
+         * @return
+         * @throws Exception
+         */
+        public Lucener build() throws Exception {
+            if (!DocSerializable.class.isAssignableFrom(entityClass)) {
+                error(entityClass, "not implement DocSerializable interface");
+            }
+            Path path = indexDir(entityClass, root);
+            if (readOnly) {
+                return Registry.get(registryKey(entityClass, path, true), () -> new Lucener<>(entityClass, path, true, WriterProfile.BALANCED.settings(), true));
+            }
+            WriterSettings ws = settings == null ? WriterProfile.BALANCED.settings() : settings.copy();
+            boolean[] opened = new boolean[1];
+            Lucener<?> ret = Registry.get(registryKey(entityClass, path, false), () -> {
+                if (entityClass.getAnnotation(Index.class).shards() > 1) {
+                    error(entityClass, "sharded index , use ShardedLucener");
+                }
+                opened[0] = true;
+                return new Lucener<>(entityClass, path, indexAnnotation(entityClass).persistence(), ws);
+            });
+            if (!opened[0] && settings != null) {
+                ret.writerSettings(ws);
             }
+            return ret;
+        }
+    }
+
+    /**
+     * read only lucener on the replica path of the class , refreshed with the segments published by the writer
+     * of another process
+     *
+     * @param entityClass
+     * @return
+     * @throws Exception
+     */
+    public static <V> Lucener replica(Class<? extends DocSerializable<V>> entityClass) throws Exception {
+        String replicaPath = indexAnnotation(entityClass).replicaPath();
+        if (replicaPath.isEmpty()) {
+            error(entityClass, "no replicaPath");
         }
+        return replica(entityClass, Paths.get(replicaPath));
+    }
+
+    /**
+     * read only lucener on a replica path , refreshed with the segments published by the writer of another process
+     *
+     * @param entityClass
+     * @param replicaPath
+     * @return
+     * @throws Exception
+     */
+    public static <V> Lucener replica(Class<? extends DocSerializable<V>> entityClass, Path replicaPath) throws Exception {
+        return Registry.get(registryKey(entityClass, replicaPath, true), () -> new Lucener<>(entityClass, replicaPath, true, WriterProfile.BALANCED.settings(), true));
+    }
+
+    /**
+     * key in the registry , a read only instance is apart from the writer of the same path
+     *
+     * @param entityClass
+     * @param path
+     * @param readOnly
+     * @return
+     */
+    static String registryKey(Class<?> entityClass, Path path, boolean readOnly) {
+        String key = Registry.key(Lucener.class, entityClass, path);
+        return readOnly ? key + "#readOnly" : key;
+    }
+
+    /**
+     * init class for representation in the directory
+     *
+     * @param entityClass entity class
+     * @param path        index directory
+     * @throws Exception
+     */
+    <U> Lucener(Class<? extends DocSerializable<U>> entityClass, Path path) throws Exception {
+        this(entityClass, path, indexAnnotation(entityClass).persistence());
+    }
+
+    /**
+     * init class for representation in the directory
+     *
+     * @param entityClass entity class
+     * @param path        index directory
+     * @param persistence persist to disk or not , override the Index
+     * @throws Exception
+     */
+    <U> Lucener(Class<? extends DocSerializable<U>> entityClass, Path path, boolean persistence) throws Exception {
+        this(entityClass, path, persistence, WriterProfile.BALANCED.settings());
+    }
+
+    /**
+     * init class for representation in the directory
+     *
+     * @param entityClass entity class
+     * @param path        index directory
+     * @param persistence persist to disk or not , override the Index
+     * @param settings    writer settings
+     * @throws Exception
+     */
+    <U> Lucener(Class<? extends DocSerializable<U>> entityClass, Path path, boolean persistence, WriterSettings settings) throws Exception {
+        this(entityClass, path, persistence, settings, false);
+    }
+
+    /**
+     * init class for representation in the directory
+     *
+     * @param entityClass entity class
+     * @param path        index directory
+     * @param persistence persist to disk or not , override the Index
+     * @param settings    writer settings
+     * @param readOnly    searchers on commits of the directory without a writer
+     * @throws Exception
+     */
+    <U> Lucener(Class<? extends DocSerializable<U>> entityClass, Path path, boolean persistence, WriterSettings settings, boolean readOnly) throws Exception {
+        this(entityClass, path, persistence, settings, readOnly, false);
+    }
+
+    /**
+     * in memory lucener for the schema of the class , such as building queries and sort fields for luceners of many
+     * indexes , without translog , replica , reopen thread or purge
+     *
+     * @param entityClass
+     * @param path        index path for names only , nothing written
+     * @param <U>
+     * @return
+     * @throws Exception
+     */
+    static <U> Lucener schema(Class<? extends DocSerializable<U>> entityClass, Path path) throws Exception {
+        return new Lucener(entityClass, path, false, WriterProfile.BALANCED.settings(), false, true);
+    }
+
+    /**
+     * init class for representation in the directory
+     *
+     * @param entityClass entity class
+     * @param path        index directory
+     * @param persistence persist to disk or not , override the Index
+     * @param settings    writer settings
+     * @param readOnly    searchers on commits of the directory without a writer
+     * @param schemaOnly  in memory for the schema , no writer side features
+     * @throws Exception
+     */
+    private <U> Lucener(Class<? extends DocSerializable<U>> entityClass, Path path, boolean persistence, WriterSettings settings, boolean readOnly, boolean schemaOnly) throws Exception {
+        type = entityClass;
+        writerSettings = settings;
+        this.persistence = persistence;
+        Index ian = indexAnnotation(entityClass);
+        // all checks before the directory and the write lock are taken
+        verifyIndexSettings(entityClass, ian, persistence, readOnly, schemaOnly);
+        File file = path.toFile();
+        indexPath = file.getAbsolutePath();
         stored = ian.stored();
-        directory = persistence ? new MMapDirectory(path) : new ByteBuffersDirectory();
         defaultAnalyzer = ian.analyzer() == null ? new IKAnalyzer(ian.ikSmart()) : (ian.analyzer() == IKAnalyzer.class ? new IKAnalyzer(ian.ikSmart()) : ian.analyzer().getDeclaredConstructor().newInstance());
         /**
          * all fields index
@@ -174,6 +533,17 @@ public class Lucener<T extends DocSerializable<T>> {
                     }
                 }
             }
+            // expiry , besides the index of the field if annotated
+            if (f.isAnnotationPresent(Ttl.class)) {
+                if (ttl != null) {
+                    error(entityClass, "more than one Ttl");
+                }
+                if (f.getType() != long.class && f.getType() != Long.class) {
+                    error(entityClass, "Ttl not fit");
+                }
+                f.setAccessible(true);
+                ttl = f;
+            }
             // doc id
             if (docId == null && f.isAnnotationPresent(DocId.class)) {
                 boolean fit = fitDocId(f);
@@ -207,7 +577,7 @@ public class Lucener<T extends DocSerializable<T>> {
                 if (fit) {
                     BigIntegerField an = f.getAnnotation(BigIntegerField.class);
                     f.setAccessible(true);
-                    fields.add(new FieldDesc(f, isCollection(f), BigInteger.class, an.stored(), false, false, true, an.index()));
+                    fields.add(new FieldDesc(f, isCollection(f), BigInteger.class, an.stored(), an.sort(), false, true, an.index()));
                 } else {
                     error(entityClass, "BigIntegerField not fit");
                 }
@@ -234,7 +604,7 @@ public class Lucener<T extends DocSerializable<T>> {
                 if (fit) {
                     BooleanField an = f.getAnnotation(BooleanField.class);
                     f.setAccessible(true);
-                    fields.add(new FieldDesc(f, isCollection(f), Boolean.class, an.stored(), false, false, true, true));
+                    fields.add(new FieldDesc(f, isCollection(f), Boolean.class, an.stored(), an.sort(), false, true, an.index(), false, an.facet()));
                 } else {
                     error(entityClass, "BooleanField not fit");
                 }
@@ -243,7 +613,7 @@ public class Lucener<T extends DocSerializable<T>> {
                 if (fit) {
                     StringField an = f.getAnnotation(StringField.class);
                     f.setAccessible(true);
-                    fields.add(new FieldDesc(f, isCollection(f), String.class, an.stored(), false, false, true, true));
+                    fields.add(new FieldDesc(f, isCollection(f), String.class, an.stored(), an.sort(), false, true, an.index(), false, an.facet()));
                 } else {
                     error(entityClass, "StringField not fit");
                 }
@@ -252,10 +622,18 @@ public class Lucener<T extends DocSerializable<T>> {
                 if (fit) {
                     TextField an = f.getAnnotation(TextField.class);
                     f.setAccessible(true);
-                    fields.add(new FieldDesc(f, isCollection(f), String.class, an.stored(), false, true, true, true));
+                    fields.add(new FieldDesc(f, isCollection(f), String.class, an.stored(), false, true, true, an.index(), false, false, an.offsets()));
                 } else {
                     error(entityClass, "TextField not fit");
                 }
+            } else if (f.isAnnotationPresent(VectorField.class)) {
+                boolean fit = fitVectorField(f);
+                if (fit) {
+                    f.setAccessible(true);
+                    fields.add(new FieldDesc(f, false, float[].class, false, false, false, true, true));
+                } else {
+                    error(entityClass, "VectorField not fit");
+                }
             }
             // other field as a.b.c
             else if (!isPrimitive(f)) {
@@ -297,30 +675,294 @@ public class Lucener<T extends DocSerializable<T>> {
                 }
             }
         }
+        // vectors
+        vectorTypes = new HashMap<>();
+        Map<String, KnnVectorsFormat> vectorFormats = new HashMap<>();
+        for (Map.Entry<String, List<FieldDesc>> e : allFields.entrySet()) {
+            FieldDesc field = e.getValue().get(e.getValue().size() - 1);
+            if (field.getInner() == float[].class) {
+                if (e.getValue().stream().anyMatch(FieldDesc::isCollection)) {
+                    error(entityClass, "VectorField in collection not supported : " + e.getKey());
+                }
+                VectorField vf = field.getField().getAnnotation(VectorField.class);
+                vectorTypes.put(e.getKey(), KnnFloatVectorField.createFieldType(vf.dims(), vf.similarity()));
+                vectorFormats.put(e.getKey(), vf.quantized() ? new Lucene99HnswScalarQuantizedVectorsFormat(vf.m(), vf.beamWidth()) : new Lucene99HnswVectorsFormat(vf.m(), vf.beamWidth()));
+            }
+        }
         // analyzer
-        PerFieldAnalyzerWrapper wrapper = new PerFieldAnalyzerWrapper(defaultAnalyzer, fieldAnalyzers);
-        IndexWriterConfig indexWriterConfig = new IndexWriterConfig(wrapper);
-        indexWriter = new IndexWriter(directory, indexWriterConfig);
-        searcherManager = new SearcherManager(indexWriter, true, true, new SearcherFactory());
+        analyzer = new PerFieldAnalyzerWrapper(defaultAnalyzer, fieldAnalyzers);
+        parsedQueries = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Query> eldest) {
+                return size() > PARSED_QUERY_CACHE_SIZE;
+            }
+        });
+        // stored fields mode , and hnsw parameters for every vector field , readers find the format by name so any codec reads it
+        codec = new Lucene99Codec(settings.getStoredFieldsMode()) {
+            @Override
+            public KnnVectorsFormat getKnnVectorsFormatForField(String field) {
+                KnnVectorsFormat format = vectorFormats.get(field);
+                return format == null ? super.getKnnVectorsFormatForField(field) : format;
+            }
+        };
+        if (persistence && !file.exists()) {
+            boolean ret = file.mkdirs();
+            if (!ret) {
+                error(entityClass, "can not create file : " + path);
+            }
+        }
+        if (persistence) {
+            directory = ian.directory().open(path, ian);
+        } else if (ian.offHeap()) {
+            directory = new OffHeapDirectory(ian.offHeapMaxMB() * 1024 * 1024, ian.offHeapSpill());
+        } else {
+            directory = new ByteBuffersDirectory();
+        }
+        changesRetainOps = ian.changesRetainOps();
+        purgeBatch = Math.max(1, ian.ttlPurgeBatch());
+        purgeDocsPerSec = Math.max(0, ian.ttlPurgeDocsPerSec());
+        dropExpiredSegments = ian.ttlDropSegments();
+        if (readOnly) {
+            // searchers on commits of the directory , no writer and no write lock
+            indexWriter = null;
+            changeSeq = null;
+            purgeScheduler = null;
+            snapshotPolicy = null;
+            publisher = null;
+            reopenThread = null;
+            translog = null;
+            translogLock = null;
+            syncEveryWrite = false;
+            replayed = 0;
+            DirectoryReader reader = null;
+            SearcherManager manager = null;
+            try {
+                reader = DirectoryReader.open(directory);
+                manager = new SearcherManager(ian.softDeletes() ? new SoftDeletesDirectoryReaderWrapper(reader, SOFT_DELETES_FIELD) : reader, searcherFactory());
+                searcherManager = manager;
+                // notified of new commits , and polling for lost notifications
+                watcher = new CommitWatcher(entityClass.getSimpleName(), path, this::refreshQuietly);
+            } catch (IOException | RuntimeException e) {
+                // the manager owns the reader once created
+                IOUtils.closeWhileHandlingException(manager == null ? reader : manager, directory);
+                throw e;
+            }
+            long refresh = ian.readOnlyRefreshMillis();
+            if (refresh > 0) {
+                scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread t = new Thread(r, "lucener-refresh-" + entityClass.getSimpleName());
+                    t.setDaemon(true);
+                    return t;
+                });
+                scheduler.scheduleWithFixedDelay(this::refreshQuietly, refresh, refresh, TimeUnit.MILLISECONDS);
+            } else {
+                scheduler = null;
+            }
+            return;
+        }
+        watcher = null;
+        IndexWriterConfig indexWriterConfig = settings.configure(ResourceGovernor.configure(new IndexWriterConfig(analyzer), settings.getRamBufferSizeMB()));
+        indexWriterConfig.setCodec(codec);
+        snapshotPolicy = new SnapshotDeletionPolicy(new KeepOnlyLastCommitDeletionPolicy());
+        indexWriterConfig.setIndexDeletionPolicy(snapshotPolicy);
+        if (ian.softDeletes()) {
+            // deleted and replaced docs of the latest operations survive merges
+            indexWriterConfig.setSoftDeletesField(SOFT_DELETES_FIELD);
+            indexWriterConfig.setMergePolicy(new SoftDeletesRetentionMergePolicy(SOFT_DELETES_FIELD,
+                    () -> LongPoint.newRangeQuery(SEQ_FIELD, retainedSeq() + 1, Long.MAX_VALUE), indexWriterConfig.getMergePolicy()));
+        }
+        IndexWriter writer;
+        try {
+            writer = new IndexWriter(directory, indexWriterConfig);
+        } catch (IOException | RuntimeException e) {
+            IOUtils.closeWhileHandlingException(directory);
+            throw e;
+        }
+        indexWriter = writer;
+        boolean logged = ian.translog() && !schemaOnly;
+        Translog log = null;
+        try {
+            changeSeq = ian.softDeletes() ? new SeqTracker(maxSeq(writer)) : null;
+            if (!schemaOnly) {
+                ResourceGovernor.register(entityClass.getSimpleName() + "@" + indexPath, writer, settings.getRamBufferSizeMB());
+            }
+            searcherManager = new SearcherManager(writer, true, true, searcherFactory());
+            // translog
+            if (logged) {
+                translogLock = new ReentrantReadWriteLock();
+                syncEveryWrite = ian.translogSyncMillis() <= 0;
+                String committed = null;
+                for (Map.Entry<String, String> e : writer.getLiveCommitData()) {
+                    if (Translog.GENERATION.equals(e.getKey())) {
+                        committed = e.getValue();
+                    }
+                }
+                long from = committed == null ? 0 : Long.parseLong(committed);
+                TreeMap<Long, Path> logs = Translog.generations(path, from);
+                // replay before the translog is open , so replayed ops are not logged again
+                T dsi = (T) type.getDeclaredConstructor().newInstance();
+                long count = 0;
+                for (Path generation : logs.values()) {
+                    count += Translog.replay(generation, new Translog.Visitor() {
+                        @Override
+                        public void index(String json) throws Exception {
+                            Lucener.this.index(dsi.deserialize(json));
+                        }
+
+                        @Override
+                        public void delete(Term[] terms) throws Exception {
+                            Lucener.this.deleteDocuments(terms);
+                        }
+                    });
+                }
+                replayed = count;
+                log = new Translog(path, logs.isEmpty() ? from + 1 : logs.lastKey() + 1);
+                translog = log;
+                // replayed ops are durable by the commit , and old logs are deleted
+                commit();
+            } else {
+                translog = null;
+                translogLock = null;
+                syncEveryWrite = false;
+                replayed = 0;
+            }
+            // replica
+            if (!schemaOnly && !ian.replicaPath().isEmpty()) {
+                publisher = new ReplicaPublisher(entityClass.getSimpleName(), writer, directory, Paths.get(ian.replicaPath()), ian.replicaPublishMillis());
+            } else {
+                publisher = null;
+            }
+        } catch (Exception e) {
+            // no lock and no governed writer left behind
+            ResourceGovernor.unregister(writer);
+            IOUtils.closeWhileHandlingException(log, writer, directory);
+            throw e;
+        }
+        // threads last , nothing fails after them
+        if (!schemaOnly && ian.maxStaleMillis() > 0) {
+            reopenThread = new ControlledRealTimeReopenThread<>(writer, searcherManager, ian.maxStaleMillis() / 1000.0, ian.minStaleMillis() / 1000.0);
+            reopenThread.setName("lucener-reopen-" + entityClass.getSimpleName());
+            reopenThread.setDaemon(true);
+            reopenThread.start();
+        } else {
+            reopenThread = null;
+        }
+        boolean policy = logged && (ian.commitIntervalMillis() > 0 || ian.commitBytes() > 0 || ian.commitOps() > 0);
+        if (policy || (logged && !syncEveryWrite)) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "lucener-commit-" + entityClass.getSimpleName());
+                t.setDaemon(true);
+                return t;
+            });
+            if (!syncEveryWrite) {
+                scheduler.scheduleWithFixedDelay(this::syncTranslog, ian.translogSyncMillis(), ian.translogSyncMillis(), TimeUnit.MILLISECONDS);
+            }
+            if (policy) {
+                scheduler.scheduleWithFixedDelay(() -> maybeCommit(ian.commitIntervalMillis(), ian.commitBytes(), ian.commitOps()), COMMIT_CHECK_MILLIS, COMMIT_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        } else {
+            scheduler = null;
+        }
+        // purge of expired docs , behind foreground writes
+        if (!schemaOnly && ttl != null && ian.ttlPurgeMillis() > 0) {
+            purgeScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "lucener-ttl-" + entityClass.getSimpleName());
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            });
+            purgeScheduler.scheduleWithFixedDelay(this::purgeQuietly, ian.ttlPurgeMillis(), ian.ttlPurgeMillis(), TimeUnit.MILLISECONDS);
+        } else {
+            purgeScheduler = null;
+        }
     }
 
     /**
-     * find fields such as a.b.c
+     * check the settings of the Index annotation
+     *
+     * @param entityClass
+     * @param ian
+     * @param persistence
+     * @param readOnly
+     * @param schemaOnly
+     */
+    private static void verifyIndexSettings(Class<?> entityClass, Index ian, boolean persistence, boolean readOnly, boolean schemaOnly) {
+        if (readOnly && !persistence) {
+            error(entityClass, "read only needs persistence");
+        }
+        if (!persistence && ian.offHeap() && ian.offHeapMaxMB() < 0) {
+            error(entityClass, "offHeapMaxMB should not be negative");
+        }
+        if (ian.maxStaleMillis() > 0 && ian.minStaleMillis() > ian.maxStaleMillis()) {
+            error(entityClass, "minStaleMillis should not be greater than maxStaleMillis");
+        }
+        if (!readOnly && !schemaOnly && ian.translog() && !persistence) {
+            error(entityClass, "translog needs persistence");
+        }
+    }
+
+    /**
+     * searchers hiding expired docs if the class has a Ttl field
      *
-     * @param context
-     * @param f
      * @return
      */
-    public static void subFields(List<FieldDesc> context, Field f, List<List<FieldDesc>> result) {
-        f.setAccessible(true);
-        boolean collection = isCollection(f);
-        Class<?> c = getInnerType(f);
-        context.add(new FieldDesc(f, collection, c, false, false, false, false, false));
-        List<Field> all = new ArrayList<>();
-        allField(c, all);
-        for (Field item : all) {
-            // size field
-            if (isCollection(item)) {
+    private SearcherFactory searcherFactory() {
+        if (ttl == null) {
+            return new SearcherFactory();
+        }
+        return new SearcherFactory() {
+            @Override
+            public IndexSearcher newSearcher(IndexReader reader, IndexReader previousReader) {
+                return new ExpirySearcher(reader);
+            }
+        };
+    }
+
+    /**
+     * verified Index annotation of the class
+     *
+     * @param entityClass
+     * @return
+     */
+    static Index indexAnnotation(Class<?> entityClass) {
+        verifyIndexAnnotation(entityClass);
+        return entityClass.getAnnotation(Index.class);
+    }
+
+    /**
+     * index directory of the class
+     *
+     * @param entityClass
+     * @param root        root path , null for the value of Index
+     * @return
+     */
+    static Path indexDir(Class<?> entityClass, String root) {
+        Index ian = indexAnnotation(entityClass);
+        root = root == null ? ian.value() : root;
+        if (root.isEmpty()) {
+            root = ROOT_DEFAULT;
+        }
+        String dir = (root.endsWith("/") ? root : root + "/") + ian.prefix() + replaceAll(entityClass.getName(), '.', '/') + "/";
+        return Paths.get(dir);
+    }
+
+    /**
+     * find fields such as a.b.c
+     *
+     * @param context
+     * @param f
+     * @return
+     */
+    public static void subFields(List<FieldDesc> context, Field f, List<List<FieldDesc>> result) {
+        f.setAccessible(true);
+        boolean collection = isCollection(f);
+        Class<?> c = getInnerType(f);
+        context.add(new FieldDesc(f, collection, c, false, false, false, false, false));
+        List<Field> all = new ArrayList<>();
+        allField(c, all);
+        for (Field item : all) {
+            // size field
+            if (isCollection(item)) {
                 if (item.isAnnotationPresent(SizeField.class)) {
                     boolean fit = fitSizeField(item);
                     if (fit) {
@@ -362,7 +1004,7 @@ public class Lucener<T extends DocSerializable<T>> {
                     BigIntegerField an = item.getAnnotation(BigIntegerField.class);
                     item.setAccessible(true);
                     List<FieldDesc> ret = new ArrayList<>(context);
-                    ret.add(new FieldDesc(item, isCollection(item), BigInteger.class, an.stored(), false, false, true, an.index()));
+                    ret.add(new FieldDesc(item, isCollection(item), BigInteger.class, an.stored(), an.sort(), false, true, an.index()));
                     result.add(ret);
                 } else {
                     error(c, "BigIntegerField not fit");
@@ -395,7 +1037,7 @@ public class Lucener<T extends DocSerializable<T>> {
                     BooleanField an = item.getAnnotation(BooleanField.class);
                     item.setAccessible(true);
                     List<FieldDesc> ret = new ArrayList<>(context);
-                    ret.add(new FieldDesc(item, isCollection(item), Boolean.class, an.stored(), false, false, true, true));
+                    ret.add(new FieldDesc(item, isCollection(item), Boolean.class, an.stored(), an.sort(), false, true, an.index(), false, an.facet()));
                     result.add(ret);
                 } else {
                     error(c, "BooleanField not fit");
@@ -406,7 +1048,7 @@ public class Lucener<T extends DocSerializable<T>> {
                     StringField an = item.getAnnotation(StringField.class);
                     item.setAccessible(true);
                     List<FieldDesc> ret = new ArrayList<>(context);
-                    ret.add(new FieldDesc(item, isCollection(item), String.class, an.stored(), false, false, true, true));
+                    ret.add(new FieldDesc(item, isCollection(item), String.class, an.stored(), an.sort(), false, true, an.index(), false, an.facet()));
                     result.add(ret);
                 } else {
                     error(c, "StringField not fit");
@@ -417,11 +1059,21 @@ public class Lucener<T extends DocSerializable<T>> {
                     TextField an = item.getAnnotation(TextField.class);
                     item.setAccessible(true);
                     List<FieldDesc> ret = new ArrayList<>(context);
-                    ret.add(new FieldDesc(item, isCollection(item), String.class, an.stored(), false, true, true, true));
+                    ret.add(new FieldDesc(item, isCollection(item), String.class, an.stored(), false, true, true, an.index(), false, false, an.offsets()));
                     result.add(ret);
                 } else {
                     error(c, "TextField not fit");
                 }
+            } else if (item.isAnnotationPresent(VectorField.class)) {
+                boolean fit = fitVectorField(item);
+                if (fit) {
+                    item.setAccessible(true);
+                    List<FieldDesc> ret = new ArrayList<>(context);
+                    ret.add(new FieldDesc(item, false, float[].class, false, false, false, true, true));
+                    result.add(ret);
+                } else {
+                    error(c, "VectorField not fit");
+                }
             }
             // other field as a.b.c
             else if (!isPrimitive(item)) {
@@ -637,6 +1289,16 @@ public class Lucener<T extends DocSerializable<T>> {
         return fitStringField(f);
     }
 
+    /**
+     * with vector field is ok ?
+     *
+     * @param f
+     * @return
+     */
+    public static boolean fitVectorField(Field f) {
+        return f.getType() == float[].class && f.getAnnotation(VectorField.class).dims() > 0;
+    }
+
     /**
      * collection ?
      *
@@ -734,210 +1396,19 @@ public class Lucener<T extends DocSerializable<T>> {
      * first delete by term and then add documents
      *
      * @param obs
+     * @return sequence number of the last write , for waitForGeneration
      */
     @SafeVarargs
-    public final void index(T... obs) throws Exception {
+    public final long index(T... obs) throws Exception {
+        writable();
+        long seq = 0;
         if (obs != null) {
             for (T ob : obs) {
                 if (ob != null && ob.getClass() == type) {
-                    // doc id
-                    String did = value(docId, ob).toString();
-                    if (did == null || did.isEmpty()) {
-                        throw new NullPointerException("doc id is null ");
-                    }
-                    final Document doc = new Document();
-                    // _doc section just store
-                    if (stored) {
-                        doc.add(new StoredField("_doc", ob.serialize()));
-                    }
-                    for (List<FieldDesc> fs : allFields.values()) {
-                        final FieldDesc f = fs.get(fs.size() - 1);  // the end
-                        if (f.isJustSize()) {
-                            String name = name(fs);
-                            name = name + ".size";
-                            final int size = size(fs, ob);
-                            if (f.isIndex()) {
-                                doc.add(new IntPoint(name, size));
-                            }
-                            if (f.isStored()) {
-                                doc.add(new StoredField(name, size));
-                            }
-                            if (f.isSort()) {
-                                doc.add(new SortedNumericDocValuesField(name, size));
-                            }
-                            continue;
-                        }
-                        final Object v = value(fs, ob);
-                        if (v != null) {
-                            Class<?> inner = f.getInner();
-                            String name = name(fs);
-                            // collection
-                            if (Collection.class.isAssignableFrom(v.getClass())) {
-                                if (inner == int.class || inner == Integer.class) {
-                                    Collection<Integer> c = (Collection<Integer>) v;
-                                    c.forEach(i -> {
-                                        if (i != null) {
-                                            if (f.isIndex()) {
-                                                doc.add(new IntPoint(name, i));
-                                            }
-                                            if (f.isStored()) {
-                                                doc.add(new StoredField(name, i));
-                                            }
-                                            if (f.isSort()) {
-                                                doc.add(new SortedNumericDocValuesField(name, i));
-                                            }
-                                        }
-                                    });
-                                } else if (inner == long.class || inner == Long.class) {
-                                    Collection<Long> c = (Collection<Long>) v;
-                                    c.forEach(i -> {
-                                        if (i != null) {
-                                            if (f.isIndex()) {
-                                                doc.add(new LongPoint(name, i));
-                                            }
-                                            if (f.isStored()) {
-                                                doc.add(new StoredField(name, i));
-                                            }
-                                            if (f.isSort()) {
-                                                doc.add(new SortedNumericDocValuesField(name, i));
-                                            }
-                                        }
-                                    });
-                                } else if (inner == BigInteger.class) {
-                                    Collection<BigInteger> c = (Collection<BigInteger>) v;
-                                    c.forEach(i -> {
-                                        if (i != null) {
-                                            if (f.isIndex()) {
-                                                doc.add(new BigIntegerPoint(name, i));
-                                            }
-                                            if (f.isStored()) {
-                                                doc.add(new StoredField(name, i.toString()));
-                                            }
-                                        }
-                                    });
-                                } else if (inner == float.class || inner == Float.class) {
-                                    Collection<Float> c = (Collection<Float>) v;
-                                    c.forEach(i -> {
-                                        if (i != null) {
-                                            if (f.isIndex()) {
-                                                doc.add(new FloatPoint(name, i));
-                                            }
-                                            if (f.isStored()) {
-                                                doc.add(new StoredField(name, i));
-                                            }
-                                            if (f.isSort()) {
-                                                doc.add(new SortedNumericDocValuesField(name, NumericUtils.floatToSortableInt(i)));
-                                            }
-                                        }
-                                    });
-                                } else if (inner == double.class || inner == Double.class) {
-                                    Collection<Double> c = (Collection<Double>) v;
-                                    c.forEach(i -> {
-                                        if (i != null) {
-                                            if (f.isIndex()) {
-                                                doc.add(new DoublePoint(name, i));
-                                            }
-                                            if (f.isStored()) {
-                                                doc.add(new StoredField(name, i));
-                                            }
-                                            if (f.isSort()) {
-                                                doc.add(new SortedNumericDocValuesField(name, NumericUtils.doubleToSortableLong(i)));
-                                            }
-                                        }
-                                    });
-                                } else if (inner == Boolean.class) {
-                                    Collection<Boolean> c = (Collection<Boolean>) v;
-                                    c.forEach(i -> {
-                                        if (i != null) {
-                                            doc.add(new org.apache.lucene.document.StringField(name, i ? "true" : "false", f.isStored() ? org.apache.lucene.document.Field.Store.YES : org.apache.lucene.document.Field.Store.NO));
-                                        }
-                                    });
-                                } else if (inner == String.class) {
-                                    Collection<String> c = (Collection<String>) v;
-                                    c.forEach(i -> {
-                                        if (i != null && !i.trim().isEmpty()) {
-                                            if (f.isTokenized()) {
-                                                doc.add(new org.apache.lucene.document.TextField(name, i, f.isStored() ? org.apache.lucene.document.Field.Store.YES : org.apache.lucene.document.Field.Store.NO));
-                                            } else {
-                                                doc.add(new org.apache.lucene.document.StringField(name, i, f.isStored() ? org.apache.lucene.document.Field.Store.YES : org.apache.lucene.document.Field.Store.NO));
-                                            }
-                                        }
-                                    });
-                                }
-                            }
-                            // not collection
-                            else {
-                                if (inner == int.class || inner == Integer.class) {
-                                    Integer i = (Integer) v;
-                                    if (f.isIndex()) {
-                                        doc.add(new IntPoint(name, i));
-                                    }
-                                    if (f.isStored()) {
-                                        doc.add(new StoredField(name, i));
-                                    }
-                                    if (f.isSort()) {
-                                        doc.add(new SortedNumericDocValuesField(name, i));
-                                    }
-                                } else if (inner == long.class || inner == Long.class) {
-                                    Long i = (Long) v;
-                                    if (f.isIndex()) {
-                                        doc.add(new LongPoint(name, i));
-                                    }
-                                    if (f.isStored()) {
-                                        doc.add(new StoredField(name, i));
-                                    }
-                                    if (f.isSort()) {
-                                        doc.add(new SortedNumericDocValuesField(name, i));
-                                    }
-                                } else if (inner == BigInteger.class) {
-                                    BigInteger i = (BigInteger) v;
-                                    if (f.isIndex()) {
-                                        doc.add(new BigIntegerPoint(name, i));
-                                    }
-                                    if (f.isStored()) {
-                                        doc.add(new StoredField(name, String.valueOf(i)));
-                                    }
-                                } else if (inner == float.class || inner == Float.class) {
-                                    Float i = (Float) v;
-                                    if (f.isIndex()) {
-                                        doc.add(new FloatPoint(name, i));
-                                    }
-                                    if (f.isStored()) {
-                                        doc.add(new StoredField(name, i));
-                                    }
-                                    if (f.isSort()) {
-                                        int sortedNumber = NumericUtils.floatToSortableInt(i);
-                                        doc.add(new SortedNumericDocValuesField(name, sortedNumber));
-                                    }
-                                } else if (inner == double.class || inner == Double.class) {
-                                    Double i = (Double) v;
-                                    if (f.isIndex()) {
-                                        doc.add(new DoublePoint(name, i));
-                                    }
-                                    if (f.isStored()) {
-                                        doc.add(new StoredField(name, i));
-                                    }
-                                    if (f.isSort()) {
-                                        long sortedNumber = NumericUtils.doubleToSortableLong(i);
-                                        doc.add(new SortedNumericDocValuesField(name, sortedNumber));
-                                    }
-                                } else if (inner == boolean.class || inner == Boolean.class) {
-                                    Boolean i = (Boolean) v;
-                                    doc.add(new org.apache.lucene.document.StringField(name, i ? "true" : "false", f.isStored() ? org.apache.lucene.document.Field.Store.YES : org.apache.lucene.document.Field.Store.NO));
-                                } else if (inner == String.class) {
-                                    String i = (String) v;
-                                    if (f.isTokenized()) {
-                                        doc.add(new org.apache.lucene.document.TextField(name, i, f.isStored() ? org.apache.lucene.document.Field.Store.YES : org.apache.lucene.document.Field.Store.NO));
-                                    } else {
-                                        doc.add(new org.apache.lucene.document.StringField(name, i, f.isStored() ? org.apache.lucene.document.Field.Store.YES : org.apache.lucene.document.Field.Store.NO));
-                                    }
-                                }
-                            }
-                        }
-                    }
-                    doc.add(new org.apache.lucene.document.StringField(docId.getField().getName(), did, docId.isStored() ? org.apache.lucene.document.Field.Store.YES : org.apache.lucene.document.Field.Store.NO));
+                    String did = docId(ob);
+                    Document doc = document(ob, did);
                     Term term = new Term(docId.getField().getName(), did);
-                    indexWriter.updateDocument(term, doc);
+                    seq = updateDocument(term, doc, ob);
                 } else {
                     if (ob == null) {
                         throw new NullPointerException("object to index is null");
@@ -946,178 +1417,1130 @@ public class Lucener<T extends DocSerializable<T>> {
                     }
                 }
             }
+            if (translog != null && syncEveryWrite) {
+                translog.sync();
+            }
+            ResourceGovernor.maybeFlush();
         }
+        return seq;
     }
 
     /**
-     * name for the field
-     *
-     * @param fs
-     * @return
+     * phase of a bulk build
      */
-    private static String name(List<FieldDesc> fs) {
-        String name = fs.stream().map(f -> f.getField().getName()).collect(Collectors.joining("."));
-        return name;
+    public enum BulkPhase {
+        /**
+         * writing sub indexes
+         */
+        INDEX,
+        /**
+         * adding sub indexes to the index
+         */
+        ADD_INDEXES,
+        /**
+         * force merging the index
+         */
+        FORCE_MERGE,
+        /**
+         * committed and visible
+         */
+        DONE
     }
 
     /**
-     * value for sortField
-     *
-     * @param root
-     * @param sf
-     * @return
+     * progress of a bulk build , called from one thread at a time
      */
-    private Object value(T root, SortField sf) throws IllegalAccessException {
-        List<FieldDesc> descs = allFields.get(sf.getField());
-        return value(descs, root);
+    @FunctionalInterface
+    public interface BulkProgress {
+        /**
+         * @param phase
+         * @param docs  docs written so far
+         */
+        void progress(BulkPhase phase, long docs);
     }
 
     /**
-     * @param fd
-     * @param root
-     * @return
-     * @throws IllegalAccessException
+     * docs between progress reports of the INDEX phase
      */
-    private static Object value(FieldDesc fd, Object root) throws IllegalAccessException {
-        Object value = fd.getField().get(root);
-        return value;
-    }
-
+    private static final long BULK_PROGRESS_DOCS = 10000;
     /**
-     * @param fs
-     * @param root
-     * @return
-     * @throws IllegalAccessException
+     * docs a bulk worker takes from a shared input at a time
      */
-    private static int size(List<FieldDesc> fs, Object root) throws IllegalAccessException {
-        Collection c = (Collection) value(fs, root);
-        return c == null ? 0 : c.size();
-    }
+    private static final int BULK_BATCH = 1000;
 
     /**
-     * get value
+     * bulk build from one input shared by parallel sub indexes
      *
-     * @param fs
-     * @param root
-     * @return
+     * @param input       entities , doc ids should be unique
+     * @param parts       sub indexes written in parallel , the cores by default if not positive
+     * @param maxSegments force merge to segments after adding , 0 for no force merge
+     * @param progress    progress , null for none
+     * @return docs built
+     * @throws Exception
+     * @see #bulkBuild(List, int, BulkProgress)
      */
-    private static Object value(List<FieldDesc> fs, Object root) throws IllegalAccessException {
-        FieldDesc fd = fs.get(0);
-        Object value = fd.getField().get(root);
-        if (isEmpty(value)) {
-            return null;
-        } else {
-            if (fd.isEnd()) {
-                return value;
-            }
-            // not end
-            else {
-                // collection
-                if (fd.isCollection()) {
-                    Collection<Object> ret = new HashSet<>();
-                    Collection<?> c = (Collection<?>) value;
-                    for (Object item : c) {
-                        List<FieldDesc> fds = fs.subList(1, fs.size());
-                        Object temp = value(fds, item);
-                        if (temp != null) {
-                            if (isCollection(temp.getClass())) {
-                                Collection tc = (Collection) temp;
-                                ret.addAll(tc);
-                            } else {
-                                ret.add(temp);
-                            }
-                        }
+    public long bulkBuild(Iterable<T> input, int parts, int maxSegments, BulkProgress progress) throws Exception {
+        int k = parts > 0 ? parts : Runtime.getRuntime().availableProcessors();
+        Iterator<T> it = input.iterator();
+        // workers take batches from the shared iterator
+        Iterable<T> shared = () -> new Iterator<T>() {
+            private final List<T> batch = new ArrayList<>(BULK_BATCH);
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                if (next < batch.size()) {
+                    return true;
+                }
+                batch.clear();
+                next = 0;
+                synchronized (it) {
+                    while (batch.size() < BULK_BATCH && it.hasNext()) {
+                        batch.add(it.next());
                     }
-                    return ret;
                 }
-                // not collection
-                else {
-                    return value(fs.subList(1, fs.size()), value);
+                return !batch.isEmpty();
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
                 }
+                return batch.get(next++);
             }
-        }
+        };
+        return bulkBuild(Collections.nCopies(k, shared), maxSegments, progress);
     }
 
     /**
-     * is empty
+     * bulk build , every partition of the input is written to its own temp sub index by its own writer in
+     * parallel , then the sub indexes are added to the index by IndexWriter.addIndexes and committed
+     * <p>
+     * documents are added without deleting by doc id , so it is an initial load : the index must be empty and doc
+     * ids should be unique . the sub indexes are written with the BULK_LOAD profile and removed when done .
+     * <p>
+     * the sub writers share the ram budget of the ResourceGovernor without being registered , at least 16MB each ,
+     * so with many partitions they may take more than the budget for the time of the build .
+     * <p>
+     * with soft deletes , changes from the start of the build , of other writes too , are reported by changesSince
+     * when the docs of the build are visible .
      *
-     * @param v
-     * @return
+     * @param partitions  partitions of the input , one sub index each
+     * @param maxSegments force merge to segments after adding , 0 for no force merge
+     * @param progress    progress , null for none
+     * @return docs built
+     * @throws Exception if the index is not empty
      */
-    public static boolean isEmpty(Object v) {
-        if (v == null) {
-            return true;
-        } else if (isCollection(v.getClass())) {
-            Collection<?> c = (Collection<?>) v;
-            return c.isEmpty();
+    public long bulkBuild(List<? extends Iterable<T>> partitions, int maxSegments, BulkProgress progress) throws Exception {
+        writable();
+        if (indexWriter.getDocStats().maxDoc > 0) {
+            error(type, "bulk build needs an empty index");
         }
-        return false;
-    }
-
-    /**
-     * commit
-     *
-     * @return
-     */
-    public long commit() throws IOException {
-        return indexWriter.commit();
-    }
-
-    /**
-     * close writer and directory
-     */
-    public void close() throws IOException {
-        indexWriter.close();
-        directory.close();
-    }
-
-    /**
-     * get by id
-     *
-     * @param id
-     * @return
-     */
-    public T get(String id) throws Exception {
-        IndexSearcher indexSearcher = searcherManager.acquire();
+        if (partitions.isEmpty()) {
+            return 0;
+        }
+        int k = partitions.size();
+        BulkProgress report = progress == null ? (phase, docs) -> {
+        } : progress;
+        Object reportLock = new Object();
+        // docs of the sub indexes are not visible before addIndexes , so not reported as changes until then
+        long hold = changeSeq == null ? 0 : changeSeq.hold();
+        Path tmp = persistence ? Paths.get(indexPath + ".bulk-" + System.nanoTime()) : null;
+        List<Directory> dirs = new ArrayList<>(k);
+        ExecutorService executor = Executors.newFixedThreadPool(k, r -> {
+            Thread t = new Thread(r, "lucener-bulk-" + type.getSimpleName());
+            t.setDaemon(true);
+            return t;
+        });
         try {
-            BooleanQuery.Builder builder = new BooleanQuery.Builder();
-            FieldDesc fd = docId;
-            builder.add(new TermQuery(new Term(fd.getField().getName(), id)), BooleanClause.Occur.FILTER);
-            TopDocs topDocs = indexSearcher.searchAfter(null, builder.build(), 1);
-            ScoreDoc[] hits = topDocs.scoreDocs;
-            if (hits != null && hits.length > 0) {
-                T dsi = (T) this.type.getDeclaredConstructor().newInstance();  // ? not very ok . . .
-                for (ScoreDoc sc : hits) {
-                    int did = sc.doc;
-                    Document doc = indexSearcher.getIndexReader().storedFields().document(did);
-                    String docString = doc.get("_doc");
-                    if (docString != null) {
-                        T d = dsi.deserialize(docString);
-                        d.doc = did;
-                        d.score = sc.score;
-                        d.shardIndex = sc.shardIndex;
-                        return d;
+            WriterSettings ws = WriterProfile.BULK_LOAD.settings();
+            double ramBuffer = Math.max(16, Math.min(ws.getRamBufferSizeMB(), ResourceGovernor.getRamBudgetMB() / k));
+            for (int i = 0; i < k; i++) {
+                dirs.add(persistence ? FSDirectory.open(tmp.resolve("part-" + i)) : new ByteBuffersDirectory());
+            }
+            AtomicLong docs = new AtomicLong();
+            List<Future<?>> futures = new ArrayList<>(k);
+            for (int i = 0; i < k; i++) {
+                Iterable<T> part = partitions.get(i);
+                Directory dir = dirs.get(i);
+                futures.add(executor.submit(() -> {
+                    IndexWriterConfig config = ws.configure(new IndexWriterConfig(analyzer));
+                    config.setRAMBufferSizeMB(ramBuffer);
+                    config.setCodec(codec);
+                    if (changeSeq != null) {
+                        config.setSoftDeletesField(SOFT_DELETES_FIELD);
+                    }
+                    try (IndexWriter writer = new IndexWriter(dir, config)) {
+                        for (T ob : part) {
+                            if (ob == null) {
+                                throw new NullPointerException("object to index is null");
+                            }
+                            if (ob.getClass() != type) {
+                                error(ob.getClass(), "class not fit");
+                            }
+                            Document doc = document(ob, docId(ob));
+                            if (changeSeq == null) {
+                                writer.addDocument(doc);
+                            } else {
+                                long seq = changeSeq.next();
+                                try {
+                                    addSeq(doc, seq);
+                                    writer.addDocument(doc);
+                                } finally {
+                                    changeSeq.done(seq);
+                                }
+                            }
+                            long n = docs.incrementAndGet();
+                            if (n % BULK_PROGRESS_DOCS == 0) {
+                                synchronized (reportLock) {
+                                    report.progress(BulkPhase.INDEX, n);
+                                }
+                            }
+                        }
                     }
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) {
+                try {
+                    f.get();
+                } catch (ExecutionException e) {
+                    futures.forEach(o -> o.cancel(true));
+                    throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
                 }
             }
+            long total = docs.get();
+            report.progress(BulkPhase.ADD_INDEXES, total);
+            indexWriter.addIndexes(dirs.toArray(new Directory[0]));
+            if (maxSegments > 0) {
+                report.progress(BulkPhase.FORCE_MERGE, total);
+                indexWriter.forceMerge(maxSegments);
+            }
+            commit();
+            searcherManager.maybeRefreshBlocking();
+            report.progress(BulkPhase.DONE, total);
+            return total;
         } finally {
-            searcherManager.release(indexSearcher);
+            if (changeSeq != null) {
+                changeSeq.release(hold);
+            }
+            executor.shutdownNow();
+            try {
+                // cancelled workers may still write to the sub indexes
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            IOUtils.close(dirs);
+            if (tmp != null) {
+                IOUtils.rm(tmp);
+            }
         }
-        return null;
     }
 
     /**
-     * entity exist ?
+     * document of the object
      *
-     * @param id doc id
+     * @param ob
+     * @param did doc id of the object
      * @return
+     * @throws Exception
      */
-    public boolean exist(String id) throws IOException {
-        IndexSearcher indexSearcher = searcherManager.acquire();
-        try {
-            BooleanQuery.Builder builder = new BooleanQuery.Builder();
-            FieldDesc fd = docId;
-            builder.add(new TermQuery(new Term(fd.getField().getName(), id)), BooleanClause.Occur.FILTER);
+    Document document(T ob, String did) throws Exception {
+        if (did == null || did.isEmpty()) {
+            throw new NullPointerException("doc id is null ");
+        }
+        final Document doc = new Document();
+        // _doc section just store
+        if (stored) {
+            doc.add(new StoredField("_doc", ob.serialize()));
+        }
+        for (List<FieldDesc> fs : allFields.values()) {
+            final FieldDesc f = fs.get(fs.size() - 1);  // the end
+            if (f.isJustSize()) {
+                String name = name(fs);
+                name = name + ".size";
+                final int size = size(fs, ob);
+                if (f.isIndex()) {
+                    doc.add(new IntPoint(name, size));
+                }
+                if (f.isStored()) {
+                    doc.add(new StoredField(name, size));
+                }
+                if (f.isSort()) {
+                    doc.add(new SortedNumericDocValuesField(name, size));
+                }
+                continue;
+            }
+            final Object v = value(fs, ob);
+            if (v != null) {
+                Class<?> inner = f.getInner();
+                String name = name(fs);
+                // collection
+                if (Collection.class.isAssignableFrom(v.getClass())) {
+                    if (inner == int.class || inner == Integer.class) {
+                        Collection<Integer> c = (Collection<Integer>) v;
+                        c.forEach(i -> {
+                            if (i != null) {
+                                if (f.isIndex()) {
+                                    doc.add(new IntPoint(name, i));
+                                }
+                                if (f.isStored()) {
+                                    doc.add(new StoredField(name, i));
+                                }
+                                if (f.isSort()) {
+                                    doc.add(new SortedNumericDocValuesField(name, i));
+                                }
+                            }
+                        });
+                    } else if (inner == long.class || inner == Long.class) {
+                        Collection<Long> c = (Collection<Long>) v;
+                        c.forEach(i -> {
+                            if (i != null) {
+                                if (f.isIndex()) {
+                                    doc.add(new LongPoint(name, i));
+                                }
+                                if (f.isStored()) {
+                                    doc.add(new StoredField(name, i));
+                                }
+                                if (f.isSort()) {
+                                    doc.add(new SortedNumericDocValuesField(name, i));
+                                }
+                            }
+                        });
+                    } else if (inner == BigInteger.class) {
+                        Collection<BigInteger> c = (Collection<BigInteger>) v;
+                        c.forEach(i -> {
+                            if (i != null) {
+                                if (f.isIndex()) {
+                                    doc.add(new BigIntegerPoint(name, i));
+                                }
+                                if (f.isStored()) {
+                                    doc.add(new StoredField(name, i.toString()));
+                                }
+                                if (f.isSort()) {
+                                    doc.add(new SortedSetDocValuesField(name, encode(i)));
+                                }
+                            }
+                        });
+                    } else if (inner == float.class || inner == Float.class) {
+                        Collection<Float> c = (Collection<Float>) v;
+                        c.forEach(i -> {
+                            if (i != null) {
+                                if (f.isIndex()) {
+                                    doc.add(new FloatPoint(name, i));
+                                }
+                                if (f.isStored()) {
+                                    doc.add(new StoredField(name, i));
+                                }
+                                if (f.isSort()) {
+                                    doc.add(new SortedNumericDocValuesField(name, NumericUtils.floatToSortableInt(i)));
+                                }
+                            }
+                        });
+                    } else if (inner == double.class || inner == Double.class) {
+                        Collection<Double> c = (Collection<Double>) v;
+                        c.forEach(i -> {
+                            if (i != null) {
+                                if (f.isIndex()) {
+                                    doc.add(new DoublePoint(name, i));
+                                }
+                                if (f.isStored()) {
+                                    doc.add(new StoredField(name, i));
+                                }
+                                if (f.isSort()) {
+                                    doc.add(new SortedNumericDocValuesField(name, NumericUtils.doubleToSortableLong(i)));
+                                }
+                            }
+                        });
+                    } else if (inner == Boolean.class) {
+                        Collection<Boolean> c = (Collection<Boolean>) v;
+                        c.forEach(i -> {
+                            if (i != null) {
+                                if (f.isIndex()) {
+                                    doc.add(new org.apache.lucene.document.StringField(name, i ? "true" : "false", f.isStored() ? org.apache.lucene.document.Field.Store.YES : org.apache.lucene.document.Field.Store.NO));
+                                } else if (f.isStored()) {
+                                    doc.add(new StoredField(name, i ? "true" : "false"));
+                                }
+                                if (f.isFacet() || f.isSort()) {
+                                    doc.add(new SortedSetDocValuesField(name, new BytesRef(i ? "true" : "false")));
+                                }
+                            }
+                        });
+                    } else if (inner == String.class) {
+                        Collection<String> c = (Collection<String>) v;
+                        c.forEach(i -> {
+                            if (i != null && !i.trim().isEmpty()) {
+                                if (f.isTokenized()) {
+                                    if (f.isIndex()) {
+                                        doc.add(textField(f, name, i));
+                                    } else if (f.isStored()) {
+                                        doc.add(new StoredField(name, i));
+                                    }
+                                } else {
+                                    if (f.isIndex()) {
+                                        doc.add(new org.apache.lucene.document.StringField(name, i, f.isStored() ? org.apache.lucene.document.Field.Store.YES : org.apache.lucene.document.Field.Store.NO));
+                                    } else if (f.isStored()) {
+                                        doc.add(new StoredField(name, i));
+                                    }
+                                    if (f.isFacet() || f.isSort()) {
+                                        doc.add(new SortedSetDocValuesField(name, new BytesRef(i)));
+                                    }
+                                }
+                            }
+                        });
+                    }
+                }
+                // not collection
+                else {
+                    if (inner == int.class || inner == Integer.class) {
+                        Integer i = (Integer) v;
+                        if (f.isIndex()) {
+                            doc.add(new IntPoint(name, i));
+                        }
+                        if (f.isStored()) {
+                            doc.add(new StoredField(name, i));
+                        }
+                        if (f.isSort()) {
+                            doc.add(new SortedNumericDocValuesField(name, i));
+                        }
+                    } else if (inner == long.class || inner == Long.class) {
+                        Long i = (Long) v;
+                        if (f.isIndex()) {
+                            doc.add(new LongPoint(name, i));
+                        }
+                        if (f.isStored()) {
+                            doc.add(new StoredField(name, i));
+                        }
+                        if (f.isSort()) {
+                            doc.add(new SortedNumericDocValuesField(name, i));
+                        }
+                    } else if (inner == BigInteger.class) {
+                        BigInteger i = (BigInteger) v;
+                        if (f.isIndex()) {
+                            doc.add(new BigIntegerPoint(name, i));
+                        }
+                        if (f.isStored()) {
+                            doc.add(new StoredField(name, String.valueOf(i)));
+                        }
+                        if (f.isSort()) {
+                            doc.add(new SortedDocValuesField(name, encode(i)));
+                        }
+                    } else if (inner == float.class || inner == Float.class) {
+                        Float i = (Float) v;
+                        if (f.isIndex()) {
+                            doc.add(new FloatPoint(name, i));
+                        }
+                        if (f.isStored()) {
+                            doc.add(new StoredField(name, i));
+                        }
+                        if (f.isSort()) {
+                            int sortedNumber = NumericUtils.floatToSortableInt(i);
+                            doc.add(new SortedNumericDocValuesField(name, sortedNumber));
+                        }
+                    } else if (inner == double.class || inner == Double.class) {
+                        Double i = (Double) v;
+                        if (f.isIndex()) {
+                            doc.add(new DoublePoint(name, i));
+                        }
+                        if (f.isStored()) {
+                            doc.add(new StoredField(name, i));
+                        }
+                        if (f.isSort()) {
+                            long sortedNumber = NumericUtils.doubleToSortableLong(i);
+                            doc.add(new SortedNumericDocValuesField(name, sortedNumber));
+                        }
+                    } else if (inner == boolean.class || inner == Boolean.class) {
+                        Boolean i = (Boolean) v;
+                        if (f.isIndex()) {
+                            doc.add(new org.apache.lucene.document.StringField(name, i ? "true" : "false", f.isStored() ? org.apache.lucene.document.Field.Store.YES : org.apache.lucene.document.Field.Store.NO));
+                        } else if (f.isStored()) {
+                            doc.add(new StoredField(name, i ? "true" : "false"));
+                        }
+                        if (f.isFacet()) {
+                            doc.add(new SortedSetDocValuesField(name, new BytesRef(i ? "true" : "false")));
+                        } else if (f.isSort()) {
+                            doc.add(new SortedDocValuesField(name, new BytesRef(i ? "true" : "false")));
+                        }
+                    } else if (inner == String.class) {
+                        String i = (String) v;
+                        if (f.isTokenized()) {
+                            if (f.isIndex()) {
+                                doc.add(textField(f, name, i));
+                            } else if (f.isStored()) {
+                                doc.add(new StoredField(name, i));
+                            }
+                        } else {
+                            if (f.isIndex()) {
+                                doc.add(new org.apache.lucene.document.StringField(name, i, f.isStored() ? org.apache.lucene.document.Field.Store.YES : org.apache.lucene.document.Field.Store.NO));
+                            } else if (f.isStored()) {
+                                doc.add(new StoredField(name, i));
+                            }
+                            if (f.isFacet()) {
+                                doc.add(new SortedSetDocValuesField(name, new BytesRef(i)));
+                            } else if (f.isSort()) {
+                                doc.add(new SortedDocValuesField(name, new BytesRef(i)));
+                            }
+                        }
+                    } else if (inner == float[].class) {
+                        doc.add(new KnnFloatVectorField(name, (float[]) v, vectorTypes.get(name)));
+                    }
+                }
+            }
+        }
+        if (ttl != null) {
+            Long expire = (Long) ttl.get(ob);
+            long v = expire == null || expire <= 0 ? Long.MAX_VALUE : expire;
+            doc.add(new LongPoint(EXPIRE_FIELD, v));
+            doc.add(new NumericDocValuesField(EXPIRE_FIELD, v));
+        }
+        // ids of the history of changes are stored
+        boolean storeId = docId.isStored() || changeSeq != null;
+        doc.add(new org.apache.lucene.document.StringField(docId.getField().getName(), did, storeId ? org.apache.lucene.document.Field.Store.YES : org.apache.lucene.document.Field.Store.NO));
+        return doc;
+    }
+
+    /**
+     * update document , logged to the translog first if enabled
+     *
+     * @param term
+     * @param doc
+     * @param ob
+     * @return sequence number
+     * @throws IOException
+     */
+    private long updateDocument(Term term, Document doc, T ob) throws IOException {
+        if (translog == null) {
+            return write(term, doc);
+        }
+        translogLock.readLock().lock();
+        try {
+            translog.index(ob.serialize());
+            return write(term, doc);
+        } finally {
+            translogLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * update document , with soft deletes the replaced doc is kept and the doc gets the next sequence number
+     * <p>
+     * writes of an id are serialized , so they take effect in the order of their sequence numbers
+     *
+     * @param term
+     * @param doc
+     * @return sequence number of the writer
+     * @throws IOException
+     */
+    private long write(Term term, Document doc) throws IOException {
+        if (changeSeq == null) {
+            return indexWriter.updateDocument(term, doc);
+        }
+        synchronized (changeSeq.lock(term)) {
+            long seq = changeSeq.next(term);
+            try {
+                addSeq(doc, seq);
+                return indexWriter.softUpdateDocument(term, doc, new NumericDocValuesField(SOFT_DELETES_FIELD, 1));
+            } finally {
+                changeSeq.done(seq);
+            }
+        }
+    }
+
+    /**
+     * delete with soft deletes , every deleted id gets a tombstone in the history of changes
+     *
+     * @param terms
+     * @return sequence number of the writer
+     * @throws IOException
+     */
+    private long softDelete(Term... terms) throws IOException {
+        long seq = 0;
+        String field = docIdField();
+        for (Term term : terms) {
+            if (term.field().equals(field)) {
+                seq = tombstone(term.text());
+            } else {
+                for (String id : ids(new TermQuery(term))) {
+                    seq = tombstone(id);
+                }
+            }
+        }
+        return seq;
+    }
+
+    /**
+     * write a tombstone replacing the doc of the id , the tombstone itself is soft deleted
+     *
+     * @param id
+     * @return sequence number of the writer
+     * @throws IOException
+     */
+    private long tombstone(String id) throws IOException {
+        Term term = new Term(docIdField(), id);
+        Document doc = new Document();
+        doc.add(new org.apache.lucene.document.StringField(term.field(), id, org.apache.lucene.document.Field.Store.YES));
+        doc.add(new NumericDocValuesField(TOMBSTONE_FIELD, 1));
+        doc.add(new NumericDocValuesField(SOFT_DELETES_FIELD, 1));
+        return write(term, doc);
+    }
+
+    /**
+     * ids of the live docs matching the queries , after a refresh
+     *
+     * @param queries
+     * @return
+     * @throws IOException
+     */
+    private Set<String> ids(Query... queries) throws IOException {
+        searcherManager.maybeRefreshBlocking();
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            Set<String> ids = new LinkedHashSet<>();
+            Set<String> fields = Collections.singleton(docIdField());
+            StoredFields sf = searcher.storedFields();
+            int n = Math.max(1, searcher.getIndexReader().numDocs());
+            for (Query query : queries) {
+                for (ScoreDoc sd : searcher.search(query, n).scoreDocs) {
+                    String id = sf.document(sd.doc, fields).get(docIdField());
+                    if (id != null) {
+                        ids.add(id);
+                    }
+                }
+            }
+            return ids;
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
+
+    /**
+     * sequence number fields of a doc , points for ranges of the history and doc values for its order
+     *
+     * @param doc
+     * @param seq
+     */
+    private static void addSeq(Document doc, long seq) {
+        doc.add(new LongPoint(SEQ_FIELD, seq));
+        doc.add(new NumericDocValuesField(SEQ_FIELD, seq));
+    }
+
+    /**
+     * max sequence number in the index , live or deleted
+     *
+     * @param writer
+     * @return 0 for an index without history
+     * @throws IOException
+     */
+    private static long maxSeq(IndexWriter writer) throws IOException {
+        try (DirectoryReader reader = DirectoryReader.open(writer)) {
+            byte[] max = PointValues.getMaxPackedValue(reader, SEQ_FIELD);
+            return max == null ? 0 : LongPoint.decodeDimension(max, 0);
+        }
+    }
+
+    /**
+     * doc id of the object
+     *
+     * @param ob
+     * @return
+     * @throws IllegalAccessException
+     */
+    String docId(T ob) throws IllegalAccessException {
+        Object v = value(docId, ob);
+        return v == null ? null : v.toString();
+    }
+
+    /**
+     * name of the doc id field
+     *
+     * @return
+     */
+    String docIdField() {
+        return docId.getField().getName();
+    }
+
+    /**
+     * text field , with offsets in postings for highlighting if required
+     *
+     * @param f
+     * @param name
+     * @param v
+     * @return
+     */
+    private static org.apache.lucene.document.Field textField(FieldDesc f, String name, String v) {
+        if (f.isOffsets()) {
+            return new org.apache.lucene.document.Field(name, v, f.isStored() ? TEXT_OFFSETS_STORED : TEXT_OFFSETS);
+        }
+        return new org.apache.lucene.document.TextField(name, v, f.isStored() ? org.apache.lucene.document.Field.Store.YES : org.apache.lucene.document.Field.Store.NO);
+    }
+
+    /**
+     * name for the field
+     *
+     * @param fs
+     * @return
+     */
+    private static String name(List<FieldDesc> fs) {
+        String name = fs.stream().map(f -> f.getField().getName()).collect(Collectors.joining("."));
+        return name;
+    }
+
+    /**
+     * cursor for pageable query
+     *
+     * @param after last entity of previous page
+     * @param sort
+     * @return
+     */
+    FieldDoc fieldDoc(T after, Sort sort) {
+        if (after == null) {
+            return null;
+        }
+        return new FieldDoc(after.doc, after.score, sort == null ? new Object[]{} : Arrays.stream(sort.getSort()).map(f -> {
+            try {
+                return value(after, f);
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException(e);
+            }
+        }).toArray());
+    }
+
+    /**
+     * value for sortField , encoded as the doc values of the field
+     *
+     * @param root
+     * @param sf
+     * @return
+     */
+    private Object value(T root, SortField sf) throws IllegalAccessException {
+        if (sf.getType() == SortField.Type.SCORE) {
+            return root.score;
+        } else if (sf.getType() == SortField.Type.DOC) {
+            return root.doc;
+        }
+        List<FieldDesc> descs = allFields.get(sf.getField());
+        if (descs == null) {
+            return missing(sf);
+        }
+        Object v = descs.get(descs.size() - 1).isJustSize() ? (Object) size(descs, root) : value(descs, root);
+        if (v instanceof Collection) {
+            List<Object> values = ((Collection<?>) v).stream()
+                    .filter(Objects::nonNull)
+                    .map(Lucener::sortable)
+                    .distinct()
+                    .sorted((a, b) -> ((Comparable<Object>) a).compareTo(b))
+                    .collect(Collectors.toList());
+            v = values.isEmpty() ? null : values.get(select(sf, values.size()));
+        } else {
+            v = sortable(v);
+        }
+        return v == null ? missing(sf) : v;
+    }
+
+    /**
+     * index of the value selected by the sort field from n sorted values
+     *
+     * @param sf
+     * @param n
+     * @return
+     */
+    private static int select(SortField sf, int n) {
+        if (sf instanceof SortedNumericSortField) {
+            return ((SortedNumericSortField) sf).getSelector() == SortedNumericSelector.Type.MAX ? n - 1 : 0;
+        } else if (sf instanceof SortedSetSortField) {
+            switch (((SortedSetSortField) sf).getSelector()) {
+                case MAX:
+                    return n - 1;
+                case MIDDLE_MIN:
+                    return (n - 1) / 2;
+                case MIDDLE_MAX:
+                    return n / 2;
+                default:
+                    return 0;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * sortable value as in doc values
+     *
+     * @param v
+     * @return
+     */
+    private static Object sortable(Object v) {
+        if (v instanceof String) {
+            return new BytesRef((String) v);
+        } else if (v instanceof Boolean) {
+            return new BytesRef(((Boolean) v) ? "true" : "false");
+        } else if (v instanceof BigInteger) {
+            return encode((BigInteger) v);
+        }
+        return v;
+    }
+
+    /**
+     * value for doc without the sort field
+     *
+     * @param sf
+     * @return
+     */
+    private static Object missing(SortField sf) {
+        SortField.Type type = sf instanceof SortedNumericSortField ? ((SortedNumericSortField) sf).getNumericType() : sf.getType();
+        Object m = sf.getMissingValue();
+        switch (type) {
+            case INT:
+                return m != null ? m : 0;
+            case LONG:
+                return m != null ? m : 0L;
+            case FLOAT:
+                return m != null ? m : 0f;
+            case DOUBLE:
+                return m != null ? m : 0d;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @param fd
+     * @param root
+     * @return
+     * @throws IllegalAccessException
+     */
+    private static Object value(FieldDesc fd, Object root) throws IllegalAccessException {
+        Object value = fd.getField().get(root);
+        return value;
+    }
+
+    /**
+     * @param fs
+     * @param root
+     * @return
+     * @throws IllegalAccessException
+     */
+    private static int size(List<FieldDesc> fs, Object root) throws IllegalAccessException {
+        Collection c = (Collection) value(fs, root);
+        return c == null ? 0 : c.size();
+    }
+
+    /**
+     * get value
+     *
+     * @param fs
+     * @param root
+     * @return
+     */
+    private static Object value(List<FieldDesc> fs, Object root) throws IllegalAccessException {
+        FieldDesc fd = fs.get(0);
+        Object value = fd.getField().get(root);
+        if (isEmpty(value)) {
+            return null;
+        } else {
+            if (fd.isEnd()) {
+                return value;
+            }
+            // not end
+            else {
+                // collection
+                if (fd.isCollection()) {
+                    Collection<Object> ret = new HashSet<>();
+                    Collection<?> c = (Collection<?>) value;
+                    for (Object item : c) {
+                        List<FieldDesc> fds = fs.subList(1, fs.size());
+                        Object temp = value(fds, item);
+                        if (temp != null) {
+                            if (isCollection(temp.getClass())) {
+                                Collection tc = (Collection) temp;
+                                ret.addAll(tc);
+                            } else {
+                                ret.add(temp);
+                            }
+                        }
+                    }
+                    return ret;
+                }
+                // not collection
+                else {
+                    return value(fs.subList(1, fs.size()), value);
+                }
+            }
+        }
+    }
+
+    /**
+     * is empty
+     *
+     * @param v
+     * @return
+     */
+    public static boolean isEmpty(Object v) {
+        if (v == null) {
+            return true;
+        } else if (isCollection(v.getClass())) {
+            Collection<?> c = (Collection<?>) v;
+            return c.isEmpty();
+        }
+        return false;
+    }
+
+    /**
+     * commit
+     *
+     * @return
+     */
+    public long commit() throws IOException {
+        writable();
+        if (translog == null) {
+            return indexWriter.commit();
+        }
+        return commitWithTranslog();
+    }
+
+    /**
+     * roll the translog and commit with the new generation , then delete the logs before it
+     * <p>
+     * ops of the old generation are all applied to the writer when the roll holds the write lock ,
+     * so the commit contains them .
+     *
+     * @return
+     * @throws IOException
+     */
+    private synchronized long commitWithTranslog() throws IOException {
+        long generation;
+        translogLock.writeLock().lock();
+        try {
+            generation = translog.roll();
+        } finally {
+            translogLock.writeLock().unlock();
+        }
+        indexWriter.setLiveCommitData(Collections.singletonMap(Translog.GENERATION, String.valueOf(generation)).entrySet());
+        long seq = indexWriter.commit();
+        lastCommit = System.currentTimeMillis();
+        translog.trim(generation);
+        return seq;
+    }
+
+    /**
+     * commit by the policy
+     *
+     * @param interval max millis between commits
+     * @param bytes    max translog bytes
+     * @param ops      max translog ops
+     */
+    private void maybeCommit(long interval, long bytes, long ops) {
+        long pending = translog.ops();
+        if (pending == 0) {
+            return;
+        }
+        if ((interval > 0 && System.currentTimeMillis() - lastCommit >= interval) || (bytes > 0 && translog.bytes() >= bytes) || (ops > 0 && pending >= ops)) {
+            try {
+                commit();
+            } catch (IOException | RuntimeException e) {
+                log.warn("scheduled commit failed : " + indexPath, e);
+            }
+        }
+    }
+
+    /**
+     * fsync the translog by the scheduler
+     */
+    private void syncTranslog() {
+        try {
+            translog.sync();
+        } catch (IOException | RuntimeException e) {
+            log.warn("translog sync failed : " + indexPath, e);
+        }
+    }
+
+    /**
+     * close all open luceners in parallel , as the shutdown hook does
+     */
+    public static void closeAll() {
+        Registry.closeAll();
+    }
+
+    /**
+     * ops replayed from the translog on open
+     *
+     * @return
+     */
+    public long replayed() {
+        return replayed;
+    }
+
+    /**
+     * close writer and directory , and remove from the registry
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        // evicted first , lookups during the close open a fresh instance instead of this closing one
+        Registry.evict(registryKey(type, Paths.get(indexPath), readOnly()), this);
+        if (purgeScheduler != null) {
+            purgeScheduler.shutdown();
+            try {
+                purgeScheduler.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (reopenThread != null) {
+            reopenThread.close();
+        }
+        if (watcher != null) {
+            watcher.close();
+        }
+        if (publisher != null) {
+            publisher.close();
+        }
+        if (translog != null) {
+            if (indexWriter.isOpen()) {
+                commit();
+            }
+            translog.close();
+        }
+        if (indexWriter != null) {
+            ResourceGovernor.unregister(indexWriter);
+            indexWriter.close();
+        }
+        searcherManager.close();
+        directory.close();
+    }
+
+    /**
+     * publish refreshed segments to the replica path now
+     *
+     * @return false if nothing changed since the last publish
+     * @throws IOException
+     */
+    public boolean publish() throws IOException {
+        if (publisher == null) {
+            error(type, "no replicaPath");
+        }
+        return publisher.publish();
+    }
+
+    /**
+     * read only or not
+     *
+     * @return
+     */
+    public boolean readOnly() {
+        return indexWriter == null;
+    }
+
+    /**
+     * fail fast on a read only lucener
+     */
+    private void writable() {
+        if (indexWriter == null) {
+            error(type, "read only");
+        }
+    }
+
+    /**
+     * refresh of a read only lucener , openIfChanged on new commits
+     */
+    private void refreshQuietly() {
+        try {
+            searcherManager.maybeRefresh();
+        } catch (Exception e) {
+            log.warn("refresh failed : " + indexPath, e);
+        }
+    }
+
+    /**
+     * switch the writer to the settings of the profile
+     *
+     * @param profile
+     */
+    public void profile(WriterProfile profile) {
+        writerSettings(profile.settings());
+    }
+
+    /**
+     * switch the writer to the settings , the stored fields mode stays as opened
+     *
+     * @param settings
+     */
+    public void writerSettings(WriterSettings settings) {
+        writable();
+        WriterSettings ws = settings.copy();
+        ws.storedFieldsMode(writerSettings.getStoredFieldsMode());
+        ws.apply(indexWriter.getConfig());
+        ResourceGovernor.setRamBufferSizeMB(indexWriter, ws.getRamBufferSizeMB());
+        writerSettings = ws;
+    }
+
+    /**
+     * writer settings applied
+     *
+     * @return a copy
+     */
+    public WriterSettings writerSettings() {
+        return writerSettings.copy();
+    }
+
+    /**
+     * get by id
+     *
+     * @param id
+     * @return
+     */
+    public T get(String id) throws Exception {
+        IndexSearcher indexSearcher = searcherManager.acquire();
+        try {
+            BooleanQuery.Builder builder = new BooleanQuery.Builder();
+            FieldDesc fd = docId;
+            builder.add(new TermQuery(new Term(fd.getField().getName(), id)), BooleanClause.Occur.FILTER);
+            TopDocs topDocs = indexSearcher.searchAfter(null, builder.build(), 1);
+            ScoreDoc[] hits = topDocs.scoreDocs;
+            if (hits != null && hits.length > 0) {
+                T dsi = (T) this.type.getDeclaredConstructor().newInstance();  // ? not very ok . . .
+                for (ScoreDoc sc : hits) {
+                    int did = sc.doc;
+                    Document doc = indexSearcher.getIndexReader().storedFields().document(did);
+                    String docString = doc.get("_doc");
+                    if (docString != null) {
+                        T d = dsi.deserialize(docString);
+                        d.doc = did;
+                        d.score = sc.score;
+                        d.shardIndex = sc.shardIndex;
+                        return d;
+                    }
+                }
+            }
+        } finally {
+            searcherManager.release(indexSearcher);
+        }
+        return null;
+    }
+
+    /**
+     * entity exist ?
+     *
+     * @param id doc id
+     * @return
+     */
+    public boolean exist(String id) throws IOException {
+        IndexSearcher indexSearcher = searcherManager.acquire();
+        try {
+            BooleanQuery.Builder builder = new BooleanQuery.Builder();
+            FieldDesc fd = docId;
+            builder.add(new TermQuery(new Term(fd.getField().getName(), id)), BooleanClause.Occur.FILTER);
             TopDocs topDocs = indexSearcher.searchAfter(null, builder.build(), 1);
             ScoreDoc[] hits = topDocs.scoreDocs;
             return hits != null && hits.length > 0;
@@ -1127,293 +2550,1327 @@ public class Lucener<T extends DocSerializable<T>> {
     }
 
     /**
-     * delete doc
+     * delete doc
+     *
+     * @param field
+     * @param v
+     */
+    public long deleteDocuments(String field, Object v) throws Exception {
+        Query query = buildExactQuery(field, v);
+        if (query != null) {
+            return deleteDocuments(query);
+        } else {
+            throw new RuntimeException("query not valid ");
+        }
+    }
+
+    /**
+     * delete from query
+     *
+     * @param queries
+     */
+    public long deleteDocuments(Query... queries) throws IOException {
+        writable();
+        if (changeSeq != null) {
+            // deletes by id , logged as terms
+            Set<String> ids = ids(queries);
+            Term[] terms = new Term[ids.size()];
+            int i = 0;
+            for (String id : ids) {
+                terms[i++] = new Term(docIdField(), id);
+            }
+            return terms.length == 0 ? 0 : deleteDocuments(terms);
+        }
+        long seq = indexWriter.deleteDocuments(queries);
+        if (translog != null) {
+            // queries can not be logged , commit to make the delete durable
+            commit();
+        }
+        return seq;
+    }
+
+    /**
+     * delete from term
+     *
+     * @param terms
+     * @return
+     * @throws IOException
+     */
+    public long deleteDocuments(Term... terms) throws IOException {
+        writable();
+        if (translog == null) {
+            return changeSeq == null ? indexWriter.deleteDocuments(terms) : softDelete(terms);
+        }
+        long seq;
+        long position;
+        translogLock.readLock().lock();
+        try {
+            position = translog.delete(terms);
+            seq = changeSeq == null ? indexWriter.deleteDocuments(terms) : softDelete(terms);
+        } finally {
+            translogLock.readLock().unlock();
+        }
+        if (syncEveryWrite) {
+            translog.sync(position);
+        }
+        return seq;
+    }
+
+    /**
+     * delete expired docs in batches of range deletes on the expiry , at most ttlPurgeDocsPerSec
+     * <p>
+     * with ttlDropSegments , segments whose docs are all expired are deleted at once first , the writer drops
+     * them without merging . with soft deletes every expired doc gets a tombstone in the history of changes , under
+     * the lock of its id , and a doc written again since the batch was searched is left to the next purge .
+     *
+     * @return expired docs deleted
+     * @throws IOException
+     */
+    public long purgeExpired() throws IOException {
+        writable();
+        if (ttl == null) {
+            error(type, "no Ttl field");
+        }
+        synchronized (purgeLock) {
+            long now = System.currentTimeMillis();
+            long purged = 0;
+            if (dropExpiredSegments && changeSeq == null) {
+                purged += dropExpiredSegments(now);
+            }
+            long from = Long.MIN_VALUE;
+            while (!closed.get()) {
+                long start = System.nanoTime();
+                long n;
+                if (changeSeq == null) {
+                    long[] batch = purgeBatch(from, now);
+                    n = batch[0];
+                    from = batch[1] + 1;
+                    purged += n;
+                } else {
+                    long[] batch = softPurgeBatch(now);
+                    n = batch[0];
+                    purged += batch[1];
+                    if (batch[1] == 0) {
+                        break;
+                    }
+                }
+                if (n < purgeBatch) {
+                    break;
+                }
+                if (purgeDocsPerSec > 0) {
+                    long wait = n * 1000L / purgeDocsPerSec - (System.nanoTime() - start) / 1000000;
+                    if (wait > 0) {
+                        try {
+                            Thread.sleep(wait);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            break;
+                        }
+                    }
+                }
+            }
+            return purged;
+        }
+    }
+
+    private void purgeQuietly() {
+        try {
+            long n = purgeExpired();
+            if (n > 0) {
+                log.debug("purged " + n + " expired docs : " + indexPath);
+            }
+        } catch (Exception e) {
+            log.warn("purge failed : " + indexPath, e);
+        }
+    }
+
+    /**
+     * delete the fully expired segments by one range delete up to their max expiry
+     *
+     * @param now
+     * @return docs deleted
+     * @throws IOException
+     */
+    private long dropExpiredSegments(long now) throws IOException {
+        searcherManager.maybeRefreshBlocking();
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            long cutoff = Long.MIN_VALUE;
+            for (LeafReaderContext leaf : searcher.getIndexReader().leaves()) {
+                PointValues values = leaf.reader().getPointValues(EXPIRE_FIELD);
+                if (values != null && values.getDocCount() == leaf.reader().maxDoc()) {
+                    long max = LongPoint.decodeDimension(values.getMaxPackedValue(), 0);
+                    if (max <= now) {
+                        cutoff = Math.max(cutoff, max);
+                    }
+                }
+            }
+            if (cutoff == Long.MIN_VALUE) {
+                return 0;
+            }
+            // expired docs of other segments in the range go too
+            Query range = LongPoint.newRangeQuery(EXPIRE_FIELD, Long.MIN_VALUE, cutoff);
+            int docs = new IndexSearcher(searcher.getIndexReader()).count(range);
+            indexWriter.deleteDocuments(range);
+            return docs;
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
+
+    /**
+     * delete the next batch of expired docs by a range delete
+     * <p>
+     * not logged to the translog , expired docs of a replay are purged again
+     *
+     * @param from min expiry of the batch
+     * @param now
+     * @return docs of the batch and the max expiry deleted
+     * @throws IOException
+     */
+    private long[] purgeBatch(long from, long now) throws IOException {
+        searcherManager.maybeRefreshBlocking();
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            // expired docs are hidden by the searcher of the manager
+            IndexSearcher all = new IndexSearcher(searcher.getIndexReader());
+            Sort sort = new Sort(new SortField(EXPIRE_FIELD, SortField.Type.LONG));
+            TopFieldDocs top = all.search(LongPoint.newRangeQuery(EXPIRE_FIELD, from, now), purgeBatch, sort);
+            int n = top.scoreDocs.length;
+            if (n == 0) {
+                return new long[]{0, now};
+            }
+            long to = n < purgeBatch ? now : (Long) ((FieldDoc) top.scoreDocs[n - 1]).fields[0];
+            indexWriter.deleteDocuments(LongPoint.newRangeQuery(EXPIRE_FIELD, from, to));
+            return new long[]{n, to};
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
+
+    /**
+     * tombstones for the next batch of expired docs
+     * <p>
+     * the searcher sees all writes up to the checkpoint taken before the refresh . an id is tombstoned under its
+     * lock only if no write but the tombstones of the batch came under that lock after the checkpoint , so a doc
+     * replaced since the search is kept .
+     *
+     * @param now
+     * @return expired docs of the batch and docs tombstoned
+     * @throws IOException
+     */
+    private long[] softPurgeBatch(long now) throws IOException {
+        long seen = changeSeq.checkpoint();
+        searcherManager.maybeRefreshBlocking();
+        IndexSearcher searcher = searcherManager.acquire();
+        List<String> ids = new ArrayList<>(purgeBatch);
+        try {
+            IndexSearcher all = new IndexSearcher(searcher.getIndexReader());
+            Set<String> fields = Collections.singleton(docIdField());
+            StoredFields sf = all.storedFields();
+            for (ScoreDoc sd : all.search(LongPoint.newRangeQuery(EXPIRE_FIELD, Long.MIN_VALUE, now), purgeBatch).scoreDocs) {
+                String id = sf.document(sd.doc, fields).get(docIdField());
+                if (id != null) {
+                    ids.add(id);
+                }
+            }
+        } finally {
+            searcherManager.release(searcher);
+        }
+        long n = 0;
+        // last tombstone of the batch under every lock
+        Map<Object, Long> own = new HashMap<>();
+        for (String id : ids) {
+            Term term = new Term(docIdField(), id);
+            Object lock = changeSeq.lock(term);
+            synchronized (lock) {
+                long last = changeSeq.written(term);
+                if (last <= seen || last == own.getOrDefault(lock, 0L)) {
+                    tombstone(id);
+                    own.put(lock, changeSeq.written(term));
+                    n++;
+                }
+            }
+        }
+        return new long[]{ids.size(), n};
+    }
+
+    /**
+     * changes after the sequence number in the order of writes , from the history kept by soft deletes
+     * <p>
+     * a doc of every write is searched by a range of sequence numbers , so the cost grows with the changes returned
+     * and not with the index . changes are returned up to the latest sequence number whose writes and all writes
+     * before are done , the last seq of the result is the start of the next call .
+     *
+     * @param seq sequence number of the latest change seen , 0 for the full retained history
+     * @param max max changes returned
+     * @return
+     * @throws Exception
+     */
+    public List<Change<T>> changesSince(long seq, int max) throws Exception {
+        writable();
+        if (changeSeq == null) {
+            error(type, "soft deletes not enabled");
+        }
+        long retained = retainedSeq();
+        if (seq < retained) {
+            error(type, "changes since " + seq + " not retained , history starts after " + retained);
+        }
+        long upTo = changeSeq.checkpoint();
+        if (upTo <= seq || max <= 0) {
+            return Collections.emptyList();
+        }
+        // done writes visible
+        searcherManager.maybeRefreshBlocking();
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            IndexSearcher history = new IndexSearcher(new HistoryReader((DirectoryReader) searcher.getIndexReader()));
+            history.setQueryCache(null);
+            Sort sort = new Sort(new SortField(SEQ_FIELD, SortField.Type.LONG));
+            TopFieldDocs top = history.search(LongPoint.newRangeQuery(SEQ_FIELD, seq + 1, upTo), max, sort);
+            List<LeafReaderContext> leaves = history.getIndexReader().leaves();
+            StoredFields sf = history.storedFields();
+            Set<String> fields = new HashSet<>(Arrays.asList(docIdField(), "_doc"));
+            T dsi = (T) type.getDeclaredConstructor().newInstance();
+            List<Change<T>> ret = new ArrayList<>(top.scoreDocs.length);
+            for (ScoreDoc sd : top.scoreDocs) {
+                LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(sd.doc, leaves));
+                NumericDocValues tombstone = leaf.reader().getNumericDocValues(TOMBSTONE_FIELD);
+                boolean deleted = tombstone != null && tombstone.advanceExact(sd.doc - leaf.docBase);
+                Document doc = sf.document(sd.doc, fields);
+                String json = deleted ? null : doc.get("_doc");
+                ret.add(new Change<>(deleted ? Change.Op.DELETE : Change.Op.INDEX, (Long) ((FieldDoc) sd).fields[0],
+                        doc.get(docIdField()), json == null ? null : dsi.deserialize(json)));
+            }
+            return ret;
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
+
+    /**
+     * changes after this sequence number are kept in the history , older ones may be removed by merges
+     *
+     * @return
+     */
+    public long retainedSeq() {
+        return changeSeq == null ? 0 : Math.max(0, changeSeq.max() - changesRetainOps);
+    }
+
+    /**
+     * latest sequence number of the history of changes
+     *
+     * @return 0 if soft deletes are not enabled
+     */
+    public long lastSeq() {
+        return changeSeq == null ? 0 : changeSeq.max();
+    }
+
+    /**
+     * query
+     *
+     * @param n
+     * @param sort
+     * @return
+     * @throws Exception
+     */
+    public QueryResult<T> query(Query query, int n, Sort sort) throws Exception {
+        return queryAfter(null, query, n, sort);
+    }
+
+    /**
+     * query
+     *
+     * @param after
+     * @param query
+     * @param n
+     * @param sort
+     * @return
+     * @throws Exception
+     */
+    public QueryResult<T> query(T after, Query query, int n, Sort sort) throws Exception {
+        FieldDoc fd = fieldDoc(after, sort);
+        return queryAfter(fd, query, n, sort);
+    }
+
+    /**
+     * query by field value
+     *
+     * @param field simpy field or complex field as a.b.c
+     * @param v     value for query
+     * @param n     top n
+     * @return
+     */
+    public QueryResult<T> query(String field, Object v, int n, Sort sort) throws Exception {
+        return queryAfter((FieldDoc) null, field, v, n, sort);
+    }
+
+    /**
+     * for pageable query
+     *
+     * @param after
+     * @param field
+     * @param v
+     * @param n
+     * @return
+     * @throws Exception
+     */
+    public QueryResult<T> queryAfter(T after, String field, Object v, int n, Sort sort) throws Exception {
+        return queryAfter(fieldDoc(after, sort), field, v, n, sort);
+    }
+
+    /**
+     * for pageable query
+     *
+     * @param after
+     * @param field
+     * @param v
+     * @param n
+     * @return
+     * @throws Exception
+     */
+    public QueryResult<T> queryAfter(FieldDoc after, String field, Object v, int n, Sort sort) throws Exception {
+        QueryResult<T> queryResult = null;
+        Query query = buildExactQuery(field, v);
+        if (query != null) {
+//            if (sort != null && after != null) {
+//                after = (after instanceof FieldDoc) ? after : new FieldDoc(after.doc, after.score);
+//            }
+            queryResult = queryAfter(after, query, n, sort);
+        }
+        return queryResult == null ? QueryResult.empty() : queryResult;
+    }
+
+    /**
+     * all result
+     *
+     * @return
+     * @throws Exception
+     */
+    public QueryResult<T> all() throws Exception {
+        return all(null, 128, null);
+    }
+
+    /**
+     * all result
+     *
+     * @param after
+     * @param n
+     * @return
+     * @throws Exception
+     */
+    public QueryResult<T> all(T after, int n, Sort sort) throws Exception {
+        Query q = new MatchAllDocsQuery();
+        return queryAfter(fieldDoc(after, sort), q, n, sort);
+    }
+
+    /**
+     * k nearest neighbors of the vector by the HNSW graph
+     *
+     * @param field  vector field as a or a.b.c
+     * @param vector query vector
+     * @param k      top k
+     * @param filter only docs match the filter , null for all
+     * @return
+     * @throws Exception
+     */
+    public QueryResult<T> knn(String field, float[] vector, int k, Query filter) throws Exception {
+        vectorType(field, vector);
+        return queryAfter(null, new KnnFloatVectorQuery(field, vector, k, filter), k, null);
+    }
+
+    /**
+     * k nearest neighbors of the vector , k * oversample candidates from the HNSW graph are rescored by full precision vectors
+     * <p>
+     * for quantized vector fields the graph scores are approximate , rescoring the candidates brings back the recall
+     *
+     * @param field      vector field as a or a.b.c
+     * @param vector     query vector
+     * @param k          top k
+     * @param filter     only docs match the filter , null for all
+     * @param oversample candidates = k * oversample
+     * @return rescored top k , total is the number of them
+     * @throws Exception
+     */
+    public QueryResult<T> knn(String field, float[] vector, int k, Query filter, int oversample) throws Exception {
+        FieldType ft = vectorType(field, vector);
+        if (oversample <= 1) {
+            return knn(field, vector, k, filter);
+        }
+        IndexSearcher indexSearcher = searcherManager.acquire();
+        try {
+            TopDocs candidates = indexSearcher.search(new KnnFloatVectorQuery(field, vector, k * oversample, filter), k * oversample);
+            ScoreDoc[] hits = rescore(indexSearcher, field, vector, ft.vectorSimilarityFunction(), candidates.scoreDocs, k);
+            List<T> ret = new ArrayList<>(hits.length);
+            final StoredFields sfReader = indexSearcher.getIndexReader().storedFields();
+            T dsi = (T) this.type.getDeclaredConstructor().newInstance();
+            for (ScoreDoc sc : hits) {
+                T d = load(sfReader, sc, dsi);
+                if (d != null) {
+                    ret.add(d);
+                }
+            }
+            return new QueryResult<>(hits.length, ret);
+        } finally {
+            searcherManager.release(indexSearcher);
+        }
+    }
+
+    /**
+     * rescore hits by full precision vectors
+     *
+     * @param indexSearcher
+     * @param field
+     * @param vector
+     * @param similarity
+     * @param hits
+     * @param k
+     * @return top k hits by the new score
+     * @throws IOException
+     */
+    private static ScoreDoc[] rescore(IndexSearcher indexSearcher, String field, float[] vector, VectorSimilarityFunction similarity, ScoreDoc[] hits, int k) throws IOException {
+        ScoreDoc[] sorted = hits.clone();
+        Arrays.sort(sorted, Comparator.comparingInt(sd -> sd.doc));  // vector values iterate forward only
+        List<LeafReaderContext> leaves = indexSearcher.getIndexReader().leaves();
+        int leaf = -1;
+        FloatVectorValues values = null;
+        for (ScoreDoc sd : sorted) {
+            int i = ReaderUtil.subIndex(sd.doc, leaves);
+            if (i != leaf) {
+                leaf = i;
+                values = leaves.get(i).reader().getFloatVectorValues(field);
+            }
+            int doc = sd.doc - leaves.get(i).docBase;
+            if (values != null && values.advance(doc) == doc) {
+                sd.score = similarity.compare(vector, values.vectorValue());
+            }
+        }
+        Arrays.sort(sorted, (a, b) -> Float.compare(b.score, a.score));
+        return Arrays.copyOf(sorted, Math.min(k, sorted.length));
+    }
+
+    /**
+     * hybrid query of lexical and vector search on the same searcher , results fused by rrf or weighted scores
+     * <p>
+     * both searches run concurrently and take 2 * n candidates , only the final top n hits are deserialized .
+     * score of the results is the fused score .
+     *
+     * @param lexical     lexical query , such as parsed from a text field
+     * @param vectorField vector field as a or a.b.c
+     * @param vector      query vector
+     * @param n           top n
+     * @param filter      only docs match the filter for both searches , null for all
+     * @param fusion      how to fuse
+     * @return
+     * @throws Exception
+     */
+    public QueryResult<T> hybrid(Query lexical, String vectorField, float[] vector, int n, Query filter, Fusion fusion) throws Exception {
+        vectorType(vectorField, vector);
+        final int candidates = n * 2;
+        final Query lexicalQuery;
+        if (filter != null) {
+            BooleanQuery.Builder builder = booleanQuery();
+            must(builder, lexical);
+            filter(builder, filter);
+            lexicalQuery = builder.build();
+        } else {
+            lexicalQuery = lexical;
+        }
+        IndexSearcher indexSearcher = searcherManager.acquire();
+        Future<TopDocs> lexicalDocs = null;
+        try {
+            lexicalDocs = HYBRID_EXECUTOR.submit(() -> indexSearcher.search(lexicalQuery, candidates));
+            TopDocs vectorDocs = indexSearcher.search(new KnnFloatVectorQuery(vectorField, vector, candidates, filter), candidates);
+            ScoreDoc[] hits = fuse(lexicalDocs.get().scoreDocs, vectorDocs.scoreDocs, fusion);
+            List<T> ret = new ArrayList<>(Math.min(n, hits.length));
+            final StoredFields sfReader = indexSearcher.getIndexReader().storedFields();
+            T dsi = (T) this.type.getDeclaredConstructor().newInstance();
+            for (int i = 0; i < hits.length && ret.size() < n; i++) {
+                T d = load(sfReader, hits[i], dsi);
+                if (d != null) {
+                    ret.add(d);
+                }
+            }
+            return new QueryResult<>(hits.length, ret);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        } finally {
+            // the lexical leg uses the searcher until done , not interrupted as interrupts close nio channels
+            if (lexicalDocs != null) {
+                boolean interrupted = false;
+                while (true) {
+                    try {
+                        lexicalDocs.get();
+                        break;
+                    } catch (ExecutionException e) {
+                        // reported above , or after the failure of the vector leg
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            searcherManager.release(indexSearcher);
+        }
+    }
+
+    /**
+     * fuse two ranked lists , order by fused score desc
+     *
+     * @param lexical
+     * @param vector
+     * @param fusion
+     * @return
+     */
+    private static ScoreDoc[] fuse(ScoreDoc[] lexical, ScoreDoc[] vector, Fusion fusion) {
+        Map<Integer, ScoreDoc> fused = new HashMap<>();
+        ScoreDoc[][] lists = {lexical, vector};
+        for (int l = 0; l < lists.length; l++) {
+            ScoreDoc[] list = lists[l];
+            float weight = l == 0 ? fusion.getLexicalWeight() : 1 - fusion.getLexicalWeight();
+            float min = Float.MAX_VALUE;
+            float max = -Float.MAX_VALUE;
+            for (ScoreDoc sd : list) {
+                min = Math.min(min, sd.score);
+                max = Math.max(max, sd.score);
+            }
+            for (int rank = 0; rank < list.length; rank++) {
+                ScoreDoc sd = list[rank];
+                float score;
+                if (fusion.isRrf()) {
+                    score = 1f / (fusion.getRankConstant() + rank + 1);
+                } else {
+                    score = weight * (max > min ? (sd.score - min) / (max - min) : 1f);
+                }
+                fused.computeIfAbsent(sd.doc, doc -> new ScoreDoc(doc, 0, sd.shardIndex)).score += score;
+            }
+        }
+        ScoreDoc[] ret = fused.values().toArray(new ScoreDoc[0]);
+        Arrays.sort(ret, (a, b) -> a.score != b.score ? Float.compare(b.score, a.score) : Integer.compare(a.doc, b.doc));
+        return ret;
+    }
+
+    /**
+     * field type of the vector field , and check the vector
+     *
+     * @param field
+     * @param vector
+     * @return
+     */
+    private FieldType vectorType(String field, float[] vector) {
+        FieldType ft = vectorTypes.get(field);
+        if (ft == null) {
+            throw new IllegalArgumentException("not a vector field : " + field);
+        }
+        if (vector == null || vector.length != ft.vectorDimension()) {
+            throw new IllegalArgumentException("vector dimension should be " + ft.vectorDimension());
+        }
+        return ft;
+    }
+
+    /**
+     * parse query string by the schema , the parsed query is cached for the same string
+     * <p>
+     * syntax of lucene classic query parser , such as : content:computer AND x:[1 TO 10] AND valid:true .
+     * wildcard , prefix , fuzzy and regexp queries are rejected as they expand to many terms .
+     *
+     * @param defaultField default field for terms without field
+     * @param text         query string
+     * @return
+     * @throws ParseException
+     */
+    public Query parse(String defaultField, String text) throws ParseException {
+        return parse(defaultField, text, false);
+    }
+
+    /**
+     * parse query string by the schema , the parsed query is cached for the same string
+     *
+     * @param defaultField default field for terms without field
+     * @param text         query string
+     * @param expansions   allow wildcard , prefix , fuzzy and regexp queries
+     * @return
+     * @throws ParseException
+     */
+    public Query parse(String defaultField, String text, boolean expansions) throws ParseException {
+        String key = (expansions ? "1" : "0") + defaultField + '\u0000' + text;
+        Query query = parsedQueries.get(key);
+        if (query == null) {
+            if (fieldDesc(defaultField) == null) {
+                throw new ParseException("unknown field : " + defaultField);
+            }
+            query = new SchemaQueryParser(this, defaultField, analyzer, expansions).parse(text);
+            parsedQueries.put(key, query);
+        }
+        return query;
+    }
+
+    /**
+     * search by query string
+     *
+     * @param defaultField default field for terms without field
+     * @param text         query string
+     * @param n            top n
+     * @param sort
+     * @return
+     * @throws Exception
+     */
+    public QueryResult<T> search(String defaultField, String text, int n, Sort sort) throws Exception {
+        return queryAfter(null, parse(defaultField, text), n, sort);
+    }
+
+    /**
+     * description of the field as a or a.b.c
+     *
+     * @param field
+     * @return null for unknown field
+     */
+    FieldDesc fieldDesc(String field) {
+        if (docId.getField().getName().equals(field)) {
+            return docId;
+        }
+        List<FieldDesc> list = allFields.get(field);
+        return list == null || list.isEmpty() ? null : list.get(list.size() - 1);
+    }
+
+    /**
+     * build query for filed exact query
+     * <p>
+     * fields with index = false are matched by a slow doc values query , which needs sort = true or facet = true
+     *
+     * @param field
+     * @param v
+     * @return
+     */
+    public Query buildExactQuery(String field, Object v) {
+        List<FieldDesc> list = docId.getField().getName().equals(field) ? Collections.singletonList(docId) : allFields.get(field);
+        if (list != null && !list.isEmpty()) {
+            FieldDesc fd = list.get(list.size() - 1);
+            Class<?> type = fd.getInner();
+            if (!fd.isIndex()) {
+                return buildDocValuesQuery(list, field, v, v);
+            }
+            if (type == int.class || type == Integer.class) {
+                return IntPoint.newExactQuery(field, (Integer) v);
+            } else if (type == long.class || type == Long.class) {
+                return LongPoint.newExactQuery(field, (Long) v);
+            } else if (type == BigInteger.class) {
+                return BigIntegerPoint.newExactQuery(field, (BigInteger) v);
+            } else if (type == float.class || type == Float.class) {
+                return FloatPoint.newExactQuery(field, (Float) v);
+            } else if (type == double.class || type == Double.class) {
+                return DoublePoint.newExactQuery(field, (Double) v);
+            } else if (type == boolean.class || type == Boolean.class) {
+                return new TermQuery(new Term(field, ((Boolean) v) ? "true" : "false"));
+            } else if (type == String.class) {
+                return new TermQuery(new Term(field, (String) v));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * build query for field range query , bounds are inclusive and null for unbounded
+     * <p>
+     * a field with both index and doc values gets an IndexOrDocValuesQuery , so the cheaper one leads the execution ;
+     * fields with index = false are matched by doc values only
+     *
+     * @param field field as a or a.b.c
+     * @param lower lower bound
+     * @param upper upper bound
+     * @return
+     */
+    public Query buildRangeQuery(String field, Object lower, Object upper) {
+        List<FieldDesc> list = allFields.get(field);
+        if (list == null || list.isEmpty()) {
+            return null;
+        }
+        FieldDesc fd = list.get(list.size() - 1);
+        Class<?> type = fd.getInner();
+        Query points = null;
+        if (fd.isIndex()) {
+            if (type == Integer.class) {
+                points = IntPoint.newRangeQuery(field, lower == null ? Integer.MIN_VALUE : ((Number) lower).intValue(), upper == null ? Integer.MAX_VALUE : ((Number) upper).intValue());
+            } else if (type == Long.class) {
+                points = LongPoint.newRangeQuery(field, lower == null ? Long.MIN_VALUE : ((Number) lower).longValue(), upper == null ? Long.MAX_VALUE : ((Number) upper).longValue());
+            } else if (type == BigInteger.class) {
+                points = BigIntegerPoint.newRangeQuery(field, lower == null ? BigIntegerPoint.MIN_VALUE : (BigInteger) lower, upper == null ? BigIntegerPoint.MAX_VALUE : (BigInteger) upper);
+            } else if (type == Float.class) {
+                points = FloatPoint.newRangeQuery(field, lower == null ? Float.NEGATIVE_INFINITY : ((Number) lower).floatValue(), upper == null ? Float.POSITIVE_INFINITY : ((Number) upper).floatValue());
+            } else if (type == Double.class) {
+                points = DoublePoint.newRangeQuery(field, lower == null ? Double.NEGATIVE_INFINITY : ((Number) lower).doubleValue(), upper == null ? Double.POSITIVE_INFINITY : ((Number) upper).doubleValue());
+            } else if (type == String.class) {
+                points = TermRangeQuery.newStringRange(field, (String) lower, (String) upper, true, true);
+            }
+        }
+        if (!(fd.isSort() || fd.isFacet()) || type == Boolean.class) {
+            if (points == null) {
+                throw new IllegalArgumentException("range query not supported for field : " + field);
+            }
+            return points;
+        }
+        Query docValues = buildDocValuesQuery(list, field, lower, upper);
+        return points == null ? docValues : new IndexOrDocValuesQuery(points, docValues);
+    }
+
+    /**
+     * slow range query on doc values , bounds are inclusive and null for unbounded
      *
+     * @param list
      * @param field
+     * @param lower
+     * @param upper
+     * @return
+     */
+    private static Query buildDocValuesQuery(List<FieldDesc> list, String field, Object lower, Object upper) {
+        FieldDesc fd = list.get(list.size() - 1);
+        Class<?> type = fd.getInner();
+        if (!(fd.isSort() || fd.isFacet()) || fd.isTokenized()) {
+            throw new IllegalArgumentException("field with index = false should be sort = true : " + field);
+        }
+        if (type == Integer.class || type == Long.class || type == Float.class || type == Double.class) {
+            long lo = lower == null ? Long.MIN_VALUE : sortableLong(type, (Number) lower);
+            long up = upper == null ? Long.MAX_VALUE : sortableLong(type, (Number) upper);
+            return SortedNumericDocValuesField.newSlowRangeQuery(field, lo, up);
+        }
+        BytesRef lo = lower == null ? null : (BytesRef) sortable(lower);
+        BytesRef up = upper == null ? null : (BytesRef) sortable(upper);
+        if (sortedSet(list)) {
+            return SortedSetDocValuesField.newSlowRangeQuery(field, lo, up, true, true);
+        }
+        return SortedDocValuesField.newSlowRangeQuery(field, lo, up, true, true);
+    }
+
+    /**
+     * numeric value as in sorted numeric doc values
+     *
+     * @param type
      * @param v
+     * @return
      */
-    public long deleteDocuments(String field, Object v) throws Exception {
-        Query query = buildExactQuery(field, v);
-        if (query != null) {
-            return deleteDocuments(query);
-        } else {
-            throw new RuntimeException("query not valid ");
+    private static long sortableLong(Class<?> type, Number v) {
+        if (type == Float.class) {
+            return NumericUtils.floatToSortableInt(v.floatValue());
+        } else if (type == Double.class) {
+            return NumericUtils.doubleToSortableLong(v.doubleValue());
         }
+        return v.longValue();
     }
 
     /**
-     * delete from query
+     * term doc values of the field are sorted set or sorted
      *
-     * @param queries
+     * @param list
+     * @return
      */
-    public long deleteDocuments(Query... queries) throws IOException {
-        return indexWriter.deleteDocuments(queries);
+    private static boolean sortedSet(List<FieldDesc> list) {
+        return list.get(list.size() - 1).isFacet() || list.stream().anyMatch(FieldDesc::isCollection);
     }
 
     /**
-     * delete from term
+     * sort field for a field with sort = true
+     * <p>
+     * numeric fields sort on sorted numeric doc values , single valued string , boolean and BigInteger fields
+     * sort on sorted doc values , collection or facet ones sort on sorted set doc values .
+     * docs with many values sort by the min value .
      *
-     * @param terms
+     * @param field   field as a or a.b.c
+     * @param reverse descending or not
      * @return
-     * @throws IOException
      */
-    public long deleteDocuments(Term... terms) throws IOException {
-        return indexWriter.deleteDocuments(terms);
+    public SortField sortField(String field, boolean reverse) {
+        List<FieldDesc> list = sortable(field);
+        if (numericSortType(list.get(list.size() - 1).getInner()) != null) {
+            return sortField(field, reverse, SortedNumericSelector.Type.MIN);
+        }
+        return sortField(field, reverse, SortedSetSelector.Type.MIN);
     }
 
     /**
-     * query
+     * sort field for a numeric field with sort = true , the selector picks the value of a doc with many values
      *
-     * @param n
-     * @param sort
+     * @param field    numeric field as a or a.b.c
+     * @param reverse  descending or not
+     * @param selector MIN or MAX
      * @return
-     * @throws Exception
      */
-    public QueryResult<T> query(Query query, int n, Sort sort) throws Exception {
-        return queryAfter(null, query, n, sort);
+    public SortField sortField(String field, boolean reverse, SortedNumericSelector.Type selector) {
+        List<FieldDesc> list = sortable(field);
+        SortField.Type type = numericSortType(list.get(list.size() - 1).getInner());
+        if (type == null) {
+            throw new IllegalArgumentException("not a numeric field : " + field);
+        }
+        return new SortedNumericSortField(field, type, reverse, selector);
     }
 
     /**
-     * query
+     * sort field for a string , boolean or BigInteger field with sort = true ,
+     * the selector picks the value of a doc with many values
      *
-     * @param after
-     * @param query
-     * @param n
-     * @param sort
+     * @param field    field as a or a.b.c
+     * @param reverse  descending or not
+     * @param selector MIN , MAX , MIDDLE_MIN or MIDDLE_MAX
      * @return
-     * @throws Exception
      */
-    public QueryResult<T> query(T after, Query query, int n, Sort sort) throws Exception {
-        FieldDoc fd = after != null ? new FieldDoc(after.doc, after.score, sort == null ? new Object[]{} : Arrays.stream(sort.getSort()).map(f -> {
-            try {
-                return value(after, f);
-            } catch (IllegalAccessException e) {
-                throw new RuntimeException(e);
-            }
-        }).toArray()) : null;
-        return queryAfter(fd, query, n, sort);
+    public SortField sortField(String field, boolean reverse, SortedSetSelector.Type selector) {
+        List<FieldDesc> list = sortable(field);
+        Class<?> type = list.get(list.size() - 1).getInner();
+        if (type != String.class && type != Boolean.class && type != BigInteger.class) {
+            throw new IllegalArgumentException("not a string , boolean or BigInteger field : " + field);
+        }
+        if (sortedSet(list)) {
+            return new SortedSetSortField(field, reverse, selector);
+        }
+        return new SortField(field, SortField.Type.STRING, reverse);
     }
 
     /**
-     * query by field value
+     * numeric type for sorted numeric sort field , null for not numeric
      *
-     * @param field simpy field or complex field as a.b.c
-     * @param v     value for query
-     * @param n     top n
+     * @param type inner type
      * @return
      */
-    public QueryResult<T> query(String field, Object v, int n, Sort sort) throws Exception {
-        return queryAfter((FieldDoc) null, field, v, n, sort);
+    private static SortField.Type numericSortType(Class<?> type) {
+        if (type == Integer.class) {
+            return SortField.Type.INT;
+        } else if (type == Long.class) {
+            return SortField.Type.LONG;
+        } else if (type == Float.class) {
+            return SortField.Type.FLOAT;
+        } else if (type == Double.class) {
+            return SortField.Type.DOUBLE;
+        }
+        return null;
     }
 
     /**
-     * for pageable query
+     * sortable field , facet fields are sortable too
      *
-     * @param after
      * @param field
+     * @return
+     */
+    private List<FieldDesc> sortable(String field) {
+        List<FieldDesc> list = allFields.get(field);
+        if (list == null || !(list.get(list.size() - 1).isSort() || list.get(list.size() - 1).isFacet()) || list.get(list.size() - 1).isTokenized()) {
+            throw new IllegalArgumentException("not a field with sort = true : " + field);
+        }
+        return list;
+    }
+
+    /**
+     * verify the sort against the doc values written for the fields
+     *
+     * @param sort
+     */
+    private void verifySort(Sort sort) {
+        for (SortField sf : sort.getSort()) {
+            if (sf.getType() == SortField.Type.SCORE || sf.getType() == SortField.Type.DOC) {
+                continue;
+            }
+            List<FieldDesc> list = sortable(sf.getField());
+            SortField.Type type = numericSortType(list.get(list.size() - 1).getInner());
+            boolean numeric = type != null;
+            boolean ok;
+            if (sf instanceof SortedNumericSortField) {
+                ok = numeric && ((SortedNumericSortField) sf).getNumericType() == type;
+            } else if (sf instanceof SortedSetSortField) {
+                ok = !numeric && sortedSet(list);
+            } else {
+                ok = !numeric && !sortedSet(list) && sf.getType() == SortField.Type.STRING;
+            }
+            if (!ok) {
+                throw new IllegalArgumentException("sort not fit the doc values of field : " + sf);
+            }
+        }
+    }
+
+    /**
+     * fixed width sortable bytes for BigInteger , the same encoding as BigIntegerPoint
+     *
+     * @param v
+     * @return
+     */
+    public static BytesRef encode(BigInteger v) {
+        byte[] bytes = new byte[BigIntegerPoint.BYTES];
+        BigIntegerPoint.encodeDimension(v, bytes, 0);
+        return new BytesRef(bytes);
+    }
+
+    /**
+     * decode BigInteger from sortable bytes
+     *
      * @param v
+     * @return
+     */
+    public static BigInteger decodeBigInteger(BytesRef v) {
+        return BigIntegerPoint.decodeDimension(v.bytes, v.offset);
+    }
+
+    /**
+     * boolean query builder
+     *
+     * @return
+     */
+    public static BooleanQuery.Builder booleanQuery() {
+        return new BooleanQuery.Builder();
+    }
+
+    /**
+     * or
+     *
+     * @param queries
+     * @return
+     */
+    public static BooleanQuery.Builder should(BooleanQuery.Builder builder, Query... queries) {
+        Arrays.stream(queries).forEach(q -> builder.add(q, BooleanClause.Occur.SHOULD));
+        return builder;
+    }
+
+    /**
+     * must
+     *
+     * @param queries
+     * @return
+     */
+    public static BooleanQuery.Builder must(BooleanQuery.Builder builder, Query... queries) {
+        Arrays.stream(queries).forEach(q -> builder.add(q, BooleanClause.Occur.MUST));
+        return builder;
+    }
+
+    /**
+     * must not
+     *
+     * @param builder
+     * @param queries
+     */
+    public static BooleanQuery.Builder mustNot(BooleanQuery.Builder builder, Query... queries) {
+        Arrays.stream(queries).forEach(q -> builder.add(q, BooleanClause.Occur.MUST_NOT));
+        return builder;
+    }
+
+    /**
+     * filter
+     *
+     * @param builder
+     * @param queries
+     */
+    public static BooleanQuery.Builder filter(BooleanQuery.Builder builder, Query... queries) {
+        Arrays.stream(queries).forEach(q -> builder.add(q, BooleanClause.Occur.FILTER));
+        return builder;
+    }
+
+    /**
+     * query after
+     * not thread safe
+     *
+     * @param after
+     * @param query
      * @param n
+     * @param sort
      * @return
      * @throws Exception
      */
-    public QueryResult<T> queryAfter(T after, String field, Object v, int n, Sort sort) throws Exception {
-        return queryAfter(after != null ? new FieldDoc(after.doc, after.score, sort == null ? new Object[]{} : Arrays.stream(sort.getSort()).map(f -> {
-            try {
-                return value(after, f);
-            } catch (IllegalAccessException e) {
-                throw new RuntimeException(e);
-            }
-        }).toArray()) : null, field, v, n, sort);
+    public QueryResult<T> queryAfter(FieldDoc after, Query query, int n, Sort sort) throws Exception {
+        IndexSearcher indexSearcher = searcherManager.acquire();
+        try {
+            TopDocs topDocs = search(indexSearcher, after, query, n, sort);
+            return new QueryResult<>(topDocs.totalHits.value, load(indexSearcher, topDocs.scoreDocs));
+        } finally {
+            searcherManager.release(indexSearcher);
+        }
     }
 
     /**
-     * for pageable query
+     * top docs after the cursor
      *
+     * @param indexSearcher acquired searcher
      * @param after
-     * @param field
-     * @param v
+     * @param query
      * @param n
+     * @param sort
      * @return
-     * @throws Exception
+     * @throws IOException
      */
-    public QueryResult<T> queryAfter(FieldDoc after, String field, Object v, int n, Sort sort) throws Exception {
-        QueryResult<T> queryResult = null;
-        Query query = buildExactQuery(field, v);
-        if (query != null) {
-//            if (sort != null && after != null) {
-//                after = (after instanceof FieldDoc) ? after : new FieldDoc(after.doc, after.score);
-//            }
-            queryResult = queryAfter(after, query, n, sort);
+    TopDocs search(IndexSearcher indexSearcher, FieldDoc after, Query query, int n, Sort sort) throws IOException {
+        if (sort != null) {
+            verifySort(sort);
+            return indexSearcher.searchAfter(after, query, n, sort);
         }
-        return queryResult == null ? QueryResult.empty() : queryResult;
+        return indexSearcher.searchAfter(after, query, n);
     }
 
     /**
-     * all result
+     * load entities of the hits
      *
+     * @param indexSearcher the searcher the hits come from
+     * @param hits
      * @return
      * @throws Exception
      */
-    public QueryResult<T> all() throws Exception {
-        return all(null, 128, null);
+    List<T> load(IndexSearcher indexSearcher, ScoreDoc[] hits) throws Exception {
+        List<T> ret = new ArrayList<>(hits.length);
+        if (hits.length > 0) {
+            final StoredFields sfReader = indexSearcher.getIndexReader().storedFields();
+            T dsi = (T) this.type.getDeclaredConstructor().newInstance();  // ? not very ok . . .
+            for (ScoreDoc sc : hits) {
+                T d = load(sfReader, sc, dsi);
+                if (d != null) {
+                    ret.add(d);
+                }
+            }
+        }
+        return ret;
     }
 
     /**
-     * all result
+     * query with highlight snippets of text fields , one best passage for every field
      *
-     * @param after
+     * @param query
      * @param n
+     * @param sort
+     * @param fields stored text fields to highlight
      * @return
      * @throws Exception
      */
-    public QueryResult<T> all(T after, int n, Sort sort) throws Exception {
-        Query q = new MatchAllDocsQuery();
-        return queryAfter(after != null ? new FieldDoc(after.doc, after.score, sort == null ? new Object[]{} : Arrays.stream(sort.getSort()).map(f -> {
-            try {
-                return value(after, f);
-            } catch (IllegalAccessException e) {
-                throw new RuntimeException(e);
-            }
-        }).toArray()) : null, q, n, sort);
+    public QueryResult<T> queryWithHighlights(Query query, int n, Sort sort, String... fields) throws Exception {
+        return queryWithHighlights(null, query, n, sort, 1, fields);
     }
 
     /**
-     * build query for filed exact query
+     * query with highlight snippets of text fields
+     * <p>
+     * snippets of all hits are built by the UnifiedHighlighter in one pass ; text fields with offsets = true
+     * highlight from the offsets in postings without analyzing the text again .
+     * passages of a field are joined as one snippet and set to the highlights of every result ,
+     * null for a field without match .
      *
-     * @param field
-     * @param v
+     * @param after       cursor from previous page
+     * @param query
+     * @param n
+     * @param sort
+     * @param maxPassages max passages for every field
+     * @param fields      stored text fields to highlight
      * @return
+     * @throws Exception
      */
-    public Query buildExactQuery(String field, Object v) {
-        List<FieldDesc> list = docId.getField().getName().equals(field) ? Collections.singletonList(docId) : allFields.get(field);
-        if (!list.isEmpty()) {
-            FieldDesc fd = list.get(list.size() - 1);
-            Class<?> type = fd.getInner();
-            if (type == int.class || type == Integer.class) {
-                return IntPoint.newExactQuery(field, (Integer) v);
-            } else if (type == long.class || type == Long.class) {
-                return LongPoint.newExactQuery(field, (Long) v);
-            } else if (type == BigInteger.class) {
-                return BigIntegerPoint.newExactQuery(field, (BigInteger) v);
-            } else if (type == float.class || type == Float.class) {
-                return FloatPoint.newExactQuery(field, (Float) v);
-            } else if (type == double.class || type == Double.class) {
-                return DoublePoint.newExactQuery(field, (Double) v);
-            } else if (type == boolean.class || type == Boolean.class) {
-                return new TermQuery(new Term(field, ((Boolean) v) ? "true" : "false"));
-            } else if (type == String.class) {
-                return new TermQuery(new Term(field, (String) v));
+    public QueryResult<T> queryWithHighlights(FieldDoc after, Query query, int n, Sort sort, int maxPassages, String... fields) throws Exception {
+        for (String field : fields) {
+            FieldDesc fd = fieldDesc(field);
+            if (fd == null || !fd.isTokenized() || !fd.isStored()) {
+                throw new IllegalArgumentException("not a stored text field : " + field);
             }
         }
+        if (sort != null) {
+            verifySort(sort);
+        }
+        IndexSearcher indexSearcher = searcherManager.acquire();
+        try {
+            TopDocs topDocs = sort == null ? indexSearcher.searchAfter(after, query, n) : indexSearcher.searchAfter(after, query, n, sort);
+            ScoreDoc[] hits = topDocs.scoreDocs;
+            List<T> ret = new ArrayList<>(hits.length);
+            if (hits.length > 0) {
+                int[] passages = new int[fields.length];
+                Arrays.fill(passages, maxPassages);
+                UnifiedHighlighter highlighter = UnifiedHighlighter.builder(indexSearcher, analyzer).build();
+                Map<String, String[]> snippets = highlighter.highlightFields(fields, query, topDocs, passages);
+                final StoredFields sfReader = indexSearcher.getIndexReader().storedFields();
+                T dsi = (T) this.type.getDeclaredConstructor().newInstance();
+                for (int i = 0; i < hits.length; i++) {
+                    T d = load(sfReader, hits[i], dsi);
+                    if (d != null) {
+                        d.highlights = new HashMap<>();
+                        for (String field : fields) {
+                            d.highlights.put(field, snippets.get(field)[i]);
+                        }
+                        ret.add(d);
+                    }
+                }
+            }
+            return new QueryResult<>(topDocs.totalHits.value, ret);
+        } finally {
+            searcherManager.release(indexSearcher);
+        }
+    }
+
+    /**
+     * load entity of the hit from the _doc section
+     *
+     * @param sfReader
+     * @param sc
+     * @param dsi      instance for deserialize
+     * @return null if not stored
+     * @throws IOException
+     */
+    private T load(StoredFields sfReader, ScoreDoc sc, T dsi) throws IOException {
+        final DocumentStoredFieldVisitor visitor = new DocumentStoredFieldVisitor(docSet);
+        sfReader.document(sc.doc, visitor);
+        String docString = visitor.getDocument().get("_doc");
+        if (docString != null) {
+            T d = dsi.deserialize(docString);
+            d.doc = sc.doc;
+            d.score = sc.score;
+            d.shardIndex = sc.shardIndex;
+            return d;
+        }
         return null;
     }
 
     /**
-     * boolean query builder
+     * top k term counts of a facet field for docs matching the query
      *
+     * @param query null for all docs
+     * @param field facet field as a or a.b.c
+     * @param topK  top k terms
      * @return
+     * @throws IOException
      */
-    public static BooleanQuery.Builder booleanQuery() {
-        return new BooleanQuery.Builder();
+    public FacetResult facet(Query query, String field, int topK) throws IOException {
+        return facets(query, topK, field).get(field);
     }
 
     /**
-     * or
+     * top k term counts of facet fields for docs matching the query , all fields counted in one pass
      *
-     * @param queries
-     * @return
+     * @param query  null for all docs
+     * @param topK   top k terms for every field
+     * @param fields facet fields
+     * @return field -> facet result
+     * @throws IOException
      */
-    public static BooleanQuery.Builder should(BooleanQuery.Builder builder, Query... queries) {
-        Arrays.stream(queries).forEach(q -> builder.add(q, BooleanClause.Occur.SHOULD));
-        return builder;
+    public Map<String, FacetResult> facets(Query query, int topK, String... fields) throws IOException {
+        for (String field : fields) {
+            List<FieldDesc> list = allFields.get(field);
+            if (list == null || !list.get(list.size() - 1).isFacet()) {
+                throw new IllegalArgumentException("not a facet field : " + field);
+            }
+        }
+        return aggregate(query, () -> new FacetCollector(fields), collectors -> FacetCollector.reduce(collectors, topK));
     }
 
     /**
-     * must
+     * min/max/sum/count/avg of a numeric field for docs matching the query
+     * <p>
+     * computed from doc values , so the field should be sort = true
      *
-     * @param queries
+     * @param query null for all docs
+     * @param field numeric field as a or a.b.c
      * @return
+     * @throws IOException
      */
-    public static BooleanQuery.Builder must(BooleanQuery.Builder builder, Query... queries) {
-        Arrays.stream(queries).forEach(q -> builder.add(q, BooleanClause.Occur.MUST));
-        return builder;
+    public NumericStats stats(Query query, String field) throws IOException {
+        Class<?> type = numericType(field);
+        return aggregate(query, () -> new NumericCollector.Stats(field, type), collectors -> NumericCollector.Stats.reduce(field, collectors));
     }
 
     /**
-     * must not
+     * fixed interval histogram of a numeric field for docs matching the query
      *
-     * @param builder
-     * @param queries
+     * @param query    null for all docs
+     * @param field    numeric field as a or a.b.c
+     * @param interval bucket width
+     * @return lower bound of bucket -> count , order by lower bound
+     * @throws IOException
      */
-    public static BooleanQuery.Builder mustNot(BooleanQuery.Builder builder, Query... queries) {
-        Arrays.stream(queries).forEach(q -> builder.add(q, BooleanClause.Occur.MUST_NOT));
-        return builder;
+    public SortedMap<Double, Long> histogram(Query query, String field, double interval) throws IOException {
+        if (!(interval > 0)) {
+            throw new IllegalArgumentException("interval should be positive : " + interval);
+        }
+        Class<?> type = numericType(field);
+        return aggregate(query, () -> new NumericCollector.Histogram(field, type, interval), collectors -> NumericCollector.Histogram.reduce(interval, collectors));
     }
 
     /**
-     * filter
+     * range histogram of a numeric field for docs matching the query
      *
-     * @param builder
-     * @param queries
+     * @param query  null for all docs
+     * @param field  numeric field as a or a.b.c
+     * @param bounds ascending bounds , bucket i is [bounds[i], bounds[i + 1])
+     * @return count for every bucket
+     * @throws IOException
      */
-    public static BooleanQuery.Builder filter(BooleanQuery.Builder builder, Query... queries) {
-        Arrays.stream(queries).forEach(q -> builder.add(q, BooleanClause.Occur.FILTER));
-        return builder;
+    public long[] rangeHistogram(Query query, String field, double... bounds) throws IOException {
+        if (bounds.length < 2) {
+            throw new IllegalArgumentException("at least 2 bounds required");
+        }
+        for (int i = 1; i < bounds.length; i++) {
+            if (bounds[i] <= bounds[i - 1]) {
+                throw new IllegalArgumentException("bounds should be ascending");
+            }
+        }
+        Class<?> type = numericType(field);
+        return aggregate(query, () -> new NumericCollector.RangeHistogram(field, type, bounds), collectors -> NumericCollector.RangeHistogram.reduce(bounds, collectors));
     }
 
     /**
-     * query after
-     * not thread safe
+     * inner type of a numeric field with doc values
      *
-     * @param after
-     * @param query
-     * @param n
-     * @param sort
+     * @param field
      * @return
-     * @throws Exception
      */
-    public QueryResult<T> queryAfter(FieldDoc after, Query query, int n, Sort sort) throws Exception {
-        IndexSearcher indexSearcher = null;
-        long total;
-        List<T> ret = new ArrayList<>(n);
+    private Class<?> numericType(String field) {
+        List<FieldDesc> list = allFields.get(field);
+        if (list != null) {
+            FieldDesc fd = list.get(list.size() - 1);
+            Class<?> type = fd.getInner();
+            if (fd.isSort() && (type == Integer.class || type == Long.class || type == Float.class || type == Double.class)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("not a numeric field with sort = true : " + field);
+    }
+
+    /**
+     * run a collector for every slice of the searcher for query , and reduce them to the result
+     *
+     * @param query     null for all docs
+     * @param collector new collector of a slice
+     * @param reduce    result of the collectors
+     * @return
+     * @throws IOException
+     */
+    private <C extends Collector, R> R aggregate(Query query, IOSupplier<C> collector, IOFunction<Collection<C>, R> reduce) throws IOException {
+        IndexSearcher indexSearcher = searcherManager.acquire();
         try {
-            indexSearcher = searcherManager.acquire();
-            TopDocs topDocs = sort == null ? indexSearcher.searchAfter(after, query, n) : indexSearcher.searchAfter(after, query, n, sort);
-            total = topDocs.totalHits.value;
-            ScoreDoc[] hits = topDocs.scoreDocs;
-            if (hits != null && hits.length > 0) {
-                final StoredFields sfReader = indexSearcher.getIndexReader().storedFields();
-                T dsi = (T) this.type.getDeclaredConstructor().newInstance();  // ? not very ok . . .
-                for (ScoreDoc sc : hits) {
-                    int did = sc.doc;
-                    final DocumentStoredFieldVisitor visitor = new DocumentStoredFieldVisitor(docSet);
-                    sfReader.document(did, visitor);
-                    Document doc = visitor.getDocument();
-                    String docString = doc.get("_doc");
-                    if (docString != null) {
-                        T d = dsi.deserialize(docString);
-                        d.doc = did;
-                        d.score = sc.score;
-                        d.shardIndex = sc.shardIndex;
-                        ret.add(d);
-                    }
+            return indexSearcher.search(query == null ? new MatchAllDocsQuery() : query, new CollectorManager<C, R>() {
+                @Override
+                public C newCollector() throws IOException {
+                    return collector.get();
                 }
-            }
+
+                @Override
+                public R reduce(Collection<C> collectors) throws IOException {
+                    return reduce.apply(collectors);
+                }
+            });
         } finally {
-            if (indexSearcher != null) {
-                searcherManager.release(indexSearcher);
-            }
+            searcherManager.release(indexSearcher);
         }
-        return new QueryResult<>(total, ret);
     }
 
     /**
-     * doc stats
+     * doc stats , of the writer with buffered docs , or of the current searcher for a read only lucener
      *
      * @return
+     * @throws IOException
      */
-    public IndexWriter.DocStats docStats() {
-        return indexWriter.getDocStats();
+    public DocStats docStats() throws IOException {
+        if (indexWriter != null) {
+            IndexWriter.DocStats stats = indexWriter.getDocStats();
+            return new DocStats(stats.maxDoc, stats.numDocs);
+        }
+        IndexSearcher indexSearcher = searcherManager.acquire();
+        try {
+            IndexReader reader = indexSearcher.getIndexReader();
+            return new DocStats(reader.maxDoc(), reader.numDocs());
+        } finally {
+            searcherManager.release(indexSearcher);
+        }
     }
 
     /**
@@ -1466,6 +3923,93 @@ public class Lucener<T extends DocSerializable<T>> {
         CheckIndex.main(args);
     }
 
+    /**
+     * commit and hold the commit , its files are not deleted until released
+     *
+     * @return
+     * @throws IOException
+     */
+    public IndexCommit snapshot() throws IOException {
+        writable();
+        commit();
+        return snapshotPolicy.snapshot();
+    }
+
+    /**
+     * release a commit of snapshot , and delete its files if not used any more
+     *
+     * @param commit
+     * @throws IOException
+     */
+    public void release(IndexCommit commit) throws IOException {
+        writable();
+        snapshotPolicy.release(commit);
+        indexWriter.deleteUnusedFiles();
+    }
+
+    /**
+     * hot backup of the index to the path , writes go on while backing up
+     * <p>
+     * only files not in the previous backup of the path are hard linked or copied , files of older commits are
+     * removed from the path .
+     *
+     * @param target backup path
+     * @return
+     * @throws IOException
+     */
+    public Backup backupTo(Path target) throws IOException {
+        IndexCommit commit = snapshot();
+        try {
+            Files.createDirectories(target);
+            try (Directory dir = FSDirectory.open(target)) {
+                return Backup.transfer(commit, directory, dir);
+            }
+        } finally {
+            release(commit);
+        }
+    }
+
+    /**
+     * restore the index of the class from a backup , the lucener should be closed
+     * <p>
+     * files of the index which are in the backup are kept , others are hard linked or copied , and translog of ops
+     * after the backup is removed . the write lock of the index is held while restoring , so a writer of another
+     * process fails the restore .
+     *
+     * @param entityClass
+     * @param root        root path , null for the value of Index
+     * @param backup      backup path
+     * @return
+     * @throws IOException
+     */
+    public static <V> Backup restore(Class<? extends DocSerializable<V>> entityClass, String root, Path backup) throws IOException {
+        Path path = indexDir(entityClass, root);
+        Index ian = indexAnnotation(entityClass);
+        if (!ian.persistence()) {
+            error(entityClass, "restore needs persistence");
+        }
+        if (Registry.isOpen(registryKey(entityClass, path, false)) || Registry.isOpen(registryKey(entityClass, path, true))) {
+            error(entityClass, "close the lucener before restore");
+        }
+        Files.createDirectories(path);
+        Backup ret;
+        try (Directory source = FSDirectory.open(backup); Directory target = ian.directory().open(path, ian)) {
+            Lock lock;
+            try {
+                lock = target.obtainLock(IndexWriter.WRITE_LOCK_NAME);
+            } catch (LockObtainFailedException e) {
+                throw new RuntimeException(entityClass.getCanonicalName() + ": index is open by another writer", e);
+            }
+            try (lock) {
+                ret = Backup.transfer(Backup.latest(source), source, target);
+                for (Path p : Translog.generations(path, 0).values()) {
+                    Files.deleteIfExists(p);
+                }
+            }
+        }
+        return ret;
+    }
+
     /**
      * force merge deletes
      *
@@ -1473,6 +4017,7 @@ public class Lucener<T extends DocSerializable<T>> {
      * @throws IOException
      */
     public void forceMergeDeletes(boolean doWait) throws IOException {
+        writable();
         indexWriter.forceMergeDeletes(doWait);
     }
 
@@ -1484,6 +4029,7 @@ public class Lucener<T extends DocSerializable<T>> {
      * @throws IOException
      */
     public void forceMerge(int maxNumSegments, boolean doWait) throws IOException {
+        writable();
         indexWriter.forceMerge(maxNumSegments, doWait);
     }
 
@@ -1507,6 +4053,54 @@ public class Lucener<T extends DocSerializable<T>> {
         searcherManager.maybeRefreshBlocking();
     }
 
+    /**
+     * wait until searchers see the write of the sequence number
+     * <p>
+     * with managed refresh the reopen thread refreshes within minStaleMillis for waiting requests ,
+     * else a blocking refresh is done .
+     *
+     * @param seq       sequence number from index or delete
+     * @param timeoutMs max wait in millis , negative for no limit
+     * @return false if timeout
+     * @throws InterruptedException
+     * @throws IOException
+     */
+    public boolean waitForGeneration(long seq, long timeoutMs) throws InterruptedException, IOException {
+        if (reopenThread == null) {
+            searcherManager.maybeRefreshBlocking();
+            return true;
+        }
+        return reopenThread.waitForGeneration(seq, (int) Math.min(timeoutMs, Integer.MAX_VALUE));
+    }
+
+    /**
+     * query after the write of the sequence number is visible
+     *
+     * @param query
+     * @param n
+     * @param sort
+     * @param minSeq sequence number from index or delete
+     * @return
+     * @throws Exception
+     */
+    public QueryResult<T> query(Query query, int n, Sort sort, long minSeq) throws Exception {
+        waitForGeneration(minSeq, -1);
+        return queryAfter(null, query, n, sort);
+    }
+
+    /**
+     * get by id after the write of the sequence number is visible
+     *
+     * @param id
+     * @param minSeq sequence number from index or delete
+     * @return
+     * @throws Exception
+     */
+    public T get(String id, long minSeq) throws Exception {
+        waitForGeneration(minSeq, -1);
+        return get(id);
+    }
+
     /**
      * refresh listener
      *
@@ -1561,6 +4155,15 @@ public class Lucener<T extends DocSerializable<T>> {
         return defaultAnalyzer;
     }
 
+    /**
+     * per field analyzer
+     *
+     * @return
+     */
+    public Analyzer analyzer() {
+        return analyzer;
+    }
+
     /**
      * path for index
      *
@@ -1569,4 +4172,225 @@ public class Lucener<T extends DocSerializable<T>> {
     public String indexPath() {
         return indexPath;
     }
+
+    /**
+     * sequence numbers of the history of changes
+     */
+    private static final class SeqTracker {
+        private static final int LOCKS = 64;
+        private final AtomicLong next;
+        private final Object[] locks = new Object[LOCKS];
+        /**
+         * sequence number of the last write under every lock , guarded by the lock
+         */
+        private final long[] written = new long[LOCKS];
+        /**
+         * done sequence numbers after the checkpoint
+         */
+        private final TreeSet<Long> pending = new TreeSet<>();
+        /**
+         * writes of this sequence number and all before are done
+         */
+        private long checkpoint;
+        /**
+         * holds of the checkpoint , sequence numbers after a hold are not reported until it is released
+         */
+        private final List<Long> holds = new ArrayList<>();
+
+        SeqTracker(long max) {
+            next = new AtomicLong(max);
+            checkpoint = max;
+            for (int i = 0; i < LOCKS; i++) {
+                locks[i] = new Object();
+            }
+        }
+
+        long next() {
+            return next.incrementAndGet();
+        }
+
+        /**
+         * next sequence number for a write of the id , with the lock of the id held
+         *
+         * @param term
+         * @return
+         */
+        long next(Term term) {
+            long seq = next.incrementAndGet();
+            written[stripe(term)] = seq;
+            return seq;
+        }
+
+        /**
+         * sequence number of the last write under the lock of the id , with the lock of the id held
+         *
+         * @param term
+         * @return
+         */
+        long written(Term term) {
+            return written[stripe(term)];
+        }
+
+        long max() {
+            return next.get();
+        }
+
+        /**
+         * lock of the id
+         *
+         * @param term
+         * @return
+         */
+        Object lock(Term term) {
+            return locks[stripe(term)];
+        }
+
+        private static int stripe(Term term) {
+            return (term.bytes().hashCode() & Integer.MAX_VALUE) % LOCKS;
+        }
+
+        /**
+         * write of the sequence number is done , or failed
+         *
+         * @param seq
+         */
+        synchronized void done(long seq) {
+            if (seq != checkpoint + 1) {
+                pending.add(seq);
+                return;
+            }
+            checkpoint = seq;
+            while (!pending.isEmpty() && pending.first() == checkpoint + 1) {
+                checkpoint = pending.pollFirst();
+            }
+        }
+
+        /**
+         * checkpoint of writes done and visible , not after a hold
+         *
+         * @return
+         */
+        synchronized long checkpoint() {
+            long ret = checkpoint;
+            for (long hold : holds) {
+                ret = Math.min(ret, hold);
+            }
+            return ret;
+        }
+
+        /**
+         * hold the checkpoint before the sequence numbers taken from now on , for writes visible later than done
+         *
+         * @return the hold to release
+         */
+        synchronized long hold() {
+            long hold = next.get();
+            holds.add(hold);
+            return hold;
+        }
+
+        synchronized void release(long hold) {
+            holds.remove(Long.valueOf(hold));
+        }
+    }
+
+    /**
+     * searcher hiding expired docs , the expiry filter is added to every query
+     * <p>
+     * a range on the points of the expiry , segments with no expired doc match all docs without visiting them .
+     * for a knn query the range goes to the filter of the graph search , so expired docs do not take any of the top k .
+     */
+    private static final class ExpirySearcher extends IndexSearcher {
+        ExpirySearcher(IndexReader reader) {
+            super(reader);
+        }
+
+        @Override
+        public Query rewrite(Query original) throws IOException {
+            Query alive = LongPoint.newRangeQuery(EXPIRE_FIELD, System.currentTimeMillis() + 1, Long.MAX_VALUE);
+            if (original instanceof KnnFloatVectorQuery) {
+                KnnFloatVectorQuery knn = (KnnFloatVectorQuery) original;
+                Query filter = knn.getFilter() == null ? alive : new BooleanQuery.Builder()
+                        .add(knn.getFilter(), BooleanClause.Occur.FILTER)
+                        .add(alive, BooleanClause.Occur.FILTER)
+                        .build();
+                return super.rewrite(new KnnFloatVectorQuery(knn.getField(), knn.getTargetCopy(), knn.getK(), filter));
+            }
+            return super.rewrite(new BooleanQuery.Builder()
+                    .add(original, BooleanClause.Occur.MUST)
+                    .add(alive, BooleanClause.Occur.FILTER)
+                    .build());
+        }
+    }
+
+    /**
+     * reader of all docs not hard deleted , soft deleted docs of the history included
+     */
+    private static final class HistoryReader extends FilterDirectoryReader {
+        HistoryReader(DirectoryReader in) throws IOException {
+            super(in, new SubReaderWrapper() {
+                @Override
+                public LeafReader wrap(LeafReader reader) {
+                    return new HistoryLeafReader(reader);
+                }
+            });
+        }
+
+        @Override
+        protected DirectoryReader doWrapDirectoryReader(DirectoryReader in) throws IOException {
+            return new HistoryReader(in);
+        }
+
+        @Override
+        public CacheHelper getReaderCacheHelper() {
+            return null;
+        }
+    }
+
+    /**
+     * segment with the hard live docs
+     */
+    private static final class HistoryLeafReader extends FilterLeafReader {
+        private final Bits liveDocs;
+        private final int numDocs;
+
+        HistoryLeafReader(LeafReader in) {
+            super(in);
+            LeafReader segment = FilterLeafReader.unwrap(in);
+            liveDocs = segment instanceof SegmentReader ? ((SegmentReader) segment).getHardLiveDocs() : in.getLiveDocs();
+            if (liveDocs == null) {
+                numDocs = in.maxDoc();
+            } else if (liveDocs instanceof FixedBitSet) {
+                numDocs = ((FixedBitSet) liveDocs).cardinality();
+            } else {
+                int n = 0;
+                for (int i = 0; i < liveDocs.length(); i++) {
+                    if (liveDocs.get(i)) {
+                        n++;
+                    }
+                }
+                numDocs = n;
+            }
+        }
+
+        @Override
+        public Bits getLiveDocs() {
+            return liveDocs;
+        }
+
+        @Override
+        public int numDocs() {
+            return numDocs;
+        }
+
+        @Override
+        public CacheHelper getCoreCacheHelper() {
+            return in.getCoreCacheHelper();
+        }
+
+        @Override
+        public CacheHelper getReaderCacheHelper() {
+            return null;
+        }
+    }
 }
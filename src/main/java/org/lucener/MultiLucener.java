@@ -0,0 +1,177 @@
+package org.lucener;
+
+import org.apache.lucene.search.*;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Array;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * scatter gather over many luceners of the same type , such as shards or time partitions
+ * <p>
+ * every lucener has a stable number used as the shardIndex of its hits , so cursors of a previous page still point
+ * to the right lucener .
+ */
+abstract class MultiLucener<T extends DocSerializable<T>> {
+    /**
+     * executor for fan out
+     */
+    private final ExecutorService executor;
+
+    /**
+     * @param name    name for threads
+     * @param threads max parallelism
+     */
+    MultiLucener(String name, int threads) {
+        executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "lucener-" + name);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * query after the cursor on the luceners in parallel
+     * <p>
+     * hits are ordered by sort values , then shard index , then doc as TopDocs.merge does . so luceners before the
+     * one of the cursor skip all ties of the cursor , luceners after it keep all of them .
+     *
+     * @param after   cursor with the shardIndex of the last hit
+     * @param query
+     * @param n
+     * @param sort
+     * @param targets luceners to query by number
+     * @return
+     * @throws Exception
+     */
+    QueryResult<T> queryAfter(FieldDoc after, Query query, int n, Sort sort, SortedMap<Integer, Lucener<T>> targets) throws Exception {
+        if (targets.isEmpty()) {
+            return QueryResult.empty();
+        }
+        Map<Integer, IndexSearcher> searchers = new HashMap<>();
+        try {
+            for (Map.Entry<Integer, Lucener<T>> e : targets.entrySet()) {
+                searchers.put(e.getKey(), e.getValue().searcherManager().acquire());
+            }
+            List<Callable<TopDocs>> tasks = new ArrayList<>(targets.size());
+            for (Map.Entry<Integer, Lucener<T>> e : targets.entrySet()) {
+                final int shard = e.getKey();
+                final IndexSearcher searcher = searchers.get(shard);
+                final FieldDoc cursor = after == null ? null : new FieldDoc(shard < after.shardIndex ? searcher.getIndexReader().maxDoc() - 1 : (shard > after.shardIndex ? -1 : after.doc), after.score, after.fields, shard);
+                tasks.add(() -> {
+                    TopDocs topDocs = e.getValue().search(searcher, cursor, query, n, sort);
+                    for (ScoreDoc sd : topDocs.scoreDocs) {
+                        sd.shardIndex = shard;
+                    }
+                    return topDocs;
+                });
+            }
+            List<TopDocs> results = invokeAll(tasks);
+            TopDocs merged;
+            if (sort == null) {
+                merged = TopDocs.merge(n, results.toArray(new TopDocs[0]));
+            } else {
+                merged = TopDocs.merge(sort, n, results.toArray(new TopFieldDocs[0]));
+            }
+            List<T> ret = new ArrayList<>(merged.scoreDocs.length);
+            // load from the lucener of every hit , keep the merged order
+            for (ScoreDoc sd : merged.scoreDocs) {
+                ret.addAll(targets.get(sd.shardIndex).load(searchers.get(sd.shardIndex), new ScoreDoc[]{sd}));
+            }
+            return new QueryResult<>(merged.totalHits.value, ret);
+        } finally {
+            for (Map.Entry<Integer, IndexSearcher> e : searchers.entrySet()) {
+                targets.get(e.getKey()).searcherManager().release(e.getValue());
+            }
+        }
+    }
+
+    /**
+     * action on a lucener
+     */
+    @FunctionalInterface
+    interface Action<T extends DocSerializable<T>> {
+        Object apply(Lucener<T> lucener) throws Exception;
+    }
+
+    /**
+     * run the action on the luceners in parallel
+     *
+     * @param luceners
+     * @param action
+     * @throws Exception
+     */
+    void forEach(Collection<Lucener<T>> luceners, Action<T> action) throws Exception {
+        List<Callable<Void>> tasks = new ArrayList<>(luceners.size());
+        for (Lucener<T> lucener : luceners) {
+            tasks.add(() -> {
+                action.apply(lucener);
+                return null;
+            });
+        }
+        invokeAll(tasks);
+    }
+
+    /**
+     * objects of the type as an array , for the varargs index of a lucener
+     *
+     * @param type
+     * @param obs
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T[] array(Class<?> type, List<T> obs) {
+        return obs.toArray((T[]) Array.newInstance(type, obs.size()));
+    }
+
+    /**
+     * close the luceners in parallel , the first failure is thrown
+     *
+     * @param luceners
+     * @throws IOException
+     */
+    void close(Collection<Lucener<T>> luceners) throws IOException {
+        try {
+            forEach(luceners, lucener -> {
+                lucener.close();
+                return null;
+            });
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while closing");
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * invoke all tasks and wait , the first failure is thrown
+     *
+     * @param tasks
+     * @return
+     * @throws Exception
+     */
+    <R> List<R> invokeAll(List<Callable<R>> tasks) throws Exception {
+        List<Future<R>> futures = executor.invokeAll(tasks);
+        List<R> ret = new ArrayList<>(futures.size());
+        for (Future<R> f : futures) {
+            try {
+                ret.add(f.get());
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * stop the executor
+     */
+    void shutdown() {
+        executor.shutdown();
+    }
+}
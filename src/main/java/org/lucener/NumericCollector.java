@@ -0,0 +1,247 @@
+package org.lucener;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.SortedNumericDocValues;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.SimpleCollector;
+import org.apache.lucene.util.NumericUtils;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.*;
+
+/**
+ * visit every value of a sorted numeric doc values field for query matches
+ * <p>
+ * values of float and double fields are decoded from the sortable encoding used when indexing , values of int and
+ * long fields are accepted as long so they keep full precision . one collector
+ * visits a slice of the searcher , collectors of all slices are reduced to the result .
+ */
+abstract class NumericCollector extends SimpleCollector {
+
+    /**
+     * field
+     */
+    private final String field;
+    /**
+     * inner type of the field
+     */
+    private final Class<?> type;
+    /**
+     * int or long field
+     */
+    final boolean integral;
+    /**
+     * doc values for current segment
+     */
+    private SortedNumericDocValues multi;
+    /**
+     * single valued doc values for current segment
+     */
+    private NumericDocValues single;
+
+    NumericCollector(String field, Class<?> type) {
+        this.field = field;
+        this.type = type;
+        this.integral = type == Integer.class || type == Long.class || type == int.class || type == long.class;
+    }
+
+    @Override
+    protected void doSetNextReader(LeafReaderContext context) throws IOException {
+        multi = DocValues.getSortedNumeric(context.reader(), field);
+        single = DocValues.unwrapSingleton(multi);
+    }
+
+    @Override
+    public void collect(int doc) throws IOException {
+        if (single != null) {
+            if (single.advanceExact(doc)) {
+                value(single.longValue());
+            }
+        } else if (multi.advanceExact(doc)) {
+            for (int i = 0, n = multi.docValueCount(); i < n; i++) {
+                value(multi.nextValue());
+            }
+        }
+    }
+
+    @Override
+    public ScoreMode scoreMode() {
+        return ScoreMode.COMPLETE_NO_SCORES;
+    }
+
+    /**
+     * accept the doc value , decoded for float and double fields
+     *
+     * @param v
+     */
+    private void value(long v) {
+        if (integral) {
+            accept(v);
+        } else if (type == float.class || type == Float.class) {
+            accept(NumericUtils.sortableIntToFloat((int) v));
+        } else {
+            accept(NumericUtils.sortableLongToDouble(v));
+        }
+    }
+
+    /**
+     * accept a value of an int or long field
+     *
+     * @param v
+     */
+    protected void accept(long v) {
+        accept((double) v);
+    }
+
+    /**
+     * accept a value of a float or double field
+     *
+     * @param v
+     */
+    protected abstract void accept(double v);
+
+    /**
+     * min/max/sum/count of the values , exact long min/max/sum for int and long fields
+     */
+    static final class Stats extends NumericCollector {
+        private long count;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+        private double sum;
+        private long longMin = Long.MAX_VALUE;
+        private long longMax = Long.MIN_VALUE;
+        private long longSum;
+        /**
+         * sum carried out of longSum when it overflows , null if never
+         */
+        private BigInteger carry;
+
+        Stats(String field, Class<?> type) {
+            super(field, type);
+        }
+
+        @Override
+        protected void accept(long v) {
+            count++;
+            longMin = Math.min(longMin, v);
+            longMax = Math.max(longMax, v);
+            add(v);
+        }
+
+        @Override
+        protected void accept(double v) {
+            count++;
+            min = Math.min(min, v);
+            max = Math.max(max, v);
+            sum += v;
+        }
+
+        private void add(long v) {
+            try {
+                longSum = Math.addExact(longSum, v);
+            } catch (ArithmeticException e) {
+                carry = (carry == null ? BigInteger.ZERO : carry).add(BigInteger.valueOf(longSum));
+                longSum = v;
+            }
+        }
+
+        static NumericStats reduce(String field, Collection<Stats> collectors) {
+            Iterator<Stats> it = collectors.iterator();
+            Stats ret = it.next();
+            while (it.hasNext()) {
+                Stats c = it.next();
+                ret.count += c.count;
+                ret.min = Math.min(ret.min, c.min);
+                ret.max = Math.max(ret.max, c.max);
+                ret.sum += c.sum;
+                ret.longMin = Math.min(ret.longMin, c.longMin);
+                ret.longMax = Math.max(ret.longMax, c.longMax);
+                ret.add(c.longSum);
+                if (c.carry != null) {
+                    ret.carry = (ret.carry == null ? BigInteger.ZERO : ret.carry).add(c.carry);
+                }
+            }
+            if (!ret.integral) {
+                return new NumericStats(field, ret.count, ret.min, ret.max, ret.sum);
+            }
+            Number sum = ret.longSum;
+            if (ret.carry != null) {
+                BigInteger big = ret.carry.add(BigInteger.valueOf(ret.longSum));
+                sum = big.bitLength() < Long.SIZE ? (Number) big.longValue() : big;
+            }
+            return new NumericStats(field, ret.count, (Number) ret.longMin, ret.longMax, sum);
+        }
+    }
+
+    /**
+     * counts of fixed interval buckets
+     */
+    static final class Histogram extends NumericCollector {
+        private final double interval;
+        /**
+         * floor(value / interval) -> count
+         */
+        private final Map<Long, Long> buckets = new HashMap<>();
+
+        Histogram(String field, Class<?> type, double interval) {
+            super(field, type);
+            this.interval = interval;
+        }
+
+        @Override
+        protected void accept(double v) {
+            buckets.merge((long) Math.floor(v / interval), 1L, Long::sum);
+        }
+
+        /**
+         * @param interval
+         * @param collectors
+         * @return lower bound of bucket -> count , order by lower bound
+         */
+        static SortedMap<Double, Long> reduce(double interval, Collection<Histogram> collectors) {
+            Map<Long, Long> buckets = new HashMap<>();
+            for (Histogram c : collectors) {
+                c.buckets.forEach((k, n) -> buckets.merge(k, n, Long::sum));
+            }
+            SortedMap<Double, Long> ret = new TreeMap<>();
+            buckets.forEach((k, n) -> ret.put(k * interval, n));
+            return ret;
+        }
+    }
+
+    /**
+     * counts of buckets between ascending bounds , bucket i is [bounds[i], bounds[i + 1])
+     */
+    static final class RangeHistogram extends NumericCollector {
+        private final double[] bounds;
+        private final long[] counts;
+
+        RangeHistogram(String field, Class<?> type, double[] bounds) {
+            super(field, type);
+            this.bounds = bounds;
+            this.counts = new long[bounds.length - 1];
+        }
+
+        @Override
+        protected void accept(double v) {
+            int i = Arrays.binarySearch(bounds, v);
+            i = i >= 0 ? i : -i - 2;
+            if (i >= 0 && i < counts.length) {
+                counts[i]++;
+            }
+        }
+
+        static long[] reduce(double[] bounds, Collection<RangeHistogram> collectors) {
+            long[] ret = new long[bounds.length - 1];
+            for (RangeHistogram c : collectors) {
+                for (int i = 0; i < ret.length; i++) {
+                    ret[i] += c.counts[i];
+                }
+            }
+            return ret;
+        }
+    }
+}
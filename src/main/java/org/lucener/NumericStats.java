@@ -0,0 +1,142 @@
+package org.lucener;
+
+/**
+ * statistics of a numeric field over query matches
+ * <p>
+ * min , max and sum of int and long fields are exact , see getMinValue , getMaxValue and getSumValue .
+ */
+public final class NumericStats {
+
+    /**
+     * field
+     */
+    private final String field;
+
+    /**
+     * count of values , a doc of collection field may hold many values
+     */
+    private final long count;
+
+    /**
+     * min value , null when no value
+     */
+    private final Number min;
+
+    /**
+     * max value , null when no value
+     */
+    private final Number max;
+
+    /**
+     * sum of values
+     */
+    private final Number sum;
+
+    /**
+     * stats
+     *
+     * @param field
+     * @param count
+     * @param min
+     * @param max
+     * @param sum
+     */
+    public NumericStats(String field, long count, double min, double max, double sum) {
+        this(field, count, (Number) min, max, sum);
+    }
+
+    /**
+     * stats of exact values , Long min/max and a Long or BigInteger sum for int and long fields , Double for others
+     *
+     * @param field
+     * @param count
+     * @param min
+     * @param max
+     * @param sum
+     */
+    NumericStats(String field, long count, Number min, Number max, Number sum) {
+        this.field = field;
+        this.count = count;
+        this.min = count == 0 ? null : min;
+        this.max = count == 0 ? null : max;
+        this.sum = sum;
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * min value , NaN when no value
+     *
+     * @return
+     */
+    public double getMin() {
+        return min == null ? Double.NaN : min.doubleValue();
+    }
+
+    /**
+     * max value , NaN when no value
+     *
+     * @return
+     */
+    public double getMax() {
+        return max == null ? Double.NaN : max.doubleValue();
+    }
+
+    public double getSum() {
+        return sum.doubleValue();
+    }
+
+    /**
+     * exact min value , Long for int and long fields , Double for others , null when no value
+     *
+     * @return
+     */
+    public Number getMinValue() {
+        return min;
+    }
+
+    /**
+     * exact max value , Long for int and long fields , Double for others , null when no value
+     *
+     * @return
+     */
+    public Number getMaxValue() {
+        return max;
+    }
+
+    /**
+     * exact sum , Long or BigInteger if over the range of long for int and long fields , Double for others
+     *
+     * @return
+     */
+    public Number getSumValue() {
+        return sum;
+    }
+
+    /**
+     * average , NaN when no value
+     *
+     * @return
+     */
+    public double getAvg() {
+        return count == 0 ? Double.NaN : sum.doubleValue() / count;
+    }
+
+    @Override
+    public String toString() {
+        return "NumericStats{" +
+                "field='" + field + '\'' +
+                ", count=" + count +
+                ", min=" + min +
+                ", max=" + max +
+                ", sum=" + sum +
+                ", avg=" + getAvg() +
+                '}';
+    }
+}
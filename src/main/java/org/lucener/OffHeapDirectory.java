@@ -0,0 +1,638 @@
+package org.lucener;
+
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.store.*;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.IOUtils;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * in memory directory with files in direct buffers out of the heap
+ * <p>
+ * buffers of a file are freed explicitly when the file is deleted and its inputs are closed , or when the directory
+ * is closed and its inputs are closed , not by gc . with a memory cap , a file which can not get a buffer is moved to a temp directory on disk
+ * if spill is enabled , or the write fails .
+ */
+public final class OffHeapDirectory extends BaseDirectory implements Accountable {
+    /**
+     * block size of files , power of two as ByteBuffersDataInput requires
+     */
+    private static final int BLOCK_SIZE = 1 << 16;
+    /**
+     * free a direct buffer , null if not supported
+     */
+    private static final MethodHandle CLEANER;
+
+    static {
+        MethodHandle cleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field f = unsafeClass.getDeclaredField("theUnsafe");
+            f.setAccessible(true);
+            cleaner = MethodHandles.lookup().findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class)).bindTo(f.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // freed by gc
+        }
+        CLEANER = cleaner;
+    }
+
+    /**
+     * files by name
+     */
+    private final Map<String, FileEntry> files = new ConcurrentHashMap<>();
+    /**
+     * bytes of buffers allocated
+     */
+    private final AtomicLong used = new AtomicLong();
+    /**
+     * max bytes of buffers , 0 for no limit
+     */
+    private final long maxBytes;
+    /**
+     * spill to disk when the cap is exceeded or not
+     */
+    private final boolean spill;
+    /**
+     * temp directory for spilled files , created on first spill
+     */
+    private FSDirectory spillDirectory;
+    /**
+     * counter for temp files
+     */
+    private final AtomicLong tempCounter = new AtomicLong();
+
+    /**
+     * @param maxBytes max bytes off heap , 0 for no limit
+     * @param spill    spill files to a temp directory when the cap is exceeded
+     */
+    public OffHeapDirectory(long maxBytes, boolean spill) {
+        super(new SingleInstanceLockFactory());
+        this.maxBytes = maxBytes;
+        this.spill = spill;
+    }
+
+    @Override
+    public String[] listAll() throws IOException {
+        ensureOpen();
+        String[] names = files.keySet().toArray(new String[0]);
+        Arrays.sort(names);
+        return names;
+    }
+
+    @Override
+    public void deleteFile(String name) throws IOException {
+        ensureOpen();
+        FileEntry entry = files.remove(name);
+        if (entry == null) {
+            throw new NoSuchFileException(name);
+        }
+        entry.delete();
+    }
+
+    @Override
+    public long fileLength(String name) throws IOException {
+        ensureOpen();
+        FileEntry entry = entry(name);
+        return entry.spilled ? spillDirectory.fileLength(entry.name) : entry.length;
+    }
+
+    @Override
+    public IndexOutput createOutput(String name, IOContext context) throws IOException {
+        ensureOpen();
+        FileEntry entry = new FileEntry(name);
+        if (files.putIfAbsent(name, entry) != null) {
+            throw new FileAlreadyExistsException(name);
+        }
+        return new Output(entry);
+    }
+
+    @Override
+    public IndexOutput createTempOutput(String prefix, String suffix, IOContext context) throws IOException {
+        while (true) {
+            String name = IndexFileNames.segmentFileName(prefix, suffix + "_" + Long.toString(tempCounter.getAndIncrement(), Character.MAX_RADIX), "tmp");
+            if (!files.containsKey(name)) {
+                return createOutput(name, context);
+            }
+        }
+    }
+
+    @Override
+    public void sync(Collection<String> names) throws IOException {
+        ensureOpen();
+        List<String> spilled = new ArrayList<>();
+        for (String name : names) {
+            FileEntry entry = files.get(name);
+            if (entry != null && entry.spilled) {
+                spilled.add(entry.name);
+            }
+        }
+        if (!spilled.isEmpty()) {
+            spillDirectory.sync(spilled);
+        }
+    }
+
+    @Override
+    public void syncMetaData() {
+        // nothing to sync
+    }
+
+    @Override
+    public synchronized void rename(String source, String dest) throws IOException {
+        ensureOpen();
+        FileEntry entry = entry(source);
+        if (files.putIfAbsent(dest, entry) != null) {
+            throw new FileAlreadyExistsException(dest);
+        }
+        files.remove(source);
+        // spilled files keep the name on disk
+    }
+
+    @Override
+    public IndexInput openInput(String name, IOContext context) throws IOException {
+        ensureOpen();
+        FileEntry entry = entry(name);
+        if (entry.spilled) {
+            return spillDirectory.openInput(entry.name, context);
+        }
+        return new Input(new ByteBuffersIndexInput(entry.acquire(), "OffHeapDirectory(" + name + ")"), entry, true);
+    }
+
+    @Override
+    public Set<String> getPendingDeletions() {
+        return Collections.emptySet();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        isOpen = false;
+        for (FileEntry entry : files.values()) {
+            entry.discard();
+        }
+        files.clear();
+        if (spillDirectory != null) {
+            Path path = spillDirectory.getDirectory();
+            IOUtils.close(spillDirectory);
+            IOUtils.rm(path);
+            spillDirectory = null;
+        }
+    }
+
+    /**
+     * bytes of buffers off heap
+     *
+     * @return
+     */
+    @Override
+    public long ramBytesUsed() {
+        return used.get();
+    }
+
+    /**
+     * bytes of spilled files on disk
+     *
+     * @return
+     * @throws IOException
+     */
+    public long spilledBytes() throws IOException {
+        long ret = 0;
+        for (FileEntry entry : files.values()) {
+            if (entry.spilled) {
+                ret += spillDirectory.fileLength(entry.name);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * max bytes off heap
+     *
+     * @return
+     */
+    public long maxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * entry of the file
+     *
+     * @param name
+     * @return
+     * @throws NoSuchFileException
+     */
+    private FileEntry entry(String name) throws NoSuchFileException {
+        FileEntry entry = files.get(name);
+        if (entry == null) {
+            throw new NoSuchFileException(name);
+        }
+        return entry;
+    }
+
+    /**
+     * reserve bytes under the cap
+     *
+     * @param size
+     * @return false if the cap is exceeded
+     */
+    private boolean reserve(long size) {
+        while (true) {
+            long current = used.get();
+            if (maxBytes > 0 && current + size > maxBytes) {
+                return false;
+            }
+            if (used.compareAndSet(current, current + size)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * direct buffer under the cap
+     *
+     * @param size
+     * @return null if the cap is exceeded
+     */
+    private ByteBuffer allocate(int size) {
+        return reserve(size) ? ByteBuffer.allocateDirect(size) : null;
+    }
+
+    /**
+     * free the buffer now
+     *
+     * @param buffer
+     */
+    private void free(ByteBuffer buffer) {
+        used.addAndGet(-buffer.capacity());
+        if (CLEANER != null) {
+            try {
+                CLEANER.invokeExact(buffer);
+            } catch (Throwable e) {
+                // freed by gc
+            }
+        }
+    }
+
+    /**
+     * temp directory for spilled files
+     *
+     * @return
+     * @throws IOException
+     */
+    private synchronized FSDirectory spillDirectory() throws IOException {
+        ensureOpen();
+        if (spillDirectory == null) {
+            spillDirectory = new NIOFSDirectory(Files.createTempDirectory("lucener-spill-"));
+        }
+        return spillDirectory;
+    }
+
+    /**
+     * a file , buffers are freed when deleted and no input is open
+     */
+    private final class FileEntry {
+        /**
+         * name when created , the name of a spilled file on disk
+         */
+        private final String name;
+        /**
+         * blocks of the file
+         */
+        private List<ByteBuffer> blocks = Collections.emptyList();
+        /**
+         * length of the file
+         */
+        private volatile long length;
+        /**
+         * moved to the spill directory
+         */
+        private volatile boolean spilled;
+        /**
+         * open inputs
+         */
+        private int inputs;
+        /**
+         * deleted
+         */
+        private boolean deleted;
+
+        FileEntry(String name) {
+            this.name = name;
+        }
+
+        /**
+         * blocks written
+         *
+         * @param blocks
+         * @param length
+         */
+        synchronized void publish(List<ByteBuffer> blocks, long length) {
+            this.blocks = blocks;
+            this.length = length;
+        }
+
+        /**
+         * input of the blocks , released when the input is closed
+         *
+         * @return
+         */
+        synchronized ByteBuffersDataInput acquire() {
+            inputs++;
+            List<ByteBuffer> view = new ArrayList<>(blocks.size());
+            for (ByteBuffer b : blocks) {
+                view.add(b.asReadOnlyBuffer());
+            }
+            if (view.isEmpty()) {
+                view.add(ByteBuffer.allocate(0));
+            }
+            return new ByteBuffersDataInput(view);
+        }
+
+        synchronized void release() {
+            inputs--;
+            if (deleted && inputs == 0) {
+                free();
+            }
+        }
+
+        synchronized void delete() throws IOException {
+            deleted = true;
+            if (spilled) {
+                spillDirectory.deleteFile(name);
+            } else if (inputs == 0) {
+                free();
+            }
+        }
+
+        /**
+         * directory closed , buffers still read by open inputs are freed when the last one is closed
+         */
+        synchronized void discard() {
+            deleted = true;
+            if (inputs == 0) {
+                free();
+            }
+        }
+
+        synchronized void free() {
+            for (ByteBuffer b : blocks) {
+                OffHeapDirectory.this.free(b);
+            }
+            blocks = Collections.emptyList();
+        }
+    }
+
+    /**
+     * output to blocks of direct buffers , to the spill directory when the cap is exceeded
+     */
+    private final class Output extends IndexOutput {
+        private final FileEntry entry;
+        private final List<ByteBuffer> blocks = new ArrayList<>();
+        private final BufferedChecksum crc = new BufferedChecksum(new CRC32());
+        private ByteBuffer current;
+        private long length;
+        /**
+         * output in the spill directory
+         */
+        private IndexOutput spilled;
+
+        Output(FileEntry entry) {
+            super("OffHeapDirectory(" + entry.name + ")", entry.name);
+            this.entry = entry;
+        }
+
+        @Override
+        public void writeByte(byte b) throws IOException {
+            if (spilled == null && (current != null && current.hasRemaining() || next())) {
+                current.put(b);
+                crc.update(b);
+                length++;
+            } else {
+                spilled.writeByte(b);
+            }
+        }
+
+        @Override
+        public void writeBytes(byte[] b, int offset, int len) throws IOException {
+            while (len > 0) {
+                if (spilled == null && (current != null && current.hasRemaining() || next())) {
+                    int n = Math.min(len, current.remaining());
+                    current.put(b, offset, n);
+                    crc.update(b, offset, n);
+                    length += n;
+                    offset += n;
+                    len -= n;
+                } else {
+                    spilled.writeBytes(b, offset, len);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * next block
+         *
+         * @return false if spilled
+         * @throws IOException if the cap is exceeded without spill
+         */
+        private boolean next() throws IOException {
+            if (spilled != null) {
+                return false;
+            }
+            current = allocate(BLOCK_SIZE);
+            if (current != null) {
+                blocks.add(current);
+                return true;
+            }
+            if (!spill) {
+                throw new IOException("off heap memory exceeded " + maxBytes + " bytes : " + entry.name);
+            }
+            // copy the written blocks to disk and write there from now on
+            spilled = spillDirectory().createOutput(entry.name, IOContext.DEFAULT);
+            byte[] copy = new byte[BLOCK_SIZE];
+            for (ByteBuffer block : blocks) {
+                ByteBuffer b = block.duplicate();
+                b.flip();
+                int n = b.remaining();
+                b.get(copy, 0, n);
+                spilled.writeBytes(copy, 0, n);
+                free(block);
+            }
+            blocks.clear();
+            entry.spilled = true;
+            return false;
+        }
+
+        @Override
+        public long getFilePointer() {
+            return spilled != null ? spilled.getFilePointer() : length;
+        }
+
+        @Override
+        public long getChecksum() throws IOException {
+            return spilled != null ? spilled.getChecksum() : crc.getValue();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (spilled != null) {
+                spilled.close();
+                return;
+            }
+            // the last block holds only the tail of the file
+            if (!blocks.isEmpty()) {
+                ByteBuffer last = blocks.get(blocks.size() - 1);
+                if (last.hasRemaining()) {
+                    ByteBuffer trimmed = ByteBuffer.allocateDirect(last.position());
+                    used.addAndGet(trimmed.capacity());
+                    last.flip();
+                    trimmed.put(last);
+                    free(last);
+                    blocks.set(blocks.size() - 1, trimmed);
+                }
+                for (ByteBuffer b : blocks) {
+                    b.flip();
+                }
+            }
+            entry.publish(blocks, length);
+        }
+    }
+
+    /**
+     * input of a file , the main input releases the file when closed
+     */
+    private static final class Input extends IndexInput implements RandomAccessInput {
+        private final ByteBuffersIndexInput in;
+        private final FileEntry entry;
+        private final boolean main;
+        private boolean closed;
+
+        Input(ByteBuffersIndexInput in, FileEntry entry, boolean main) {
+            super(in.toString());
+            this.in = in;
+            this.entry = entry;
+            this.main = main;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (main && !closed) {
+                closed = true;
+                in.close();
+                entry.release();
+            }
+        }
+
+        @Override
+        public long getFilePointer() {
+            return in.getFilePointer();
+        }
+
+        @Override
+        public void seek(long pos) throws IOException {
+            in.seek(pos);
+        }
+
+        @Override
+        public long length() {
+            return in.length();
+        }
+
+        @Override
+        public IndexInput slice(String sliceDescription, long offset, long length) throws IOException {
+            return new Input(in.slice(sliceDescription, offset, length), entry, false);
+        }
+
+        @Override
+        public IndexInput clone() {
+            return new Input((ByteBuffersIndexInput) in.clone(), entry, false);
+        }
+
+        @Override
+        public RandomAccessInput randomAccessSlice(long offset, long length) throws IOException {
+            return in.randomAccessSlice(offset, length);
+        }
+
+        @Override
+        public byte readByte() throws IOException {
+            return in.readByte();
+        }
+
+        @Override
+        public void readBytes(byte[] b, int offset, int len) throws IOException {
+            in.readBytes(b, offset, len);
+        }
+
+        @Override
+        public short readShort() throws IOException {
+            return in.readShort();
+        }
+
+        @Override
+        public int readInt() throws IOException {
+            return in.readInt();
+        }
+
+        @Override
+        public int readVInt() throws IOException {
+            return in.readVInt();
+        }
+
+        @Override
+        public long readLong() throws IOException {
+            return in.readLong();
+        }
+
+        @Override
+        public long readVLong() throws IOException {
+            return in.readVLong();
+        }
+
+        @Override
+        public void readFloats(float[] floats, int offset, int len) throws IOException {
+            in.readFloats(floats, offset, len);
+        }
+
+        @Override
+        public void readLongs(long[] dst, int offset, int length) throws IOException {
+            in.readLongs(dst, offset, length);
+        }
+
+        @Override
+        public void skipBytes(long numBytes) throws IOException {
+            in.skipBytes(numBytes);
+        }
+
+        @Override
+        public byte readByte(long pos) throws IOException {
+            return in.readByte(pos);
+        }
+
+        @Override
+        public short readShort(long pos) throws IOException {
+            return in.readShort(pos);
+        }
+
+        @Override
+        public int readInt(long pos) throws IOException {
+            return in.readInt(pos);
+        }
+
+        @Override
+        public long readLong(long pos) throws IOException {
+            return in.readLong(pos);
+        }
+    }
+}
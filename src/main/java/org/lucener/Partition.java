@@ -0,0 +1,105 @@
+package org.lucener;
+
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * time partition of PartitionedLucener , in UTC
+ */
+public enum Partition {
+    DAY(ChronoUnit.DAYS.getDuration().toMillis(), "yyyyMMdd"),
+    HOUR(ChronoUnit.HOURS.getDuration().toMillis(), "yyyyMMddHH");
+
+    /**
+     * length in millis
+     */
+    private final long millis;
+
+    /**
+     * pattern of directory name
+     */
+    private final String pattern;
+
+    /**
+     * directory name of the partition
+     */
+    private final DateTimeFormatter format;
+
+    Partition(long millis, String pattern) {
+        this.millis = millis;
+        this.pattern = pattern;
+        this.format = DateTimeFormatter.ofPattern(pattern).withZone(ZoneOffset.UTC);
+    }
+
+    /**
+     * length in millis
+     *
+     * @return
+     */
+    public long millis() {
+        return millis;
+    }
+
+    /**
+     * number of the partition containing the time , partitions since epoch
+     *
+     * @param time epoch millis
+     * @return
+     */
+    public int number(long time) {
+        return Math.toIntExact(Math.floorDiv(time, millis));
+    }
+
+    /**
+     * number of the partition containing the time , clamped to the range of numbers , for bounds of a time range
+     *
+     * @param time epoch millis
+     * @return
+     */
+    int bound(long time) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, Math.floorDiv(time, millis)));
+    }
+
+    /**
+     * start of the partition in epoch millis
+     *
+     * @param number
+     * @return
+     */
+    public long start(int number) {
+        return number * millis;
+    }
+
+    /**
+     * directory name of the partition
+     *
+     * @param number
+     * @return
+     */
+    public String name(int number) {
+        return format.format(Instant.ofEpochMilli(start(number)));
+    }
+
+    /**
+     * number of the partition by directory name
+     *
+     * @param name
+     * @return -1 if not a partition name
+     */
+    public int parse(String name) {
+        if (name.length() != pattern.length() || !name.chars().allMatch(Character::isDigit)) {
+            return -1;
+        }
+        try {
+            LocalDateTime t = LocalDateTime.of(Integer.parseInt(name.substring(0, 4)), Integer.parseInt(name.substring(4, 6)),
+                    Integer.parseInt(name.substring(6, 8)), this == HOUR ? Integer.parseInt(name.substring(8, 10)) : 0, 0);
+            return number(t.toInstant(ZoneOffset.UTC).toEpochMilli());
+        } catch (DateTimeException e) {
+            return -1;
+        }
+    }
+}
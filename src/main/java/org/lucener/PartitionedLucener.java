@@ -0,0 +1,534 @@
+package org.lucener;
+
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.*;
+import org.apache.lucene.util.IOUtils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * lucene index of type T partitioned by time , a daily or hourly index for the partition field of Index
+ * <p>
+ * every partition is a lucener in its own directory named by the partition , such as 20240101 or 2024010112 in UTC .
+ * queries with a time range only fan out to the partitions overlapping the range , retention closes and deletes
+ * whole partitions instead of deleting documents .
+ */
+public class PartitionedLucener<T extends DocSerializable<T>> extends MultiLucener<T> implements Closeable {
+    /**
+     * partitions by number
+     */
+    private final SortedMap<Integer, Lucener<T>> partitions;
+    /**
+     * queries and writes hold the read lock , dropping partitions holds the write lock
+     */
+    private final ReadWriteLock lock;
+    /**
+     * in memory lucener for schema , such as building queries and sort fields
+     */
+    private final Lucener<T> schema;
+    /**
+     * type
+     */
+    private final Class<? extends DocSerializable> type;
+    /**
+     * partition field
+     */
+    private final Field timeField;
+    /**
+     * partition
+     */
+    private final Partition partition;
+    /**
+     * persist to disk or not
+     */
+    private final boolean persistence;
+    /**
+     * index file path
+     */
+    private final Path indexPath;
+
+    /**
+     * partitioned lucener for class
+     *
+     * @param entityClass
+     * @return
+     * @throws Exception
+     */
+    public static <U> PartitionedLucener forClass(Class<? extends DocSerializable<U>> entityClass) throws Exception {
+        return forClass(entityClass, null);
+    }
+
+    /**
+     * partitioned lucener for class
+     *
+     * @param entityClass
+     * @param root        root path
+     * @return
+     * @throws Exception
+     */
+    public static <V> PartitionedLucener forClass(Class<? extends DocSerializable<V>> entityClass, String root) throws Exception {
+        Path path = Lucener.indexDir(entityClass, root);
+        if (!Lucener.indexAnnotation(entityClass).replicaPath().isEmpty()) {
+            Lucener.error(entityClass, "replicaPath is not supported by partitioned indexes");
+        }
+        return Registry.get(Registry.key(PartitionedLucener.class, entityClass, path), () -> new PartitionedLucener<>(entityClass, path));
+    }
+
+    /**
+     * open the existing partitions under the index path
+     *
+     * @param entityClass
+     * @param path        index path
+     * @throws Exception
+     */
+    private <U> PartitionedLucener(Class<? extends DocSerializable<U>> entityClass, Path path) throws Exception {
+        super("partition-" + entityClass.getSimpleName(), Runtime.getRuntime().availableProcessors());
+        type = entityClass;
+        Index ian = Lucener.indexAnnotation(entityClass);
+        partition = ian.partition();
+        persistence = ian.persistence();
+        indexPath = path;
+        timeField = timeField(entityClass, ian.partitionField());
+        lock = new ReentrantReadWriteLock();
+        partitions = new TreeMap<>();
+        schema = Lucener.schema(entityClass, indexPath);
+        File[] dirs = persistence ? indexPath.toFile().listFiles(File::isDirectory) : null;
+        if (dirs != null) {
+            for (File dir : dirs) {
+                int number = partition.parse(dir.getName());
+                if (number >= 0) {
+                    partitions.put(number, new Lucener<>(entityClass, dir.toPath()));
+                }
+            }
+        }
+    }
+
+    /**
+     * the partition field , an indexed single LongField
+     *
+     * @param entityClass
+     * @param name
+     * @return
+     */
+    private static Field timeField(Class<?> entityClass, String name) {
+        List<Field> all = new ArrayList<>();
+        Lucener.allField(entityClass, all);
+        for (Field f : all) {
+            if (f.getName().equals(name)) {
+                LongField an = f.getAnnotation(LongField.class);
+                if (an == null || !an.index() || !(f.getType() == long.class || f.getType() == Long.class)) {
+                    break;
+                }
+                f.setAccessible(true);
+                return f;
+            }
+        }
+        Lucener.error(entityClass, "partition field should be an indexed LongField : " + name);
+        return null;
+    }
+
+    /**
+     * index or update objects , every object goes to the partition of its time
+     * <p>
+     * an update should keep the time of the object , or the old one stays in its partition
+     *
+     * @param obs
+     * @throws Exception
+     */
+    @SafeVarargs
+    public final void index(T... obs) throws Exception {
+        if (obs == null || obs.length == 0) {
+            return;
+        }
+        Map<Integer, List<T>> grouped = new TreeMap<>();
+        for (T ob : obs) {
+            if (ob == null) {
+                throw new NullPointerException("object to index is null");
+            }
+            Object time = timeField.get(ob);
+            if (time == null) {
+                throw new NullPointerException("partition field is null : " + timeField.getName());
+            }
+            grouped.computeIfAbsent(partition.number((Long) time), k -> new ArrayList<>()).add(ob);
+        }
+        lock.readLock().lock();
+        try {
+            List<Callable<Void>> tasks = new ArrayList<>(grouped.size());
+            for (Map.Entry<Integer, List<T>> e : grouped.entrySet()) {
+                Lucener<T> p = open(e.getKey());
+                T[] part = array(type, e.getValue());
+                tasks.add(() -> {
+                    p.index(part);
+                    return null;
+                });
+            }
+            invokeAll(tasks);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * partition of the number , created if absent
+     *
+     * @param number
+     * @return
+     * @throws Exception
+     */
+    private Lucener<T> open(int number) throws Exception {
+        synchronized (partitions) {
+            Lucener<T> p = partitions.get(number);
+            if (p == null) {
+                p = new Lucener<>((Class) type, indexPath.resolve(partition.name(number)), persistence);
+                partitions.put(number, p);
+            }
+            return p;
+        }
+    }
+
+    /**
+     * partitions overlapping the time range
+     *
+     * @param from epoch millis inclusive , null for unbounded
+     * @param to   epoch millis inclusive , null for unbounded
+     * @return
+     */
+    private SortedMap<Integer, Lucener<T>> partitions(Long from, Long to) {
+        if (from != null && to != null && from > to) {
+            return new TreeMap<>();
+        }
+        synchronized (partitions) {
+            SortedMap<Integer, Lucener<T>> ret = partitions;
+            if (from != null) {
+                ret = ret.tailMap(partition.bound(from));
+            }
+            if (to != null && partition.bound(to) < Integer.MAX_VALUE) {
+                ret = ret.headMap(partition.bound(to) + 1);
+            }
+            return new TreeMap<>(ret);
+        }
+    }
+
+    /**
+     * get by id , newest partition first
+     *
+     * @param id
+     * @return
+     * @throws Exception
+     */
+    public T get(String id) throws Exception {
+        lock.readLock().lock();
+        try {
+            SortedMap<Integer, Lucener<T>> all = partitions(null, null);
+            for (Integer number : ((TreeMap<Integer, Lucener<T>>) all).descendingKeySet()) {
+                T d = all.get(number).get(id);
+                if (d != null) {
+                    d.shardIndex = number;
+                    return d;
+                }
+            }
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * delete by doc id from all partitions
+     *
+     * @param id
+     * @throws Exception
+     */
+    public void delete(String id) throws Exception {
+        Term term = new Term(schema.docIdField(), id);
+        lock.readLock().lock();
+        try {
+            forEach(partitions(null, null).values(), p -> p.deleteDocuments(term));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * delete from query on all partitions , drop partitions for retention
+     *
+     * @param queries
+     * @throws Exception
+     */
+    public void deleteDocuments(Query... queries) throws Exception {
+        lock.readLock().lock();
+        try {
+            forEach(partitions(null, null).values(), p -> p.deleteDocuments(queries));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * query all partitions
+     *
+     * @param query
+     * @param n
+     * @param sort
+     * @return
+     * @throws Exception
+     */
+    public QueryResult<T> query(Query query, int n, Sort sort) throws Exception {
+        return queryAfter(null, null, null, query, n, sort);
+    }
+
+    /**
+     * query the partitions overlapping the time range
+     *
+     * @param from  epoch millis inclusive , null for unbounded
+     * @param to    epoch millis inclusive , null for unbounded
+     * @param query
+     * @param n
+     * @param sort
+     * @return
+     * @throws Exception
+     */
+    public QueryResult<T> query(Long from, Long to, Query query, int n, Sort sort) throws Exception {
+        return queryAfter(null, from, to, query, n, sort);
+    }
+
+    /**
+     * query after the last entity of previous page in the time range
+     *
+     * @param after
+     * @param from  epoch millis inclusive , null for unbounded
+     * @param to    epoch millis inclusive , null for unbounded
+     * @param query
+     * @param n
+     * @param sort
+     * @return
+     * @throws Exception
+     */
+    public QueryResult<T> query(T after, Long from, Long to, Query query, int n, Sort sort) throws Exception {
+        FieldDoc fd = null;
+        if (after != null) {
+            fd = schema.fieldDoc(after, sort);
+            fd.shardIndex = after.shardIndex;
+        }
+        return queryAfter(fd, from, to, query, n, sort);
+    }
+
+    /**
+     * query after the cursor in the time range
+     * <p>
+     * only partitions overlapping the range are searched , the range is also a filter for partitions on the edge .
+     * the shardIndex of hits is the partition number , so cursors stay valid when partitions are added or dropped .
+     *
+     * @param after cursor with the shardIndex of the last hit
+     * @param from  epoch millis inclusive , null for unbounded
+     * @param to    epoch millis inclusive , null for unbounded
+     * @param query
+     * @param n
+     * @param sort
+     * @return
+     * @throws Exception
+     */
+    public QueryResult<T> queryAfter(FieldDoc after, Long from, Long to, Query query, int n, Sort sort) throws Exception {
+        if (from != null || to != null) {
+            BooleanQuery.Builder builder = Lucener.booleanQuery();
+            Lucener.must(builder, query);
+            Lucener.filter(builder, LongPoint.newRangeQuery(timeField.getName(), from == null ? Long.MIN_VALUE : from, to == null ? Long.MAX_VALUE : to));
+            query = builder.build();
+        }
+        lock.readLock().lock();
+        try {
+            return queryAfter(after, query, n, sort, partitions(from, to));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * close and delete all partitions ending before the time
+     *
+     * @param time epoch millis
+     * @return names of dropped partitions
+     * @throws Exception
+     */
+    public List<String> dropBefore(long time) throws Exception {
+        List<String> dropped = new ArrayList<>();
+        lock.writeLock().lock();
+        try {
+            synchronized (partitions) {
+                // partitions before the one containing the time end before it
+                SortedMap<Integer, Lucener<T>> old = partitions.headMap(partition.bound(time));
+                for (Map.Entry<Integer, Lucener<T>> e : old.entrySet()) {
+                    Lucener<T> p = e.getValue();
+                    p.searcherManager().close();
+                    p.close();
+                    if (persistence) {
+                        IOUtils.rm(indexPath.resolve(partition.name(e.getKey())));
+                    }
+                    dropped.add(partition.name(e.getKey()));
+                }
+                old.clear();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return dropped;
+    }
+
+    /**
+     * keep the latest partitions , drop the others
+     *
+     * @param count partitions to keep , 0 to drop all
+     * @return names of dropped partitions
+     * @throws Exception
+     */
+    public List<String> retain(int count) throws Exception {
+        if (count < 0) {
+            Lucener.error(type, "partitions to keep should not be negative");
+        }
+        long end;
+        synchronized (partitions) {
+            int drop = partitions.size() - count;
+            if (drop <= 0) {
+                return Collections.emptyList();
+            }
+            // start of the oldest partition kept , or the end of the last one
+            end = drop == partitions.size() ? partition.start(partitions.lastKey()) + partition.millis()
+                    : partition.start(new ArrayList<>(partitions.keySet()).get(drop));
+        }
+        return dropBefore(end);
+    }
+
+    /**
+     * names of all partitions , oldest first
+     *
+     * @return
+     */
+    public List<String> partitions() {
+        synchronized (partitions) {
+            List<String> ret = new ArrayList<>(partitions.size());
+            partitions.keySet().forEach(number -> ret.add(partition.name(number)));
+            return ret;
+        }
+    }
+
+    /**
+     * partition of the time
+     *
+     * @param time epoch millis
+     * @return null if absent
+     */
+    public Lucener<T> partition(long time) {
+        synchronized (partitions) {
+            return partitions.get(partition.bound(time));
+        }
+    }
+
+    /**
+     * exact query
+     *
+     * @param field
+     * @param v
+     * @return
+     */
+    public Query buildExactQuery(String field, Object v) {
+        return schema.buildExactQuery(field, v);
+    }
+
+    /**
+     * range query
+     *
+     * @param field
+     * @param lower
+     * @param upper
+     * @return
+     */
+    public Query buildRangeQuery(String field, Object lower, Object upper) {
+        return schema.buildRangeQuery(field, lower, upper);
+    }
+
+    /**
+     * parse query string
+     *
+     * @param defaultField
+     * @param text
+     * @return
+     * @throws ParseException
+     */
+    public Query parse(String defaultField, String text) throws ParseException {
+        return schema.parse(defaultField, text);
+    }
+
+    /**
+     * sort field
+     *
+     * @param field
+     * @param reverse
+     * @return
+     */
+    public SortField sortField(String field, boolean reverse) {
+        return schema.sortField(field, reverse);
+    }
+
+    /**
+     * commit all partitions
+     *
+     * @throws Exception
+     */
+    public void commit() throws Exception {
+        lock.readLock().lock();
+        try {
+            forEach(partitions(null, null).values(), Lucener::commit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * refresh all partitions
+     *
+     * @throws Exception
+     */
+    public void maybeRefreshBlocking() throws Exception {
+        lock.readLock().lock();
+        try {
+            forEach(partitions(null, null).values(), p -> {
+                p.maybeRefreshBlocking();
+                return null;
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * close all partitions
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            close(partitions(null, null).values());
+            schema.close();
+        } finally {
+            lock.writeLock().unlock();
+            shutdown();
+            Registry.evict(Registry.key(PartitionedLucener.class, type, indexPath), this);
+        }
+    }
+
+    public String indexPath() {
+        return indexPath.toFile().getAbsolutePath();
+    }
+}
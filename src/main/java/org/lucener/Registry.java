@@ -0,0 +1,157 @@
+package org.lucener;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * open luceners by kind , class and resolved index path
+ * <p>
+ * lookups of open instances are lock free , an instance is opened on first use and removed when closed .
+ * the first caller of a key opens it outside the map , later callers of the key wait for it , other keys go on .
+ * a shutdown hook closes all open instances in parallel , closing commits the writers .
+ */
+@Slf4j
+final class Registry {
+    /**
+     * open instances by key
+     */
+    private static final ConcurrentHashMap<String, FutureTask<AutoCloseable>> open = new ConcurrentHashMap<>();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(Registry::closeAll, "lucener-shutdown"));
+    }
+
+    private Registry() {
+    }
+
+    /**
+     * opener of an instance
+     */
+    @FunctionalInterface
+    interface Opener<R extends AutoCloseable> {
+        R open() throws Exception;
+    }
+
+    /**
+     * key of an instance
+     *
+     * @param kind Lucener , ShardedLucener ...
+     * @param type entity class
+     * @param path index path
+     * @return
+     */
+    static String key(Class<?> kind, Class<?> type, Path path) {
+        return kind.getSimpleName() + ":" + type.getName() + "@" + path.toAbsolutePath().normalize();
+    }
+
+    /**
+     * the open instance , or open it
+     *
+     * @param key
+     * @param opener
+     * @return
+     * @throws Exception
+     */
+    @SuppressWarnings("unchecked")
+    static <R extends AutoCloseable> R get(String key, Opener<R> opener) throws Exception {
+        FutureTask<AutoCloseable> f = open.get(key);
+        if (f == null) {
+            FutureTask<AutoCloseable> task = new FutureTask<>(opener::open);
+            f = open.putIfAbsent(key, task);
+            if (f == null) {
+                f = task;
+                task.run();
+            }
+        }
+        try {
+            return (R) f.get();
+        } catch (ExecutionException e) {
+            // failed opens are not kept , the next call tries again
+            open.remove(key, f);
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    /**
+     * instance of the key open or not
+     *
+     * @param key
+     * @return
+     */
+    static boolean isOpen(String key) {
+        return open.containsKey(key);
+    }
+
+    /**
+     * remove the instance when closed
+     *
+     * @param key
+     * @param instance
+     */
+    static void evict(String key, Object instance) {
+        open.computeIfPresent(key, (k, f) -> instance(f) == instance ? null : f);
+    }
+
+    /**
+     * the opened instance , null if not opened yet or failed
+     *
+     * @param f
+     * @return
+     */
+    private static AutoCloseable instance(FutureTask<AutoCloseable> f) {
+        if (!f.isDone()) {
+            return null;
+        }
+        try {
+            return f.get();
+        } catch (ExecutionException | InterruptedException | CancellationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * close all open instances in parallel , on threads of its own as the common pool may be busy or gone at shutdown
+     */
+    static void closeAll() {
+        List<AutoCloseable> all = new ArrayList<>();
+        for (FutureTask<AutoCloseable> f : open.values()) {
+            AutoCloseable r = instance(f);
+            if (r != null) {
+                all.add(r);
+            }
+        }
+        if (all.isEmpty()) {
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(all.size(), Runtime.getRuntime().availableProcessors()), r -> {
+            Thread t = new Thread(r, "lucener-close");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            for (AutoCloseable r : all) {
+                executor.execute(() -> {
+                    try {
+                        r.close();
+                    } catch (Exception e) {
+                        log.warn("close failed : " + r, e);
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
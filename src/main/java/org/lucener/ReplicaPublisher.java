@@ -0,0 +1,149 @@
+package org.lucener;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.index.*;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * publish refreshed segments of a writer to a replica directory , read only luceners of other processes open the
+ * replica directory and see new segments by openIfChanged
+ * <p>
+ * a publish opens an NRT reader with all deletes written , which holds its files in the writer , hard links or
+ * copies the files not in the replica and writes the segment infos of the reader as the next segments_N of the
+ * replica . files of the two latest publishes are kept , so a replica opening the previous one still finds its files .
+ */
+@Slf4j
+final class ReplicaPublisher implements Closeable {
+    /**
+     * writer of the primary
+     */
+    private final IndexWriter writer;
+    /**
+     * directory of the writer
+     */
+    private final Directory source;
+    /**
+     * replica directory
+     */
+    private final Directory target;
+    /**
+     * publish thread , null if not periodic
+     */
+    private final ScheduledExecutorService scheduler;
+    /**
+     * reader of the latest publish
+     */
+    private DirectoryReader reader;
+    /**
+     * files of the latest publish
+     */
+    private Set<String> current = Collections.emptySet();
+    /**
+     * segments generation of the latest publish
+     */
+    private long generation;
+
+    /**
+     * @param name     name of the publish thread
+     * @param writer
+     * @param source   directory of the writer
+     * @param path     replica path
+     * @param interval millis between publishes , 0 for publish on demand only
+     * @throws IOException
+     */
+    ReplicaPublisher(String name, IndexWriter writer, Directory source, Path path, long interval) throws IOException {
+        this.writer = writer;
+        this.source = source;
+        Files.createDirectories(path);
+        this.target = FSDirectory.open(path);
+        this.generation = SegmentInfos.getLastCommitGeneration(target);
+        publish();
+        if (interval > 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "lucener-publish-" + name);
+                t.setDaemon(true);
+                return t;
+            });
+            scheduler.scheduleWithFixedDelay(this::publishQuietly, interval, interval, TimeUnit.MILLISECONDS);
+        } else {
+            scheduler = null;
+        }
+    }
+
+    /**
+     * publish if the writer changed since the latest publish
+     *
+     * @return false if nothing changed
+     * @throws IOException
+     */
+    synchronized boolean publish() throws IOException {
+        DirectoryReader r = reader == null ? DirectoryReader.open(writer, true, true) : DirectoryReader.openIfChanged(reader, writer, true);
+        if (r == null) {
+            return false;
+        }
+        try {
+            SegmentInfos infos = ((StandardDirectoryReader) r).getSegmentInfos().clone();
+            Collection<String> files = infos.files(false);
+            Backup.copy(source, target, files);
+            infos.setNextWriteGeneration(Math.max(generation, infos.getGeneration()) + 1);
+            infos.commit(target);
+            generation = infos.getGeneration();
+            Set<String> published = new HashSet<>(files);
+            published.add(infos.getSegmentsFileName());
+            Set<String> keep = new HashSet<>(published);
+            keep.addAll(current);
+            Backup.clean(target, keep);
+            current = published;
+        } catch (IOException | RuntimeException e) {
+            r.close();
+            throw e;
+        }
+        if (reader != null) {
+            reader.close();
+        }
+        reader = r;
+        return true;
+    }
+
+    private void publishQuietly() {
+        try {
+            publish();
+        } catch (Exception e) {
+            log.warn("publish failed : " + target, e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            try {
+                if (writer.isOpen()) {
+                    publish();
+                }
+            } finally {
+                if (reader != null) {
+                    reader.close();
+                }
+                target.close();
+            }
+        }
+    }
+}
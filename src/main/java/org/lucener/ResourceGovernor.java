@@ -0,0 +1,444 @@
+package org.lucener;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.index.ConcurrentMergeScheduler;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.MergePolicy;
+import org.apache.lucene.store.*;
+import org.apache.lucene.util.ThreadInterruptedException;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * resources shared by the writers of all luceners in the process
+ * <p>
+ * indexing RAM : every writer buffers up to its own RAM buffer bounded by the budget , after writes the sum of
+ * buffered bytes of all writers is checked and the largest writer flushes its largest buffer until the sum is under
+ * the budget .
+ * <p>
+ * merges : every writer gets a merge scheduler which takes a permit of the process wide merge thread limit
+ * before a merge runs , and writes merged segments through one shared rate limiter .
+ */
+@Slf4j
+public final class ResourceGovernor {
+    /**
+     * governed writers
+     */
+    private static final Map<IndexWriter, Governed> writers = new ConcurrentHashMap<>();
+    /**
+     * one thread flushes at a time , other writers go on
+     */
+    private static final AtomicBoolean flushing = new AtomicBoolean();
+    /**
+     * RAM budget of all writers in bytes
+     */
+    private static volatile long ramBudget = defaultRamBudget();
+    /**
+     * merge threads of all writers
+     */
+    private static final ResizableSemaphore mergePermits = new ResizableSemaphore(defaultMergeThreads());
+    /**
+     * merge write rate of all writers , 0 for no limit
+     */
+    private static final GlobalRateLimiter mergeRate = new GlobalRateLimiter();
+
+    private ResourceGovernor() {
+    }
+
+    /**
+     * 10% of the max heap , between 16MB and 1GB
+     *
+     * @return
+     */
+    private static long defaultRamBudget() {
+        long tenth = Runtime.getRuntime().maxMemory() / 10;
+        return Math.max(16L << 20, Math.min(1L << 30, tenth));
+    }
+
+    /**
+     * half of the cores , between 1 and 4
+     *
+     * @return
+     */
+    private static int defaultMergeThreads() {
+        return Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    /**
+     * set the RAM budget of all writers
+     *
+     * @param mb
+     */
+    public static void setRamBudgetMB(double mb) {
+        if (mb <= 0) {
+            throw new IllegalArgumentException("ram budget should be positive");
+        }
+        ramBudget = (long) (mb * 1024 * 1024);
+        for (Governed g : writers.values()) {
+            g.applyRamBuffer();
+        }
+        maybeFlush();
+    }
+
+    /**
+     * RAM budget of all writers in MB
+     *
+     * @return
+     */
+    public static double getRamBudgetMB() {
+        return ramBudget / 1024.0 / 1024.0;
+    }
+
+    /**
+     * set the merge threads of all writers
+     *
+     * @param threads
+     */
+    public static void setMaxMergeThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("merge threads should be positive");
+        }
+        mergePermits.resize(threads);
+    }
+
+    /**
+     * merge threads of all writers
+     *
+     * @return
+     */
+    public static int getMaxMergeThreads() {
+        return mergePermits.size();
+    }
+
+    /**
+     * set the merge write rate of all writers
+     *
+     * @param mbPerSec 0 for no limit
+     */
+    public static void setMergeMBPerSec(double mbPerSec) {
+        if (mbPerSec < 0) {
+            throw new IllegalArgumentException("merge rate should not be negative");
+        }
+        mergeRate.setMBPerSec(mbPerSec);
+    }
+
+    /**
+     * merge write rate of all writers , 0 for no limit
+     *
+     * @return
+     */
+    public static double getMergeMBPerSec() {
+        return mergeRate.getMBPerSec();
+    }
+
+    /**
+     * governed config : RAM buffer up to the budget and the shared merge limits
+     *
+     * @param config
+     * @param ramBufferSizeMB RAM buffer of the writer
+     * @return
+     */
+    static IndexWriterConfig configure(IndexWriterConfig config, double ramBufferSizeMB) {
+        config.setRAMBufferSizeMB(Math.min(ramBufferSizeMB, getRamBudgetMB()));
+        config.setMergeScheduler(new GovernedMergeScheduler());
+        return config;
+    }
+
+    /**
+     * govern a writer
+     *
+     * @param name            name in usage
+     * @param writer
+     * @param ramBufferSizeMB RAM buffer of the writer
+     */
+    static void register(String name, IndexWriter writer, double ramBufferSizeMB) {
+        writers.put(writer, new Governed(name, writer, ramBufferSizeMB));
+    }
+
+    /**
+     * change the RAM buffer of a governed writer , up to the budget
+     *
+     * @param writer
+     * @param ramBufferSizeMB
+     */
+    static void setRamBufferSizeMB(IndexWriter writer, double ramBufferSizeMB) {
+        Governed g = writers.get(writer);
+        if (g != null) {
+            g.ramBufferSizeMB = ramBufferSizeMB;
+            g.applyRamBuffer();
+        }
+    }
+
+    /**
+     * stop governing a writer
+     *
+     * @param writer
+     */
+    static void unregister(IndexWriter writer) {
+        writers.remove(writer);
+    }
+
+    /**
+     * after writes , flush the largest writers while all writers buffer more than the budget
+     */
+    static void maybeFlush() {
+        if (ramBytesUsed() <= ramBudget || !flushing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            while (true) {
+                long total = 0;
+                Governed largest = null;
+                long max = 0;
+                for (Governed g : writers.values()) {
+                    long used = g.ramBytesUsed();
+                    total += used;
+                    if (used > max) {
+                        max = used;
+                        largest = g;
+                    }
+                }
+                if (total <= ramBudget || largest == null || !largest.flush()) {
+                    return;
+                }
+            }
+        } finally {
+            flushing.set(false);
+        }
+    }
+
+    /**
+     * buffered bytes of all writers
+     *
+     * @return
+     */
+    public static long ramBytesUsed() {
+        long total = 0;
+        for (Governed g : writers.values()) {
+            total += g.ramBytesUsed();
+        }
+        return total;
+    }
+
+    /**
+     * usage of every governed index
+     *
+     * @return by index name
+     */
+    public static Map<String, Usage> usage() {
+        Map<String, Usage> ret = new TreeMap<>();
+        for (Governed g : writers.values()) {
+            GovernedMergeScheduler ms = g.writer.getConfig().getMergeScheduler() instanceof GovernedMergeScheduler
+                    ? (GovernedMergeScheduler) g.writer.getConfig().getMergeScheduler() : null;
+            ret.put(g.name, new Usage(g.ramBytesUsed(), g.flushes.get(),
+                    ms == null ? 0 : ms.running.get(), ms == null ? 0 : ms.merges.get()));
+        }
+        return ret;
+    }
+
+    /**
+     * usage of an index
+     */
+    public static final class Usage {
+        private final long ramBytesUsed;
+        private final long forcedFlushes;
+        private final int runningMerges;
+        private final long merges;
+
+        Usage(long ramBytesUsed, long forcedFlushes, int runningMerges, long merges) {
+            this.ramBytesUsed = ramBytesUsed;
+            this.forcedFlushes = forcedFlushes;
+            this.runningMerges = runningMerges;
+            this.merges = merges;
+        }
+
+        /**
+         * bytes buffered by the writer
+         *
+         * @return
+         */
+        public long getRamBytesUsed() {
+            return ramBytesUsed;
+        }
+
+        /**
+         * flushes forced by the RAM budget
+         *
+         * @return
+         */
+        public long getForcedFlushes() {
+            return forcedFlushes;
+        }
+
+        /**
+         * merges running now
+         *
+         * @return
+         */
+        public int getRunningMerges() {
+            return runningMerges;
+        }
+
+        /**
+         * merges done
+         *
+         * @return
+         */
+        public long getMerges() {
+            return merges;
+        }
+
+        @Override
+        public String toString() {
+            return "Usage{ramBytesUsed=" + ramBytesUsed + ", forcedFlushes=" + forcedFlushes + ", runningMerges=" + runningMerges + ", merges=" + merges + '}';
+        }
+    }
+
+    /**
+     * governed writer
+     */
+    private static final class Governed {
+        private final String name;
+        private final IndexWriter writer;
+        private final AtomicLong flushes = new AtomicLong();
+        private volatile double ramBufferSizeMB;
+
+        Governed(String name, IndexWriter writer, double ramBufferSizeMB) {
+            this.name = name;
+            this.writer = writer;
+            this.ramBufferSizeMB = ramBufferSizeMB;
+        }
+
+        /**
+         * RAM buffer of the writer up to the budget
+         */
+        void applyRamBuffer() {
+            try {
+                writer.getConfig().setRAMBufferSizeMB(Math.min(ramBufferSizeMB, getRamBudgetMB()));
+            } catch (RuntimeException e) {
+                log.warn("can not set ram buffer of " + name, e);
+            }
+        }
+
+        long ramBytesUsed() {
+            try {
+                return writer.ramBytesUsed();
+            } catch (RuntimeException e) {
+                // closed
+                return 0;
+            }
+        }
+
+        /**
+         * flush the largest buffer
+         *
+         * @return false if nothing flushed
+         */
+        boolean flush() {
+            try {
+                if (writer.flushNextBuffer()) {
+                    flushes.incrementAndGet();
+                    return true;
+                }
+            } catch (IOException | RuntimeException e) {
+                log.warn("flush failed : " + name, e);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * merge scheduler taking a permit of the process wide merge threads , writing through the shared rate limiter
+     */
+    private static final class GovernedMergeScheduler extends ConcurrentMergeScheduler {
+        private final AtomicInteger running = new AtomicInteger();
+        private final AtomicLong merges = new AtomicLong();
+
+        GovernedMergeScheduler() {
+            // the shared limiter throttles io
+            disableAutoIOThrottle();
+        }
+
+        @Override
+        protected void doMerge(MergeSource mergeSource, MergePolicy.OneMerge merge) throws IOException {
+            try {
+                mergePermits.acquire();
+            } catch (InterruptedException e) {
+                throw new ThreadInterruptedException(e);
+            }
+            running.incrementAndGet();
+            try {
+                super.doMerge(mergeSource, merge);
+                merges.incrementAndGet();
+            } finally {
+                running.decrementAndGet();
+                mergePermits.release();
+            }
+        }
+
+        @Override
+        public Directory wrapForMerge(MergePolicy.OneMerge merge, Directory in) {
+            Directory dir = super.wrapForMerge(merge, in);
+            return new FilterDirectory(dir) {
+                @Override
+                public IndexOutput createOutput(String name, IOContext context) throws IOException {
+                    IndexOutput out = in.createOutput(name, context);
+                    return mergeRate.getMBPerSec() > 0 ? new RateLimitedIndexOutput(mergeRate, out) : out;
+                }
+            };
+        }
+    }
+
+    /**
+     * rate limiter shared by merge threads
+     */
+    private static final class GlobalRateLimiter extends RateLimiter.SimpleRateLimiter {
+        GlobalRateLimiter() {
+            super(0);
+        }
+
+        @Override
+        public synchronized long pause(long bytes) {
+            return getMBPerSec() > 0 ? super.pause(bytes) : 0;
+        }
+
+        @Override
+        public long getMinPauseCheckBytes() {
+            return getMBPerSec() > 0 ? super.getMinPauseCheckBytes() : Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * semaphore of a changeable size
+     */
+    private static final class ResizableSemaphore extends Semaphore {
+        private static final long serialVersionUID = 1L;
+
+        private int size;
+
+        ResizableSemaphore(int size) {
+            super(size);
+            this.size = size;
+        }
+
+        synchronized void resize(int n) {
+            if (n > size) {
+                release(n - size);
+            } else if (n < size) {
+                reducePermits(size - n);
+            }
+            size = n;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+    }
+}
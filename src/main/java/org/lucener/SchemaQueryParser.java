@@ -0,0 +1,204 @@
+package org.lucener;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.Query;
+
+import java.math.BigInteger;
+
+/**
+ * query parser which knows the fields of a lucener
+ * <p>
+ * numeric , boolean and string fields get exact and range queries of their own type , text fields are analyzed by
+ * the analyzer of the field . wildcard , prefix , fuzzy and regexp queries expand to many terms and are rejected
+ * unless expansions is true .
+ * <p>
+ * not thread safe , as QueryParser
+ */
+public class SchemaQueryParser extends QueryParser {
+
+    /**
+     * lucener for fields
+     */
+    private final Lucener<?> lucener;
+
+    /**
+     * allow term expansions or not
+     */
+    private final boolean expansions;
+
+    /**
+     * parser
+     *
+     * @param lucener      lucener for fields
+     * @param defaultField default field
+     * @param analyzer     per field analyzer
+     * @param expansions   allow wildcard , prefix , fuzzy and regexp queries
+     */
+    public SchemaQueryParser(Lucener<?> lucener, String defaultField, Analyzer analyzer, boolean expansions) {
+        super(defaultField, analyzer);
+        this.lucener = lucener;
+        this.expansions = expansions;
+    }
+
+    @Override
+    protected Query getFieldQuery(String field, String queryText, boolean quoted) throws ParseException {
+        FieldDesc fd = field(field);
+        if (fd.isTokenized()) {
+            return super.getFieldQuery(field, queryText, quoted);
+        }
+        return exact(field, fd, queryText);
+    }
+
+    @Override
+    protected Query getFieldQuery(String field, String queryText, int slop) throws ParseException {
+        FieldDesc fd = field(field);
+        if (fd.isTokenized()) {
+            return super.getFieldQuery(field, queryText, slop);
+        }
+        return exact(field, fd, queryText);
+    }
+
+    @Override
+    protected Query getRangeQuery(String field, String part1, String part2, boolean startInclusive, boolean endInclusive) throws ParseException {
+        FieldDesc fd = field(field);
+        Class<?> type = fd.getInner();
+        String lower = "*".equals(part1) ? null : part1;
+        String upper = "*".equals(part2) ? null : part2;
+        try {
+            if (type == Integer.class) {
+                Integer lo = lower == null ? null : Math.addExact(Integer.parseInt(lower), startInclusive ? 0 : 1);
+                Integer up = upper == null ? null : Math.addExact(Integer.parseInt(upper), endInclusive ? 0 : -1);
+                return lucener.buildRangeQuery(field, lo, up);
+            } else if (type == Long.class) {
+                Long lo = lower == null ? null : Math.addExact(Long.parseLong(lower), startInclusive ? 0 : 1);
+                Long up = upper == null ? null : Math.addExact(Long.parseLong(upper), endInclusive ? 0 : -1);
+                return lucener.buildRangeQuery(field, lo, up);
+            } else if (type == Float.class) {
+                Float lo = lower == null ? null : (startInclusive ? Float.parseFloat(lower) : Math.nextUp(Float.parseFloat(lower)));
+                Float up = upper == null ? null : (endInclusive ? Float.parseFloat(upper) : Math.nextDown(Float.parseFloat(upper)));
+                return lucener.buildRangeQuery(field, lo, up);
+            } else if (type == Double.class) {
+                Double lo = lower == null ? null : (startInclusive ? Double.parseDouble(lower) : Math.nextUp(Double.parseDouble(lower)));
+                Double up = upper == null ? null : (endInclusive ? Double.parseDouble(upper) : Math.nextDown(Double.parseDouble(upper)));
+                return lucener.buildRangeQuery(field, lo, up);
+            } else if (type == BigInteger.class) {
+                BigInteger lo = lower == null ? null : new BigInteger(lower).add(startInclusive ? BigInteger.ZERO : BigInteger.ONE);
+                BigInteger up = upper == null ? null : new BigInteger(upper).subtract(endInclusive ? BigInteger.ZERO : BigInteger.ONE);
+                return lucener.buildRangeQuery(field, lo, up);
+            } else if (type == String.class && !fd.isTokenized() && (startInclusive || lower == null) && (endInclusive || upper == null)) {
+                return lucener.buildRangeQuery(field, lower, upper);
+            }
+        } catch (ArithmeticException | IllegalArgumentException e) {
+            throw new ParseException("bad range for field " + field + " : " + e.getMessage());
+        }
+        if (type == String.class && fd.isIndex()) {
+            return super.getRangeQuery(field, part1, part2, startInclusive, endInclusive);
+        }
+        throw new ParseException("range query not supported for field : " + field);
+    }
+
+    @Override
+    protected Query getWildcardQuery(String field, String termStr) throws ParseException {
+        if ("*".equals(field) && "*".equals(termStr)) {
+            return newMatchAllDocsQuery();
+        }
+        expansion(field, "wildcard");
+        return super.getWildcardQuery(field, termStr);
+    }
+
+    @Override
+    protected Query getPrefixQuery(String field, String termStr) throws ParseException {
+        expansion(field, "prefix");
+        return super.getPrefixQuery(field, termStr);
+    }
+
+    @Override
+    protected Query getFuzzyQuery(String field, String termStr, float minSimilarity) throws ParseException {
+        expansion(field, "fuzzy");
+        return super.getFuzzyQuery(field, termStr, minSimilarity);
+    }
+
+    @Override
+    protected Query getRegexpQuery(String field, String termStr) throws ParseException {
+        expansion(field, "regexp");
+        return super.getRegexpQuery(field, termStr);
+    }
+
+    /**
+     * term expansion allowed on the field ?
+     *
+     * @param field
+     * @param kind
+     * @throws ParseException
+     */
+    private void expansion(String field, String kind) throws ParseException {
+        FieldDesc fd = field(field);
+        if (!expansions) {
+            throw new ParseException(kind + " query not allowed : " + field);
+        }
+        if (fd.getInner() != String.class || !fd.isIndex()) {
+            throw new ParseException(kind + " query not supported for field : " + field);
+        }
+    }
+
+    /**
+     * exact query for the field
+     *
+     * @param field
+     * @param fd
+     * @param text
+     * @return
+     * @throws ParseException
+     */
+    private Query exact(String field, FieldDesc fd, String text) throws ParseException {
+        Class<?> type = fd.getInner();
+        if (type == float[].class) {
+            throw new ParseException("vector field not supported : " + field);
+        }
+        Object v;
+        try {
+            if (type == Integer.class) {
+                v = Integer.parseInt(text);
+            } else if (type == Long.class) {
+                v = Long.parseLong(text);
+            } else if (type == Float.class) {
+                v = Float.parseFloat(text);
+            } else if (type == Double.class) {
+                v = Double.parseDouble(text);
+            } else if (type == BigInteger.class) {
+                v = new BigInteger(text);
+            } else if (type == Boolean.class) {
+                if (!"true".equals(text) && !"false".equals(text)) {
+                    throw new IllegalArgumentException("not a boolean");
+                }
+                v = Boolean.valueOf(text);
+            } else {
+                v = text;
+            }
+        } catch (IllegalArgumentException e) {
+            throw new ParseException("bad value for field " + field + " : " + text);
+        }
+        try {
+            return lucener.buildExactQuery(field, v);
+        } catch (IllegalArgumentException e) {
+            throw new ParseException(e.getMessage());
+        }
+    }
+
+    /**
+     * field description
+     *
+     * @param field
+     * @return
+     * @throws ParseException
+     */
+    private FieldDesc field(String field) throws ParseException {
+        FieldDesc fd = lucener.fieldDesc(field);
+        if (fd == null) {
+            throw new ParseException("unknown field : " + field);
+        }
+        return fd;
+    }
+}
@@ -0,0 +1,393 @@
+package org.lucener;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.*;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.StringHelper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.Callable;
+
+/**
+ * lucene index of type T partitioned by hash of the doc id across shards , every shard has its own writer
+ * <p>
+ * documents are written to the owning shard , queries fan out to all shards in parallel and the top docs are merged
+ * by TopDocs.merge with the shardIndex of every hit set to its shard .
+ */
+public class ShardedLucener<T extends DocSerializable<T>> extends MultiLucener<T> implements Closeable {
+    /**
+     * shards
+     */
+    private final List<Lucener<T>> shards;
+    /**
+     * shards by shard index
+     */
+    private final SortedMap<Integer, Lucener<T>> byIndex;
+    /**
+     * index file path
+     */
+    private final String indexPath;
+    /**
+     * type
+     */
+    private final Class<? extends DocSerializable> type;
+
+    /**
+     * sharded lucener for class , shards from Index
+     *
+     * @param entityClass
+     * @return
+     * @throws Exception
+     */
+    public static <U> ShardedLucener forClass(Class<? extends DocSerializable<U>> entityClass) throws Exception {
+        return forClass(entityClass, null);
+    }
+
+    /**
+     * sharded lucener for class , shards from Index
+     *
+     * @param entityClass
+     * @param root        root path
+     * @return
+     * @throws Exception
+     */
+    public static <V> ShardedLucener forClass(Class<? extends DocSerializable<V>> entityClass, String root) throws Exception {
+        Lucener.verifyIndexAnnotation(entityClass);
+        if (!entityClass.getAnnotation(Index.class).replicaPath().isEmpty()) {
+            Lucener.error(entityClass, "replicaPath is not supported by sharded indexes");
+        }
+        int shards = entityClass.getAnnotation(Index.class).shards();
+        if (shards < 1) {
+            Lucener.error(entityClass, "shards should be positive");
+        }
+        Path path = Lucener.indexDir(entityClass, root);
+        return Registry.get(Registry.key(ShardedLucener.class, entityClass, path), () -> new ShardedLucener<>(entityClass, path, shards));
+    }
+
+    /**
+     * init shards under the index path of the class as shard-0 , shard-1 ...
+     *
+     * @param entityClass
+     * @param dir         index path
+     * @param n           shards
+     * @throws Exception
+     */
+    private <U> ShardedLucener(Class<? extends DocSerializable<U>> entityClass, Path dir, int n) throws Exception {
+        super("shard-" + entityClass.getSimpleName(), n);
+        type = entityClass;
+        indexPath = dir.toFile().getAbsolutePath();
+        shards = new ArrayList<>(n);
+        byIndex = new TreeMap<>();
+        for (int i = 0; i < n; i++) {
+            Lucener<T> shard = new Lucener<>(entityClass, dir.resolve("shard-" + i));
+            shards.add(shard);
+            byIndex.put(i, shard);
+        }
+    }
+
+    /**
+     * shard of the doc id
+     *
+     * @param id doc id
+     * @return
+     */
+    public int shardOf(String id) {
+        return Math.floorMod(StringHelper.murmurhash3_x86_32(new BytesRef(id), 0), shards.size());
+    }
+
+    /**
+     * index or update objects , every object goes to its shard and shards are written in parallel
+     *
+     * @param obs
+     * @throws Exception
+     */
+    @SafeVarargs
+    public final void index(T... obs) throws Exception {
+        if (obs == null || obs.length == 0) {
+            return;
+        }
+        if (obs.length == 1) {
+            shard(obs[0]).index(array(type, Collections.singletonList(obs[0])));
+            return;
+        }
+        Map<Lucener<T>, List<T>> grouped = new HashMap<>();
+        for (T ob : obs) {
+            grouped.computeIfAbsent(shard(ob), k -> new ArrayList<>()).add(ob);
+        }
+        List<Callable<Void>> tasks = new ArrayList<>(grouped.size());
+        for (Map.Entry<Lucener<T>, List<T>> e : grouped.entrySet()) {
+            T[] part = array(type, e.getValue());
+            tasks.add(() -> {
+                e.getKey().index(part);
+                return null;
+            });
+        }
+        invokeAll(tasks);
+    }
+
+    /**
+     * shard of the object
+     *
+     * @param ob
+     * @return
+     */
+    private Lucener<T> shard(T ob) throws IllegalAccessException {
+        if (ob == null) {
+            throw new NullPointerException("object to index is null");
+        }
+        String did = shards.get(0).docId(ob);
+        if (did == null || did.isEmpty()) {
+            throw new NullPointerException("doc id is null ");
+        }
+        return shards.get(shardOf(did));
+    }
+
+    /**
+     * get by id from the owning shard
+     *
+     * @param id
+     * @return
+     * @throws Exception
+     */
+    public T get(String id) throws Exception {
+        int shard = shardOf(id);
+        T d = shards.get(shard).get(id);
+        if (d != null) {
+            d.shardIndex = shard;
+        }
+        return d;
+    }
+
+    /**
+     * entity exist ?
+     *
+     * @param id doc id
+     * @return
+     * @throws IOException
+     */
+    public boolean exist(String id) throws IOException {
+        return shards.get(shardOf(id)).exist(id);
+    }
+
+    /**
+     * delete by doc id
+     *
+     * @param id
+     * @return sequence number of the shard
+     * @throws Exception
+     */
+    public long delete(String id) throws Exception {
+        Lucener<T> shard = shards.get(shardOf(id));
+        return shard.deleteDocuments(new Term(shard.docIdField(), id));
+    }
+
+    /**
+     * delete from query on all shards
+     *
+     * @param queries
+     * @throws Exception
+     */
+    public void deleteDocuments(Query... queries) throws Exception {
+        forEach(shards, shard -> shard.deleteDocuments(queries));
+    }
+
+    /**
+     * delete by field value on all shards
+     *
+     * @param field
+     * @param v
+     * @throws Exception
+     */
+    public void deleteDocuments(String field, Object v) throws Exception {
+        Query query = buildExactQuery(field, v);
+        if (query == null) {
+            throw new RuntimeException("query not valid ");
+        }
+        deleteDocuments(query);
+    }
+
+    /**
+     * query
+     *
+     * @param query
+     * @param n
+     * @param sort
+     * @return
+     * @throws Exception
+     */
+    public QueryResult<T> query(Query query, int n, Sort sort) throws Exception {
+        return queryAfter(null, query, n, sort);
+    }
+
+    /**
+     * query after the last entity of previous page
+     *
+     * @param after
+     * @param query
+     * @param n
+     * @param sort
+     * @return
+     * @throws Exception
+     */
+    public QueryResult<T> query(T after, Query query, int n, Sort sort) throws Exception {
+        FieldDoc fd = null;
+        if (after != null) {
+            fd = shards.get(0).fieldDoc(after, sort);
+            fd.shardIndex = after.shardIndex;
+        }
+        return queryAfter(fd, query, n, sort);
+    }
+
+    /**
+     * query by field value
+     *
+     * @param field simpy field or complex field as a.b.c
+     * @param v     value for query
+     * @param n     top n
+     * @param sort
+     * @return
+     * @throws Exception
+     */
+    public QueryResult<T> query(String field, Object v, int n, Sort sort) throws Exception {
+        Query query = buildExactQuery(field, v);
+        return query == null ? QueryResult.empty() : queryAfter(null, query, n, sort);
+    }
+
+    /**
+     * all result
+     *
+     * @param after
+     * @param n
+     * @param sort
+     * @return
+     * @throws Exception
+     */
+    public QueryResult<T> all(T after, int n, Sort sort) throws Exception {
+        return query(after, new MatchAllDocsQuery(), n, sort);
+    }
+
+    /**
+     * k nearest neighbors of the vector , top k of every shard merged by score
+     *
+     * @param field  vector field as a or a.b.c
+     * @param vector query vector
+     * @param k      top k
+     * @param filter only docs match the filter , null for all
+     * @return
+     * @throws Exception
+     */
+    public QueryResult<T> knn(String field, float[] vector, int k, Query filter) throws Exception {
+        return queryAfter(null, new KnnFloatVectorQuery(field, vector, k, filter), k, null);
+    }
+
+    /**
+     * query after the cursor on all shards in parallel
+     *
+     * @param after cursor with the shardIndex of the last hit
+     * @param query
+     * @param n
+     * @param sort
+     * @return
+     * @throws Exception
+     */
+    public QueryResult<T> queryAfter(FieldDoc after, Query query, int n, Sort sort) throws Exception {
+        return queryAfter(after, query, n, sort, byIndex);
+    }
+
+    /**
+     * exact query , same for all shards
+     *
+     * @param field
+     * @param v
+     * @return
+     */
+    public Query buildExactQuery(String field, Object v) {
+        return shards.get(0).buildExactQuery(field, v);
+    }
+
+    /**
+     * range query , same for all shards
+     *
+     * @param field
+     * @param lower
+     * @param upper
+     * @return
+     */
+    public Query buildRangeQuery(String field, Object lower, Object upper) {
+        return shards.get(0).buildRangeQuery(field, lower, upper);
+    }
+
+    /**
+     * sort field , same for all shards
+     *
+     * @param field
+     * @param reverse
+     * @return
+     */
+    public SortField sortField(String field, boolean reverse) {
+        return shards.get(0).sortField(field, reverse);
+    }
+
+    /**
+     * commit all shards
+     *
+     * @throws Exception
+     */
+    public void commit() throws Exception {
+        forEach(shards, Lucener::commit);
+    }
+
+    /**
+     * refresh all shards
+     *
+     * @throws Exception
+     */
+    public void maybeRefreshBlocking() throws Exception {
+        forEach(shards, shard -> {
+            shard.maybeRefreshBlocking();
+            return null;
+        });
+    }
+
+    /**
+     * close all shards
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            close(shards);
+        } finally {
+            shutdown();
+            Registry.evict(Registry.key(ShardedLucener.class, type, Paths.get(indexPath)), this);
+        }
+    }
+
+    /**
+     * shard
+     *
+     * @param i
+     * @return
+     */
+    public Lucener<T> shard(int i) {
+        return shards.get(i);
+    }
+
+    /**
+     * shard count
+     *
+     * @return
+     */
+    public int shards() {
+        return shards.size();
+    }
+
+    public String indexPath() {
+        return indexPath;
+    }
+}
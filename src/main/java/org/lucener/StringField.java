@@ -12,6 +12,12 @@ import java.lang.annotation.Target;
 @Target(ElementType.FIELD)
 public @interface StringField {
 
+    boolean index() default true;
+
     boolean stored() default false;
 
+    boolean sort() default false;
+
+    boolean facet() default false;
+
 }
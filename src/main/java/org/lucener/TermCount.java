@@ -0,0 +1,41 @@
+package org.lucener;
+
+/**
+ * term with doc count
+ */
+public final class TermCount {
+
+    /**
+     * term
+     */
+    private final String term;
+
+    /**
+     * count of docs hold the term
+     */
+    private final long count;
+
+    /**
+     * term with count
+     *
+     * @param term
+     * @param count
+     */
+    public TermCount(String term, long count) {
+        this.term = term;
+        this.count = count;
+    }
+
+    public String getTerm() {
+        return term;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return term + "=" + count;
+    }
+}
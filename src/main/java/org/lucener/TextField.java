@@ -14,7 +14,14 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.RUNTIME)
 @Target(ElementType.FIELD)
 public @interface TextField {
-    
+
+    /**
+     * indexed for full text search , false for a stored only column
+     *
+     * @return
+     */
+    boolean index() default true;
+
     /**
      * stored
      *
@@ -22,6 +29,13 @@ public @interface TextField {
      */
     boolean stored() default false;
 
+    /**
+     * index offsets into postings , so highlighting needs no re-analysis . the field should be stored too
+     *
+     * @return
+     */
+    boolean offsets() default false;
+
     /**
      * analyzer
      *
@@ -0,0 +1,378 @@
+package org.lucener;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.IOUtils;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * append only write ahead log of a lucener , for writes acknowledged but not committed yet
+ * <p>
+ * the log is split by generation as translog-N.tlog , a commit rolls to a new generation and records it in the
+ * commit user data , so older generations can be deleted . a record is length , body and crc32 of the body ,
+ * a truncated or corrupted tail is ignored on replay .
+ * <p>
+ * fsync is batched : a sync waits for the fsync of a concurrent sync if it covers the position , so concurrent
+ * writers share one fsync as a group commit .
+ */
+final class Translog implements Closeable {
+    /**
+     * key for the generation in commit user data
+     */
+    static final String GENERATION = "translog_generation";
+    /**
+     * index op with serialized entity
+     */
+    static final byte INDEX = 1;
+    /**
+     * delete op with terms
+     */
+    static final byte DELETE = 2;
+    /**
+     * file name
+     */
+    private static final String PREFIX = "translog-";
+    private static final String SUFFIX = ".tlog";
+
+    /**
+     * directory of log files
+     */
+    private final Path dir;
+    /**
+     * lock for fsync , before the monitor of this
+     */
+    private final Object syncLock = new Object();
+    /**
+     * current generation
+     */
+    private long generation;
+    /**
+     * current file
+     */
+    private FileOutputStream file;
+    /**
+     * buffered output of current file
+     */
+    private DataOutputStream out;
+    /**
+     * bytes appended , over all generations
+     */
+    private long written;
+    /**
+     * bytes synced , over all generations
+     */
+    private volatile long synced;
+    /**
+     * ops of current generation
+     */
+    private long ops;
+    /**
+     * bytes of current generation
+     */
+    private long bytes;
+
+    /**
+     * open a new generation
+     *
+     * @param dir
+     * @param generation
+     * @throws IOException
+     */
+    Translog(Path dir, long generation) throws IOException {
+        this.dir = dir;
+        open(generation);
+    }
+
+    /**
+     * open the file of the generation , the directory is synced so the new file survives a power loss
+     *
+     * @param generation
+     * @throws IOException
+     */
+    private void open(long generation) throws IOException {
+        this.generation = generation;
+        this.file = new FileOutputStream(path(dir, generation).toFile(), true);
+        try {
+            IOUtils.fsync(dir, true);
+        } catch (IOException e) {
+            IOUtils.closeWhileHandlingException(file);
+            throw e;
+        }
+        this.out = new DataOutputStream(new BufferedOutputStream(file, 64 * 1024));
+        this.ops = 0;
+        this.bytes = 0;
+    }
+
+    /**
+     * append an index op
+     *
+     * @param json serialized entity
+     * @return position after the op , for sync
+     * @throws IOException
+     */
+    long index(String json) throws IOException {
+        byte[] v = json.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream body = new ByteArrayOutputStream(v.length + 5);
+        DataOutputStream data = new DataOutputStream(body);
+        data.writeByte(INDEX);
+        data.writeInt(v.length);
+        data.write(v);
+        return append(body.toByteArray());
+    }
+
+    /**
+     * append a delete op
+     *
+     * @param terms
+     * @return position after the op , for sync
+     * @throws IOException
+     */
+    long delete(Term... terms) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(body);
+        data.writeByte(DELETE);
+        data.writeInt(terms.length);
+        for (Term term : terms) {
+            data.writeUTF(term.field());
+            BytesRef b = term.bytes();
+            data.writeInt(b.length);
+            data.write(b.bytes, b.offset, b.length);
+        }
+        return append(body.toByteArray());
+    }
+
+    /**
+     * append a record
+     *
+     * @param body
+     * @return position after the record
+     * @throws IOException
+     */
+    private synchronized long append(byte[] body) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        out.writeInt(body.length);
+        out.write(body);
+        out.writeInt((int) crc.getValue());
+        int size = body.length + 8;
+        written += size;
+        bytes += size;
+        ops++;
+        return written;
+    }
+
+    /**
+     * fsync to the position , shared with concurrent syncs
+     *
+     * @param position
+     * @throws IOException
+     */
+    void sync(long position) throws IOException {
+        if (synced >= position) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (synced >= position) {
+                return;
+            }
+            long target;
+            FileOutputStream f;
+            synchronized (this) {
+                out.flush();
+                target = written;
+                f = file;
+            }
+            f.getChannel().force(false);
+            synced = target;
+        }
+    }
+
+    /**
+     * fsync all appended
+     *
+     * @throws IOException
+     */
+    void sync() throws IOException {
+        sync(position());
+    }
+
+    /**
+     * position of appended
+     *
+     * @return
+     */
+    synchronized long position() {
+        return written;
+    }
+
+    /**
+     * ops of current generation
+     *
+     * @return
+     */
+    synchronized long ops() {
+        return ops;
+    }
+
+    /**
+     * bytes of current generation
+     *
+     * @return
+     */
+    synchronized long bytes() {
+        return bytes;
+    }
+
+    /**
+     * sync and close current generation , start the next one
+     *
+     * @return the new generation
+     * @throws IOException
+     */
+    long roll() throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                out.flush();
+                file.getChannel().force(false);
+                out.close();
+                synced = written;
+                open(generation + 1);
+                return generation;
+            }
+        }
+    }
+
+    /**
+     * delete generations before the generation
+     *
+     * @param generation
+     * @throws IOException
+     */
+    void trim(long generation) throws IOException {
+        boolean deleted = false;
+        for (Path p : generations(dir, 0).headMap(generation).values()) {
+            deleted |= Files.deleteIfExists(p);
+        }
+        if (deleted) {
+            IOUtils.fsync(dir, true);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                out.flush();
+                file.getChannel().force(false);
+                out.close();
+                synced = written;
+            }
+        }
+    }
+
+    /**
+     * file of the generation
+     *
+     * @param dir
+     * @param generation
+     * @return
+     */
+    static Path path(Path dir, long generation) {
+        return dir.resolve(PREFIX + generation + SUFFIX);
+    }
+
+    /**
+     * log files from the generation , ordered by generation
+     *
+     * @param dir
+     * @param from min generation
+     * @return
+     * @throws IOException
+     */
+    static TreeMap<Long, Path> generations(Path dir, long from) throws IOException {
+        TreeMap<Long, Path> ret = new TreeMap<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, PREFIX + "*" + SUFFIX)) {
+            for (Path p : ds) {
+                String name = p.getFileName().toString();
+                try {
+                    long gen = Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+                    if (gen >= from) {
+                        ret.put(gen, p);
+                    }
+                } catch (NumberFormatException e) {
+                    // not a log file
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * visitor for replay
+     */
+    interface Visitor {
+        void index(String json) throws Exception;
+
+        void delete(Term[] terms) throws Exception;
+    }
+
+    /**
+     * replay the ops of the file , stop at a truncated or corrupted record
+     *
+     * @param file
+     * @param visitor
+     * @return ops replayed
+     * @throws Exception
+     */
+    static long replay(Path file, Visitor visitor) throws Exception {
+        long count = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 64 * 1024))) {
+            while (true) {
+                byte[] body;
+                try {
+                    int length = in.readInt();
+                    if (length <= 0) {
+                        break;
+                    }
+                    body = new byte[length];
+                    in.readFully(body);
+                    int crc = in.readInt();
+                    CRC32 c = new CRC32();
+                    c.update(body);
+                    if ((int) c.getValue() != crc) {
+                        break;
+                    }
+                } catch (EOFException e) {
+                    break;
+                }
+                DataInputStream data = new DataInputStream(new ByteArrayInputStream(body));
+                byte op = data.readByte();
+                if (op == INDEX) {
+                    byte[] v = new byte[data.readInt()];
+                    data.readFully(v);
+                    visitor.index(new String(v, StandardCharsets.UTF_8));
+                } else if (op == DELETE) {
+                    Term[] terms = new Term[data.readInt()];
+                    for (int i = 0; i < terms.length; i++) {
+                        String field = data.readUTF();
+                        byte[] b = new byte[data.readInt()];
+                        data.readFully(b);
+                        terms[i] = new Term(field, new BytesRef(b));
+                    }
+                    visitor.delete(terms);
+                } else {
+                    break;
+                }
+                count++;
+            }
+        }
+        return count;
+    }
+}
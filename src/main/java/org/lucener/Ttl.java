@@ -0,0 +1,16 @@
+package org.lucener;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * expiry time of the entity in epoch millis , on a long field , null or not positive for never
+ * <p>
+ * expired docs are hidden from searches and purged in the background
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface Ttl {
+}
@@ -0,0 +1,52 @@
+package org.lucener;
+
+import org.apache.lucene.index.VectorSimilarityFunction;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * dense float vector for knn search , the field should be float[]
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface VectorField {
+
+    /**
+     * dimensions of the vector
+     *
+     * @return
+     */
+    int dims();
+
+    /**
+     * similarity for knn search
+     *
+     * @return
+     */
+    VectorSimilarityFunction similarity() default VectorSimilarityFunction.COSINE;
+
+    /**
+     * max connections of a node in the HNSW graph , more for better recall and more memory
+     *
+     * @return
+     */
+    int m() default 16;
+
+    /**
+     * candidates tracked when building the HNSW graph , more for better recall and slower indexing
+     *
+     * @return
+     */
+    int beamWidth() default 100;
+
+    /**
+     * int8 scalar quantized vectors for the HNSW graph , about a quarter of the memory of float vectors .
+     * full precision vectors are kept on disk for rescoring
+     *
+     * @return
+     */
+    boolean quantized() default false;
+}
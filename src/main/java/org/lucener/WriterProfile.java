@@ -0,0 +1,62 @@
+package org.lucener;
+
+import org.apache.lucene.codecs.lucene99.Lucene99Codec;
+
+/**
+ * named writer settings
+ */
+public enum WriterProfile {
+    /**
+     * initial load of many documents : large RAM buffer , wide tiers so less merging while loading , no compound files
+     */
+    BULK_LOAD(256, 20, 5 * 1024, 16, 33, false, Lucene99Codec.Mode.BEST_SPEED),
+    /**
+     * lucene defaults with a moderate RAM buffer
+     */
+    BALANCED(64, 10, 5 * 1024, 2, 33, true, Lucene99Codec.Mode.BEST_SPEED),
+    /**
+     * frequent refresh : small RAM buffer and small segments , compound files keep the open files of many small
+     * segments few
+     */
+    LOW_LATENCY_NRT(16, 10, 2 * 1024, 1, 33, true, Lucene99Codec.Mode.BEST_SPEED),
+    /**
+     * rare writes : narrow tiers and large segments so searches visit few segments , deletes reclaimed early ,
+     * stored fields compressed harder
+     */
+    READ_MOSTLY(32, 4, 10 * 1024, 8, 20, false, Lucene99Codec.Mode.BEST_COMPRESSION);
+
+    private final double ramBufferSizeMB;
+    private final double segmentsPerTier;
+    private final double maxMergedSegmentMB;
+    private final double floorSegmentMB;
+    private final double deletesPctAllowed;
+    private final boolean useCompoundFile;
+    private final Lucene99Codec.Mode storedFieldsMode;
+
+    WriterProfile(double ramBufferSizeMB, double segmentsPerTier, double maxMergedSegmentMB, double floorSegmentMB,
+                  double deletesPctAllowed, boolean useCompoundFile, Lucene99Codec.Mode storedFieldsMode) {
+        this.ramBufferSizeMB = ramBufferSizeMB;
+        this.segmentsPerTier = segmentsPerTier;
+        this.maxMergedSegmentMB = maxMergedSegmentMB;
+        this.floorSegmentMB = floorSegmentMB;
+        this.deletesPctAllowed = deletesPctAllowed;
+        this.useCompoundFile = useCompoundFile;
+        this.storedFieldsMode = storedFieldsMode;
+    }
+
+    /**
+     * settings of the profile , free to change
+     *
+     * @return
+     */
+    public WriterSettings settings() {
+        return new WriterSettings()
+                .ramBufferSizeMB(ramBufferSizeMB)
+                .segmentsPerTier(segmentsPerTier)
+                .maxMergedSegmentMB(maxMergedSegmentMB)
+                .floorSegmentMB(floorSegmentMB)
+                .deletesPctAllowed(deletesPctAllowed)
+                .useCompoundFile(useCompoundFile)
+                .storedFieldsMode(storedFieldsMode);
+    }
+}
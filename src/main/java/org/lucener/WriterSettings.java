@@ -0,0 +1,169 @@
+package org.lucener;
+
+import org.apache.lucene.codecs.lucene99.Lucene99Codec;
+import org.apache.lucene.index.FilterMergePolicy;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LiveIndexWriterConfig;
+import org.apache.lucene.index.MergePolicy;
+import org.apache.lucene.index.TieredMergePolicy;
+
+/**
+ * settings of an index writer , from a WriterProfile
+ * <p>
+ * all settings but the stored fields mode can be changed on an open lucener , the stored fields mode is part of
+ * the codec and applies when the index is opened .
+ */
+public final class WriterSettings {
+    /**
+     * RAM buffer of the writer , the ResourceGovernor budget is the upper bound
+     */
+    private double ramBufferSizeMB = 64;
+    /**
+     * flush after this many docs , IndexWriterConfig.DISABLE_AUTO_FLUSH for by RAM only
+     */
+    private int maxBufferedDocs = IndexWriterConfig.DISABLE_AUTO_FLUSH;
+    private double segmentsPerTier = 10;
+    private double maxMergedSegmentMB = 5 * 1024;
+    private double floorSegmentMB = 2;
+    private double deletesPctAllowed = 33;
+    private boolean useCompoundFile = true;
+    private Lucene99Codec.Mode storedFieldsMode = Lucene99Codec.Mode.BEST_SPEED;
+
+    public WriterSettings ramBufferSizeMB(double ramBufferSizeMB) {
+        if (ramBufferSizeMB <= 0) {
+            throw new IllegalArgumentException("ramBufferSizeMB should be positive");
+        }
+        this.ramBufferSizeMB = ramBufferSizeMB;
+        return this;
+    }
+
+    public WriterSettings maxBufferedDocs(int maxBufferedDocs) {
+        if (maxBufferedDocs != IndexWriterConfig.DISABLE_AUTO_FLUSH && maxBufferedDocs < 2) {
+            throw new IllegalArgumentException("maxBufferedDocs should be at least 2");
+        }
+        this.maxBufferedDocs = maxBufferedDocs;
+        return this;
+    }
+
+    public WriterSettings segmentsPerTier(double segmentsPerTier) {
+        this.segmentsPerTier = segmentsPerTier;
+        return this;
+    }
+
+    public WriterSettings maxMergedSegmentMB(double maxMergedSegmentMB) {
+        this.maxMergedSegmentMB = maxMergedSegmentMB;
+        return this;
+    }
+
+    public WriterSettings floorSegmentMB(double floorSegmentMB) {
+        this.floorSegmentMB = floorSegmentMB;
+        return this;
+    }
+
+    public WriterSettings deletesPctAllowed(double deletesPctAllowed) {
+        this.deletesPctAllowed = deletesPctAllowed;
+        return this;
+    }
+
+    public WriterSettings useCompoundFile(boolean useCompoundFile) {
+        this.useCompoundFile = useCompoundFile;
+        return this;
+    }
+
+    public WriterSettings storedFieldsMode(Lucene99Codec.Mode storedFieldsMode) {
+        this.storedFieldsMode = storedFieldsMode;
+        return this;
+    }
+
+    public double getRamBufferSizeMB() {
+        return ramBufferSizeMB;
+    }
+
+    public int getMaxBufferedDocs() {
+        return maxBufferedDocs;
+    }
+
+    public double getSegmentsPerTier() {
+        return segmentsPerTier;
+    }
+
+    public double getMaxMergedSegmentMB() {
+        return maxMergedSegmentMB;
+    }
+
+    public double getFloorSegmentMB() {
+        return floorSegmentMB;
+    }
+
+    public double getDeletesPctAllowed() {
+        return deletesPctAllowed;
+    }
+
+    public boolean isUseCompoundFile() {
+        return useCompoundFile;
+    }
+
+    public Lucene99Codec.Mode getStoredFieldsMode() {
+        return storedFieldsMode;
+    }
+
+    /**
+     * copy
+     *
+     * @return
+     */
+    public WriterSettings copy() {
+        WriterSettings ret = new WriterSettings();
+        ret.ramBufferSizeMB = ramBufferSizeMB;
+        ret.maxBufferedDocs = maxBufferedDocs;
+        ret.segmentsPerTier = segmentsPerTier;
+        ret.maxMergedSegmentMB = maxMergedSegmentMB;
+        ret.floorSegmentMB = floorSegmentMB;
+        ret.deletesPctAllowed = deletesPctAllowed;
+        ret.useCompoundFile = useCompoundFile;
+        ret.storedFieldsMode = storedFieldsMode;
+        return ret;
+    }
+
+    /**
+     * settings of a new writer but the RAM buffer and the codec , which are set by the lucener
+     *
+     * @param config
+     * @return
+     */
+    IndexWriterConfig configure(IndexWriterConfig config) {
+        config.setMergePolicy(new TieredMergePolicy());
+        apply(config);
+        return config;
+    }
+
+    /**
+     * settings of an open writer but the RAM buffer and the codec
+     *
+     * @param config
+     */
+    void apply(LiveIndexWriterConfig config) {
+        config.setMaxBufferedDocs(maxBufferedDocs);
+        config.setUseCompoundFile(useCompoundFile);
+        MergePolicy mp = config.getMergePolicy();
+        // under the retention policy of soft deletes
+        while (mp instanceof FilterMergePolicy) {
+            mp = ((FilterMergePolicy) mp).unwrap();
+        }
+        if (mp instanceof TieredMergePolicy) {
+            TieredMergePolicy tmp = (TieredMergePolicy) mp;
+            tmp.setSegmentsPerTier(segmentsPerTier);
+            tmp.setMaxMergedSegmentMB(maxMergedSegmentMB);
+            tmp.setFloorSegmentMB(floorSegmentMB);
+            tmp.setDeletesPctAllowed(deletesPctAllowed);
+            tmp.setNoCFSRatio(useCompoundFile ? TieredMergePolicy.DEFAULT_NO_CFS_RATIO : 0);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "WriterSettings{ramBufferSizeMB=" + ramBufferSizeMB + ", maxBufferedDocs=" + maxBufferedDocs + ", segmentsPerTier=" + segmentsPerTier
+                + ", maxMergedSegmentMB=" + maxMergedSegmentMB + ", floorSegmentMB=" + floorSegmentMB + ", deletesPctAllowed=" + deletesPctAllowed
+                + ", useCompoundFile=" + useCompoundFile + ", storedFieldsMode=" + storedFieldsMode + '}';
+    }
+}
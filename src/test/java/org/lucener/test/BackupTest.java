@@ -0,0 +1,95 @@
+package org.lucener.test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.Lock;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.lucener.*;
+import org.lucener.util.Mappers;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * incremental hot backup and restore
+ */
+public class BackupTest {
+
+    @Data
+    @Index(prefix = "backup/", translog = true)
+    @EqualsAndHashCode(callSuper = true)
+    public static class BackupDoc extends DocSerializable<BackupDoc> {
+        @DocId
+        private String did;
+        @StringField(stored = true)
+        private String name;
+        @TextField(stored = true)
+        private String content;
+
+        @Override
+        public BackupDoc deserialize(String s) {
+            return Mappers.parseJson(s, new TypeReference<>() {
+            });
+        }
+    }
+
+    private void index(Lucener<BackupDoc> lucener, int from, int to) throws Exception {
+        for (int i = from; i < to; i++) {
+            BackupDoc d = new BackupDoc();
+            d.setDid(String.valueOf(i));
+            d.setName("name-" + i);
+            d.setContent("computer price is so high " + i);
+            lucener.index(d);
+        }
+    }
+
+    @Test
+    public void backupAndRestore(@TempDir Path tmp) throws Exception {
+        String root = tmp.resolve("index").toString();
+        Path first = tmp.resolve("first");
+        Path second = tmp.resolve("second");
+        Lucener<BackupDoc> lucener = Lucener.forClass(BackupDoc.class, root);
+        index(lucener, 0, 10000);
+        Backup b = lucener.backupTo(first);
+        System.out.println(b);
+        assertEquals(0, b.getReused());
+        assertEquals(b.getFiles(), b.getLinked() + b.getCopied());
+        b = lucener.backupTo(second);
+        // incremental , only the files of new segments
+        index(lucener, 10000, 11000);
+        b = lucener.backupTo(second);
+        System.out.println(b);
+        assertTrue(b.getReused() > 0);
+        assertTrue(b.getLinked() + b.getCopied() < b.getFiles());
+        // restore needs the lucener closed
+        assertThrows(RuntimeException.class, () -> Lucener.restore(BackupDoc.class, root, first));
+        index(lucener, 11000, 12000);
+        lucener.close();
+
+        // a writer of another process holds the write lock
+        try (Directory dir = FSDirectory.open(Paths.get(lucener.indexPath())); Lock lock = dir.obtainLock(IndexWriter.WRITE_LOCK_NAME)) {
+            assertThrows(RuntimeException.class, () -> Lucener.restore(BackupDoc.class, root, first));
+        }
+        Lucener.restore(BackupDoc.class, root, first);
+        lucener = Lucener.forClass(BackupDoc.class, root);
+        assertEquals(10000, lucener.docStats().numDocs);
+        assertNull(lucener.get("10000"));
+        lucener.close();
+
+        b = Lucener.restore(BackupDoc.class, root, second);
+        System.out.println(b);
+        assertTrue(b.getReused() > 0);
+        lucener = Lucener.forClass(BackupDoc.class, root);
+        assertEquals(11000, lucener.docStats().numDocs);
+        assertEquals("name-10999", lucener.get("10999").getName());
+        assertNull(lucener.get("11000"));
+        lucener.close();
+    }
+}
@@ -0,0 +1,118 @@
+package org.lucener.test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import org.apache.lucene.index.DirectoryReader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.lucener.*;
+import org.lucener.util.Mappers;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * bulk build by parallel sub indexes
+ */
+public class BulkTest {
+
+    @Data
+    @Index(prefix = "bulk/")
+    @EqualsAndHashCode(callSuper = true)
+    public static class BulkDoc extends DocSerializable<BulkDoc> {
+        @DocId
+        private String did;
+        @StringField(stored = true)
+        private String name;
+        @LongField(stored = true, sort = true)
+        private Long time;
+        @TextField(stored = true)
+        private String content;
+
+        @Override
+        public BulkDoc deserialize(String s) {
+            return Mappers.parseJson(s, new TypeReference<>() {
+            });
+        }
+    }
+
+    private static BulkDoc doc(int i) {
+        BulkDoc d = new BulkDoc();
+        d.setDid(String.valueOf(i));
+        d.setName("name-" + i % 100);
+        d.setTime((long) i);
+        d.setContent("computer price is so high " + i);
+        return d;
+    }
+
+    @Test
+    public void bulkBuild(@TempDir Path root) throws Exception {
+        int size = 200000;
+        Lucener<BulkDoc> sequential = Lucener.forClass(BulkDoc.class, root + "/sequential/");
+        long start = System.nanoTime();
+        for (int i = 0; i < size; i++) {
+            sequential.index(doc(i));
+        }
+        sequential.commit();
+        System.out.println("index : " + (System.nanoTime() - start) / 1000000 + " ms");
+        sequential.close();
+
+        Lucener<BulkDoc> lucener = Lucener.forClass(BulkDoc.class, root + "/parallel/");
+        List<Lucener.BulkPhase> phases = new ArrayList<>();
+        start = System.nanoTime();
+        long built = lucener.bulkBuild(() -> IntStream.range(0, size).mapToObj(BulkTest::doc).iterator(), 0, 1, (phase, docs) -> {
+            if (phases.isEmpty() || phases.get(phases.size() - 1) != phase) {
+                System.out.println(phase + " : " + docs);
+                phases.add(phase);
+            }
+        });
+        System.out.println("bulk build : " + (System.nanoTime() - start) / 1000000 + " ms");
+        assertEquals(size, built);
+        assertEquals(Arrays.asList(Lucener.BulkPhase.INDEX, Lucener.BulkPhase.ADD_INDEXES, Lucener.BulkPhase.FORCE_MERGE, Lucener.BulkPhase.DONE), phases);
+        assertEquals(size, lucener.docStats().numDocs);
+        assertEquals("name-42", lucener.get("142").getName());
+        assertEquals(size, lucener.query(lucener.buildRangeQuery("time", 0L, (long) size), size, null).size());
+        try (DirectoryReader reader = DirectoryReader.open(lucener.directory())) {
+            assertEquals(1, reader.leaves().size());
+        }
+        // temp sub indexes removed
+        String name = new java.io.File(lucener.indexPath()).getName();
+        assertTrue(Arrays.stream(new java.io.File(lucener.indexPath()).getParentFile().list()).noneMatch(f -> f.startsWith(name + ".bulk-")));
+        lucener.close();
+    }
+
+    @Test
+    public void partitions(@TempDir Path root) throws Exception {
+        Lucener<BulkDoc> lucener = Lucener.forClass(BulkDoc.class, root + "/partitions/");
+        List<List<BulkDoc>> partitions = IntStream.range(0, 3)
+                .mapToObj(p -> IntStream.range(p * 1000, p * 1000 + 1000).mapToObj(BulkTest::doc).collect(Collectors.toList()))
+                .collect(Collectors.toList());
+        assertEquals(3000, lucener.bulkBuild(partitions, 0, null));
+        assertEquals(3000, lucener.docStats().numDocs);
+        assertEquals("name-99", lucener.get("2999").getName());
+        // only an initial load
+        assertThrows(RuntimeException.class, () -> lucener.bulkBuild(partitions, 0, null));
+        assertEquals(3000, lucener.docStats().numDocs);
+        lucener.close();
+    }
+
+    @Test
+    public void failure(@TempDir Path root) throws Exception {
+        Lucener<BulkDoc> lucener = Lucener.forClass(BulkDoc.class, root + "/failure/");
+        List<List<BulkDoc>> partitions = IntStream.range(0, 4)
+                .mapToObj(p -> IntStream.range(p * 10000, p * 10000 + 10000).mapToObj(BulkTest::doc).collect(Collectors.toList()))
+                .collect(Collectors.toList());
+        partitions.get(0).set(100, null);
+        assertThrows(NullPointerException.class, () -> lucener.bulkBuild(partitions, 0, null));
+        // the other workers are stopped before the sub indexes are removed
+        assertEquals(0, lucener.docStats().numDocs);
+        String name = new java.io.File(lucener.indexPath()).getName();
+        assertTrue(Arrays.stream(new java.io.File(lucener.indexPath()).getParentFile().list()).noneMatch(f -> f.startsWith(name + ".bulk-")));
+        lucener.close();
+    }
+}
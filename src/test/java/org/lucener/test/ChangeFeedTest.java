@@ -0,0 +1,174 @@
+package org.lucener.test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import org.apache.lucene.index.Term;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.lucener.*;
+import org.lucener.util.Mappers;
+
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * soft deletes and the history of changes
+ */
+public class ChangeFeedTest {
+
+    @Data
+    @Index(prefix = "changes/", softDeletes = true, translog = true)
+    @EqualsAndHashCode(callSuper = true)
+    public static class FeedDoc extends DocSerializable<FeedDoc> {
+        @DocId
+        private String did;
+        @StringField(stored = true)
+        private String name;
+
+        @Override
+        public FeedDoc deserialize(String s) {
+            return Mappers.parseJson(s, new TypeReference<>() {
+            });
+        }
+    }
+
+    @Data
+    @Index(prefix = "changes/", softDeletes = true, changesRetainOps = 100)
+    @EqualsAndHashCode(callSuper = true)
+    public static class ShortFeedDoc extends DocSerializable<ShortFeedDoc> {
+        @DocId
+        private String did;
+        @StringField(stored = true)
+        private String name;
+
+        @Override
+        public ShortFeedDoc deserialize(String s) {
+            return Mappers.parseJson(s, new TypeReference<>() {
+            });
+        }
+    }
+
+    private static FeedDoc doc(int i, String name) {
+        FeedDoc d = new FeedDoc();
+        d.setDid(String.valueOf(i));
+        d.setName(name);
+        return d;
+    }
+
+    @Test
+    public void changesSince(@TempDir Path root) throws Exception {
+        Lucener<FeedDoc> lucener = Lucener.forClass(FeedDoc.class, root.toString());
+        for (int i = 0; i < 1000; i++) {
+            lucener.index(doc(i, "name-" + i));
+        }
+        for (int i = 0; i < 10; i++) {
+            lucener.index(doc(i, "updated-" + i));
+        }
+        lucener.deleteDocuments(new Term("did", "10"));
+        lucener.deleteDocuments("name", "name-11");
+        lucener.maybeRefreshBlocking();
+        assertEquals("updated-0", lucener.get("0").getName());
+        assertNull(lucener.get("10"));
+        assertNull(lucener.get("11"));
+
+        List<Change<FeedDoc>> changes = lucener.changesSince(0, 10000);
+        assertEquals(1012, changes.size());
+        for (int i = 1; i < changes.size(); i++) {
+            assertTrue(changes.get(i).getSeq() > changes.get(i - 1).getSeq());
+        }
+        assertEquals("name-0", changes.get(0).getEntity().getName());
+        Change<FeedDoc> update = changes.get(1000);
+        assertEquals(Change.Op.INDEX, update.getOp());
+        assertEquals("0", update.getId());
+        assertEquals("updated-0", update.getEntity().getName());
+        Change<FeedDoc> delete = changes.get(1010);
+        assertEquals(Change.Op.DELETE, delete.getOp());
+        assertEquals("10", delete.getId());
+        assertNull(delete.getEntity());
+        assertEquals("11", changes.get(1011).getId());
+
+        // incremental , only the new changes
+        long last = changes.get(changes.size() - 1).getSeq();
+        assertEquals(last, lucener.lastSeq());
+        lucener.index(doc(2000, "name-2000"), doc(2001, "name-2001"));
+        long start = System.nanoTime();
+        changes = lucener.changesSince(last, 100);
+        System.out.println("2 changes since " + last + " in " + (System.nanoTime() - start) / 1000 + "us");
+        assertEquals(2, changes.size());
+        assertEquals("2001", changes.get(1).getId());
+
+        // history kept through merges and reopen
+        lucener.forceMerge(1, true);
+        assertEquals(1014, lucener.changesSince(0, 10000).size());
+        last = lucener.lastSeq();
+        lucener.close();
+        lucener = Lucener.forClass(FeedDoc.class, root.toString());
+        assertEquals(last, lucener.lastSeq());
+        lucener.deleteDocuments(new Term("did", "2000"));
+        changes = lucener.changesSince(last, 100);
+        assertEquals(1, changes.size());
+        assertEquals(last + 1, changes.get(0).getSeq());
+        assertEquals(Change.Op.DELETE, changes.get(0).getOp());
+        lucener.close();
+    }
+
+    @Test
+    public void retention(@TempDir Path root) throws Exception {
+        Lucener<ShortFeedDoc> lucener = Lucener.forClass(ShortFeedDoc.class, root.toString());
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 1000; i++) {
+                ShortFeedDoc d = new ShortFeedDoc();
+                d.setDid(String.valueOf(i));
+                d.setName("name-" + round + "-" + i);
+                lucener.index(d);
+            }
+        }
+        lucener.forceMerge(1, true);
+        assertEquals(2900, lucener.retainedSeq());
+        // replaced docs out of the retention are merged away
+        assertTrue(lucener.docStats().maxDoc <= 1100);
+        assertThrows(RuntimeException.class, () -> lucener.changesSince(0, 10));
+        List<Change<ShortFeedDoc>> changes = lucener.changesSince(lucener.retainedSeq(), 1000);
+        assertEquals(100, changes.size());
+        assertEquals(2901, changes.get(0).getSeq());
+        assertEquals("name-2-900", changes.get(0).getEntity().getName());
+        lucener.close();
+    }
+
+    @Test
+    public void bulkBuild(@TempDir Path root) throws Exception {
+        Lucener<FeedDoc> lucener = Lucener.forClass(FeedDoc.class, root.toString());
+        int size = 20000;
+        long[] cursor = new long[1];
+        Set<String> seen = new HashSet<>();
+        // a poller and a foreground write while the sub indexes are built
+        long built = lucener.bulkBuild(() -> IntStream.range(0, size).mapToObj(i -> doc(i, "name-" + i)).iterator(), 2, 0, (phase, docs) -> {
+            if (phase == Lucener.BulkPhase.INDEX && docs == 10000) {
+                try {
+                    lucener.index(doc(size, "foreground"));
+                    List<Change<FeedDoc>> polled = lucener.changesSince(0, size * 2);
+                    for (Change<FeedDoc> c : polled) {
+                        seen.add(c.getId());
+                        cursor[0] = c.getSeq();
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        assertEquals(size, built);
+        // the poller misses no bulk doc behind its cursor
+        for (Change<FeedDoc> c : lucener.changesSince(cursor[0], size * 2)) {
+            seen.add(c.getId());
+        }
+        assertEquals(size + 1, seen.size());
+        assertEquals(size + 1, lucener.changesSince(0, size * 2).size());
+        lucener.close();
+    }
+}
@@ -0,0 +1,136 @@
+package org.lucener.test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import org.apache.lucene.search.Query;
+import org.junit.jupiter.api.Test;
+import org.lucener.*;
+import org.lucener.util.Mappers;
+
+import java.io.File;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * refresh and cold start latency for every directory type
+ */
+public class DirectoryTest {
+
+    private static final String STORED = "./.indices/directory-stored/";
+
+    @Data
+    public static abstract class Doc<T> extends DocSerializable<T> {
+        @DocId
+        private String did;
+        @StringField(stored = true)
+        private String name;
+        @LongField(stored = true, sort = true)
+        private Long time;
+        @TextField(stored = true)
+        private String content;
+    }
+
+    @Index(prefix = "directory/", directory = DirectoryType.MMAP)
+    @EqualsAndHashCode(callSuper = true)
+    public static class MMapDoc extends Doc<MMapDoc> {
+        @Override
+        public MMapDoc deserialize(String s) {
+            return Mappers.parseJson(s, new TypeReference<>() {
+            });
+        }
+    }
+
+    @Index(prefix = "directory/", directory = DirectoryType.NRT_CACHING)
+    @EqualsAndHashCode(callSuper = true)
+    public static class NrtCachingDoc extends Doc<NrtCachingDoc> {
+        @Override
+        public NrtCachingDoc deserialize(String s) {
+            return Mappers.parseJson(s, new TypeReference<>() {
+            });
+        }
+    }
+
+    @Index(prefix = "directory/", directory = DirectoryType.MMAP_PRELOAD)
+    @EqualsAndHashCode(callSuper = true)
+    public static class PreloadDoc extends Doc<PreloadDoc> {
+        @Override
+        public PreloadDoc deserialize(String s) {
+            return Mappers.parseJson(s, new TypeReference<>() {
+            });
+        }
+    }
+
+    @Index(prefix = "directory/", directory = DirectoryType.NIO)
+    @EqualsAndHashCode(callSuper = true)
+    public static class NioDoc extends Doc<NioDoc> {
+        @Override
+        public NioDoc deserialize(String s) {
+            return Mappers.parseJson(s, new TypeReference<>() {
+            });
+        }
+    }
+
+    @Index(prefix = "directory/", directory = DirectoryType.FILE_SWITCH, storedFieldsPath = STORED)
+    @EqualsAndHashCode(callSuper = true)
+    public static class FileSwitchDoc extends Doc<FileSwitchDoc> {
+        @Override
+        public FileSwitchDoc deserialize(String s) {
+            return Mappers.parseJson(s, new TypeReference<>() {
+            });
+        }
+    }
+
+    @Test
+    public void latency() throws Exception {
+        measure(MMapDoc.class, MMapDoc::new);
+        measure(NrtCachingDoc.class, NrtCachingDoc::new);
+        measure(PreloadDoc.class, PreloadDoc::new);
+        measure(NioDoc.class, NioDoc::new);
+        measure(FileSwitchDoc.class, FileSwitchDoc::new);
+        File stored = new File(STORED);
+        assertTrue(stored.isDirectory() && stored.list().length > 0);
+        assertFalse(new File(Lucener.forClass(FileSwitchDoc.class).indexPath(), "stored").exists());
+        Lucener.forClass(FileSwitchDoc.class).close();
+    }
+
+    private <T extends Doc<T>> void measure(Class<T> type, Supplier<T> creator) throws Exception {
+        Lucener<T> lucener = Lucener.forClass(type);
+        int rounds = 50;
+        int batch = 200;
+        long refresh = 0;
+        for (int r = 0; r < rounds; r++) {
+            for (int i = 0; i < batch; i++) {
+                int k = r * batch + i;
+                T d = creator.get();
+                d.setDid(String.valueOf(k));
+                d.setName("name-" + k % 100);
+                d.setTime((long) k);
+                d.setContent("computer price is so high " + k);
+                lucener.index(d);
+            }
+            long start = System.nanoTime();
+            lucener.maybeRefreshBlocking();
+            refresh += System.nanoTime() - start;
+        }
+        lucener.close();
+        // cold start , open and first query
+        long start = System.nanoTime();
+        lucener = Lucener.forClass(type);
+        Query query = lucener.buildExactQuery("name", "name-42");
+        QueryResult<T> ret = lucener.query(query, 10, new org.apache.lucene.search.Sort(lucener.sortField("time", true)));
+        long cold = System.nanoTime() - start;
+        start = System.nanoTime();
+        lucener.query(query, 10, null);
+        long warm = System.nanoTime() - start;
+        System.out.printf("%s refresh avg : %.3f ms , cold open + query : %.3f ms , warm query : %.3f ms%n",
+                type.getAnnotation(Index.class).directory(), refresh / 1e6 / rounds, cold / 1e6, warm / 1e6);
+        assertEquals(rounds * batch / 100, ret.getTotal());
+        if (type != FileSwitchDoc.class) {
+            lucener.close();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package org.lucener.test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import org.junit.jupiter.api.Test;
+import org.lucener.*;
+import org.lucener.util.Mappers;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * shared RAM budget and merge limits of all writers
+ */
+public class GovernorTest {
+
+    @Data
+    public static abstract class Doc<T> extends DocSerializable<T> {
+        @DocId
+        private String did;
+        @StringField(stored = true)
+        private String name;
+        @TextField(stored = true)
+        private String content;
+    }
+
+    @Index(prefix = "governor/", persistence = false)
+    @EqualsAndHashCode(callSuper = true)
+    public static class FirstDoc extends Doc<FirstDoc> {
+        @Override
+        public FirstDoc deserialize(String s) {
+            return Mappers.parseJson(s, new TypeReference<>() {
+            });
+        }
+    }
+
+    @Index(prefix = "governor/", persistence = false)
+    @EqualsAndHashCode(callSuper = true)
+    public static class SecondDoc extends Doc<SecondDoc> {
+        @Override
+        public SecondDoc deserialize(String s) {
+            return Mappers.parseJson(s, new TypeReference<>() {
+            });
+        }
+    }
+
+    @Test
+    public void budget() throws Exception {
+        double budget = ResourceGovernor.getRamBudgetMB();
+        int threads = ResourceGovernor.getMaxMergeThreads();
+        ResourceGovernor.setRamBudgetMB(2);
+        ResourceGovernor.setMaxMergeThreads(1);
+        ResourceGovernor.setMergeMBPerSec(64);
+        Lucener<FirstDoc> first = Lucener.forClass(FirstDoc.class);
+        Lucener<SecondDoc> second = Lucener.forClass(SecondDoc.class);
+        try {
+            for (int r = 0; r < 20; r++) {
+                index(first, FirstDoc::new, r * 1000, 1000);
+                index(second, SecondDoc::new, r * 1000, 1000);
+                assertTrue(ResourceGovernor.ramBytesUsed() <= 2 * 1024 * 1024);
+            }
+            Map<String, ResourceGovernor.Usage> usage = ResourceGovernor.usage();
+            System.out.println(usage);
+            ResourceGovernor.Usage u1 = usage.get(FirstDoc.class.getSimpleName() + "@" + first.indexPath());
+            ResourceGovernor.Usage u2 = usage.get(SecondDoc.class.getSimpleName() + "@" + second.indexPath());
+            assertTrue(u1.getForcedFlushes() > 0);
+            assertTrue(u2.getForcedFlushes() > 0);
+            first.maybeRefreshBlocking();
+            assertEquals("name-19999", first.get("19999").getName());
+        } finally {
+            first.close();
+            second.close();
+            ResourceGovernor.setRamBudgetMB(budget);
+            ResourceGovernor.setMaxMergeThreads(threads);
+            ResourceGovernor.setMergeMBPerSec(0);
+        }
+        assertFalse(ResourceGovernor.usage().containsKey(FirstDoc.class.getSimpleName() + "@" + first.indexPath()));
+    }
+
+    private <T extends Doc<T>> void index(Lucener<T> lucener, Supplier<T> creator, int from, int n) throws Exception {
+        for (int i = from; i < from + n; i++) {
+            T d = creator.get();
+            d.setDid(String.valueOf(i));
+            d.setName("name-" + i);
+            d.setContent("computer price is so high " + i);
+            lucener.index(d);
+        }
+    }
+}
@@ -1,16 +1,30 @@
 package org.lucener.test;
 
-import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.search.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.lucener.DocStats;
+import org.lucener.FacetResult;
 import org.lucener.Lucener;
+import org.lucener.NumericStats;
 import org.lucener.QueryResult;
 
 import java.io.IOException;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 
 public class LuceneIndexTest {
@@ -67,7 +81,7 @@ public class LuceneIndexTest {
 
     @Test
     public void stats() throws Exception {
-        IndexWriter.DocStats stats = lucener.docStats();
+        DocStats stats = lucener.docStats();
         System.out.println(stats.maxDoc);
         System.out.println(stats.numDocs);
     }
@@ -211,6 +225,212 @@ public class LuceneIndexTest {
         }
     }
 
+    @Test
+    public void facet() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            TestEntity en = TestEntity.builder()
+                    .did("facet" + i)
+                    .desc("facet")
+                    .valid(i % 2 == 0)
+                    .tags(new HashSet<>(Arrays.asList("facet", "facet" + i % 3)))
+                    .build();
+            lucener.index(en);
+        }
+        lucener.maybeRefreshBlocking();
+        Query query = lucener.buildExactQuery("desc", "facet");
+        Map<String, FacetResult> facets = lucener.facets(query, 3, "tags", "valid");
+        System.out.println(facets);
+        FacetResult tags = facets.get("tags");
+        assertEquals(10, tags.getTotal());
+        assertEquals("facet", tags.getCounts().get(0).getTerm());
+        assertEquals(10, tags.getCounts().get(0).getCount());
+        assertEquals(4, tags.getCounts().get(1).getCount());
+        assertEquals(5, facets.get("valid").getCounts().get(0).getCount());
+    }
+
+    @Test
+    public void aggregate() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            TestEntity en = TestEntity.builder()
+                    .did("agg" + i)
+                    .desc("agg")
+                    .x(i)
+                    .z((1L << 56) + i)
+                    .zz(Long.MAX_VALUE - i)
+                    .d(i * 0.5)
+                    .build();
+            lucener.index(en);
+        }
+        lucener.maybeRefreshBlocking();
+        Query query = lucener.buildExactQuery("desc", "agg");
+        NumericStats stats = lucener.stats(query, "d");
+        System.out.println(stats);
+        assertEquals(10, stats.getCount());
+        assertEquals(4.5, stats.getMax());
+        assertEquals(22.5, stats.getSum());
+        // long values beyond the precision of double
+        stats = lucener.stats(query, "z");
+        assertEquals(1L << 56, stats.getMinValue());
+        assertEquals((1L << 56) + 9, stats.getMaxValue());
+        assertEquals(10 * (1L << 56) + 45, stats.getSumValue());
+        stats = lucener.stats(query, "zz");
+        assertEquals(Long.MAX_VALUE - 9, stats.getMinValue());
+        assertEquals(BigInteger.valueOf(Long.MAX_VALUE).multiply(BigInteger.TEN).subtract(BigInteger.valueOf(45)), stats.getSumValue());
+        SortedMap<Double, Long> histogram = lucener.histogram(query, "x", 3);
+        System.out.println(histogram);
+        assertEquals(Arrays.asList(0.0, 3.0, 6.0, 9.0), new ArrayList<>(histogram.keySet()));
+        assertEquals(Arrays.asList(3L, 3L, 3L, 1L), new ArrayList<>(histogram.values()));
+        long[] ranges = lucener.rangeHistogram(query, "x", 0, 5, 100);
+        System.out.println(Arrays.toString(ranges));
+        assertArrayEquals(new long[]{5, 5}, ranges);
+        // values out of the bounds are not counted
+        assertArrayEquals(new long[]{2, 2}, lucener.rangeHistogram(query, "d", 1, 2, 3));
+    }
+
+    @Test
+    public void sortByBig() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            TestEntity en = TestEntity.builder()
+                    .did("sort" + i)
+                    .desc("sort")
+                    .big(BigInteger.valueOf(i - 5).shiftLeft(70))
+                    .build();
+            lucener.index(en);
+        }
+        lucener.maybeRefreshBlocking();
+        Query query = lucener.buildExactQuery("desc", "sort");
+        Sort sort = new Sort(lucener.sortField("big", true), lucener.sortField("desc", false));
+        QueryResult<TestEntity> ret = lucener.query(query, 3, sort);
+        int count = 0;
+        BigInteger last = null;
+        while (ret.size() > 0) {
+            for (TestEntity te : ret.getResult()) {
+                if (last != null) {
+                    assertEquals(1, last.compareTo(te.getBig()));
+                }
+                last = te.getBig();
+                count++;
+            }
+            ret = lucener.query(ret.getResult().get(ret.size() - 1), query, 3, sort);
+        }
+        assertEquals(10, count);
+    }
+
+    @Test
+    public void queryByColumn() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            TestEntity en = TestEntity.builder()
+                    .did("column" + i)
+                    .desc("column")
+                    .rank(i)
+                    .code("c" + i)
+                    .x(i)
+                    .build();
+            lucener.index(en);
+        }
+        lucener.maybeRefreshBlocking();
+        BooleanQuery.Builder builder = Lucener.booleanQuery();
+        Lucener.filter(builder, lucener.buildExactQuery("desc", "column"), lucener.buildRangeQuery("rank", 3, 6));
+        QueryResult<TestEntity> ret = lucener.query(builder.build(), 10, null);
+        System.out.println(ret);
+        assertEquals(4, ret.getTotal());
+        builder = Lucener.booleanQuery();
+        Lucener.filter(builder, lucener.buildExactQuery("code", "c7"), lucener.buildRangeQuery("x", 5, null));
+        ret = lucener.query(builder.build(), 10, null);
+        assertEquals(1, ret.getTotal());
+        assertEquals("column7", ret.getResult().get(0).getDid());
+    }
+
+    @Test
+    public void sortBySelector() throws Exception {
+        for (int i = 0; i < 6; i++) {
+            TestVo vo = TestVo.builder()
+                    .listInt(Arrays.asList(i, 10 - i))
+                    .build();
+            TestEntity en = TestEntity.builder()
+                    .did("selector" + i)
+                    .desc("selector")
+                    .vos(Arrays.asList(vo))
+                    .tags(new HashSet<>(Arrays.asList("a" + i, "z" + (5 - i))))
+                    .build();
+            lucener.index(en);
+        }
+        lucener.maybeRefreshBlocking();
+        Query query = lucener.buildExactQuery("desc", "selector");
+        Sort sort = new Sort(lucener.sortField("vos.listInt", false, SortedNumericSelector.Type.MAX));
+        List<String> ids = new ArrayList<>();
+        QueryResult<TestEntity> ret = lucener.query(query, 2, sort);
+        while (ret.size() > 0) {
+            ret.getResult().forEach(te -> ids.add(te.getDid()));
+            ret = lucener.query(ret.getResult().get(ret.size() - 1), query, 2, sort);
+        }
+        // max of [i, 10 - i] is 10 - i for i <= 5 , ascending means i descending
+        assertEquals(Arrays.asList("selector5", "selector4", "selector3", "selector2", "selector1", "selector0"), ids);
+
+        sort = new Sort(lucener.sortField("tags", true, SortedSetSelector.Type.MAX));
+        ids.clear();
+        ret = lucener.query(query, 4, sort);
+        while (ret.size() > 0) {
+            ret.getResult().forEach(te -> ids.add(te.getDid()));
+            ret = lucener.query(ret.getResult().get(ret.size() - 1), query, 4, sort);
+        }
+        assertEquals(Arrays.asList("selector0", "selector1", "selector2", "selector3", "selector4", "selector5"), ids);
+    }
+
+    @Test
+    public void queryString() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            TestEntity en = TestEntity.builder()
+                    .did("parse" + i)
+                    .desc("parse")
+                    .x(i)
+                    .valid(i % 2 == 0)
+                    .content(i < 5 ? "computer price is so high" : "天气也不错")
+                    .build();
+            lucener.index(en);
+        }
+        lucener.maybeRefreshBlocking();
+        Query query = lucener.parse("content", "desc:parse AND (computer OR 不错) AND x:[2 TO 8} AND valid:true");
+        System.out.println(query);
+        QueryResult<TestEntity> ret = lucener.search("content", "desc:parse AND (computer OR 不错) AND x:[2 TO 8} AND valid:true", 10, null);
+        System.out.println(ret);
+        assertEquals(3, ret.getTotal());
+        assertSame(query, lucener.parse("content", "desc:parse AND (computer OR 不错) AND x:[2 TO 8} AND valid:true"));
+        assertThrows(ParseException.class, () -> lucener.parse("content", "compu*"));
+        assertThrows(ParseException.class, () -> lucener.parse("content", "nofield:1"));
+    }
+
+    @Test
+    public void queryWithHighlights() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            TestEntity en = TestEntity.builder()
+                    .did("highlight" + i)
+                    .desc("highlight")
+                    .content("computer price is so high , and i want to go home . 天气也不错。" + i)
+                    .build();
+            lucener.index(en);
+        }
+        lucener.maybeRefreshBlocking();
+        BooleanQuery.Builder builder = Lucener.booleanQuery();
+        Lucener.filter(builder, lucener.buildExactQuery("desc", "highlight"));
+        Lucener.must(builder, lucener.parse("content", "price"));
+        QueryResult<TestEntity> ret = lucener.queryWithHighlights(builder.build(), 10, null, "content");
+        ret.getResult().forEach(te -> System.out.println(te.highlights));
+        assertEquals(5, ret.size());
+        assertTrue(ret.getResult().get(0).highlights.get("content").contains("<b>price</b>"));
+    }
+
+    @Test
+    public void registry() throws Exception {
+        Lucener<TestNrt> a = Lucener.forClass(TestNrt.class, "./.indices/registry/");
+        assertSame(a, Lucener.forClass(TestNrt.class, "./.indices/registry"));
+        assertNotSame(a, Lucener.forClass(TestNrt.class));
+        a.close();
+        Lucener<TestNrt> b = Lucener.forClass(TestNrt.class, "./.indices/registry/");
+        assertNotSame(a, b);
+        b.close();
+    }
+
     @Test
     public void tokens() throws IOException {
         String text = "A股一倒中韩渔警冲突调查：韩警平均每天扣1艘中国渔船";
@@ -0,0 +1,31 @@
+package org.lucener.test;
+
+import org.junit.jupiter.api.Test;
+import org.lucener.Lucener;
+import org.lucener.QueryResult;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NrtTest {
+
+    @Test
+    public void readYourWrites() throws Exception {
+        Lucener<TestNrt> lucener = Lucener.forClass(TestNrt.class);
+        long total = 0;
+        for (int i = 0; i < 20; i++) {
+            String id = "nrt-" + i;
+            long seq = lucener.index(TestNrt.builder().did(id).name("name-" + i).build());
+            assertTrue(seq > 0);
+            long start = System.nanoTime();
+            TestNrt t = lucener.get(id, seq);
+            total += System.nanoTime() - start;
+            assertNotNull(t);
+            assertEquals("name-" + i, t.getName());
+        }
+        System.out.println("wait for generation avg : " + total / 20 / 1000 + " us");
+        long seq = lucener.deleteDocuments("name", "name-0");
+        assertTrue(lucener.waitForGeneration(seq, 1000));
+        QueryResult<TestNrt> ret = lucener.query(lucener.buildExactQuery("name", "name-0"), 10, null, seq);
+        assertEquals(0, ret.getTotal());
+    }
+}
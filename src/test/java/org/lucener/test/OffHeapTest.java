@@ -0,0 +1,131 @@
+package org.lucener.test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.junit.jupiter.api.Test;
+import org.lucener.*;
+import org.lucener.util.Mappers;
+
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * off heap in memory index , cap , spill and release on close
+ */
+public class OffHeapTest {
+
+    @Data
+    public static abstract class Doc<T> extends DocSerializable<T> {
+        @DocId
+        private String did;
+        @StringField(stored = true)
+        private String name;
+        @TextField(stored = true)
+        private String content;
+    }
+
+    @Index(prefix = "offheap/", persistence = false, offHeap = true)
+    @EqualsAndHashCode(callSuper = true)
+    public static class OffHeapDoc extends Doc<OffHeapDoc> {
+        @Override
+        public OffHeapDoc deserialize(String s) {
+            return Mappers.parseJson(s, new TypeReference<>() {
+            });
+        }
+    }
+
+    @Index(prefix = "offheap/", persistence = false, offHeap = true, offHeapMaxMB = 1, offHeapSpill = true)
+    @EqualsAndHashCode(callSuper = true)
+    public static class SpillDoc extends Doc<SpillDoc> {
+        @Override
+        public SpillDoc deserialize(String s) {
+            return Mappers.parseJson(s, new TypeReference<>() {
+            });
+        }
+    }
+
+    @Index(prefix = "offheap/", persistence = false, offHeap = true, offHeapMaxMB = 1)
+    @EqualsAndHashCode(callSuper = true)
+    public static class CappedDoc extends Doc<CappedDoc> {
+        @Override
+        public CappedDoc deserialize(String s) {
+            return Mappers.parseJson(s, new TypeReference<>() {
+            });
+        }
+    }
+
+    @Test
+    public void offHeap() throws Exception {
+        Lucener<OffHeapDoc> lucener = Lucener.forClass(OffHeapDoc.class);
+        OffHeapDirectory dir = (OffHeapDirectory) lucener.directory();
+        index(lucener, OffHeapDoc::new, 10000);
+        lucener.commit();
+        lucener.maybeRefreshBlocking();
+        assertEquals("name-9999", lucener.get("9999").getName());
+        assertEquals("name-42", lucener.get("42").getName());
+        assertTrue(dir.ramBytesUsed() > 0);
+        lucener.close();
+        assertEquals(0, dir.ramBytesUsed());
+    }
+
+    @Test
+    public void spill() throws Exception {
+        Lucener<SpillDoc> lucener = Lucener.forClass(SpillDoc.class);
+        OffHeapDirectory dir = (OffHeapDirectory) lucener.directory();
+        index(lucener, SpillDoc::new, 50000);
+        lucener.commit();
+        lucener.maybeRefreshBlocking();
+        assertEquals("name-49999", lucener.get("49999").getName());
+        assertEquals("name-4242", lucener.get("4242").getName());
+        assertTrue(dir.ramBytesUsed() <= dir.maxBytes());
+        assertTrue(dir.spilledBytes() > 0);
+        lucener.close();
+        assertEquals(0, dir.ramBytesUsed());
+    }
+
+    @Test
+    public void capped() throws Exception {
+        Lucener<CappedDoc> lucener = Lucener.forClass(CappedDoc.class);
+        OffHeapDirectory dir = (OffHeapDirectory) lucener.directory();
+        assertThrows(Exception.class, () -> {
+            index(lucener, CappedDoc::new, 50000);
+            lucener.commit();
+        });
+        assertTrue(dir.ramBytesUsed() <= dir.maxBytes());
+        lucener.close();
+        assertEquals(0, dir.ramBytesUsed());
+    }
+
+    @Test
+    public void closeWithOpenInput() throws Exception {
+        OffHeapDirectory dir = new OffHeapDirectory(0, false);
+        try (IndexOutput out = dir.createOutput("file", IOContext.DEFAULT)) {
+            for (int i = 0; i < 100000; i++) {
+                out.writeInt(i);
+            }
+        }
+        IndexInput in = dir.openInput("file", IOContext.DEFAULT);
+        dir.close();
+        // buffers of an open input outlive the directory
+        assertTrue(dir.ramBytesUsed() > 0);
+        in.seek(4 * 99999);
+        assertEquals(99999, in.readInt());
+        in.close();
+        assertEquals(0, dir.ramBytesUsed());
+    }
+
+    private <T extends Doc<T>> void index(Lucener<T> lucener, Supplier<T> creator, int n) throws Exception {
+        for (int i = 0; i < n; i++) {
+            T d = creator.get();
+            d.setDid(String.valueOf(i));
+            d.setName("name-" + i);
+            d.setContent("computer price is so high " + i);
+            lucener.index(d);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package org.lucener.test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Sort;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.lucener.*;
+import org.lucener.util.Mappers;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PartitionedTest {
+
+    /**
+     * 2024-01-01T00:00:00Z
+     */
+    static final long BASE = 1704067200000L;
+
+    static final long HOUR = Partition.HOUR.millis();
+
+    @Test
+    public void partitions() throws Exception {
+        PartitionedLucener<TestEvent> lucener = PartitionedLucener.forClass(TestEvent.class);
+        TestEvent[] events = new TestEvent[600];
+        for (int i = 0; i < events.length; i++) {
+            // 6 hours , 100 events every hour
+            events[i] = TestEvent.builder()
+                    .did("event-" + i)
+                    .time(BASE + i * (HOUR / 100))
+                    .type(i % 2 == 0 ? "click" : "view")
+                    .build();
+        }
+        lucener.index(events);
+        lucener.commit();
+        lucener.maybeRefreshBlocking();
+        assertEquals(Arrays.asList("2024010100", "2024010101", "2024010102", "2024010103", "2024010104", "2024010105"), lucener.partitions());
+        assertEquals("event-42", lucener.get("event-42").getDid());
+
+        // 1.5 hours from 01:30 , edge partitions are filtered by time
+        QueryResult<TestEvent> ret = lucener.query(BASE + HOUR + HOUR / 2, BASE + 3 * HOUR - 1, lucener.buildExactQuery("type", "click"), 10, null);
+        assertEquals(75, ret.getTotal());
+        // bounds far out of the partitions
+        assertEquals(300, lucener.query(Long.MIN_VALUE, Long.MAX_VALUE, lucener.buildExactQuery("type", "click"), 10, null).getTotal());
+        assertEquals(0, lucener.query(Long.MAX_VALUE, Long.MAX_VALUE, new MatchAllDocsQuery(), 10, null).getTotal());
+        assertNull(lucener.partition(Long.MAX_VALUE));
+
+        // page by time across partitions
+        Sort sort = new Sort(lucener.sortField("time", true));
+        List<Long> times = new ArrayList<>();
+        TestEvent after = null;
+        while (true) {
+            QueryResult<TestEvent> page = lucener.query(after, null, null, new MatchAllDocsQuery(), 64, sort);
+            if (page.size() == 0) {
+                break;
+            }
+            page.getResult().forEach(e -> times.add(e.getTime()));
+            after = page.getResult().get(page.size() - 1);
+        }
+        assertEquals(600, times.size());
+        for (int i = 1; i < times.size(); i++) {
+            assertTrue(times.get(i - 1) > times.get(i));
+        }
+
+        // retention drops whole partitions
+        long start = System.nanoTime();
+        List<String> dropped = lucener.dropBefore(BASE + 2 * HOUR + 1);
+        System.out.println("dropped " + dropped + " in " + (System.nanoTime() - start) / 1000 + " us");
+        assertEquals(Arrays.asList("2024010100", "2024010101"), dropped);
+        assertFalse(new File(lucener.indexPath(), "2024010100").exists());
+        assertEquals(400, lucener.query(new MatchAllDocsQuery(), 10, null).getTotal());
+        assertEquals(Arrays.asList("2024010102", "2024010103"), lucener.retain(2));
+        assertEquals(Arrays.asList("2024010104", "2024010105"), lucener.partitions());
+        assertNull(lucener.get("event-42"));
+        assertThrows(RuntimeException.class, () -> lucener.retain(-1));
+        assertEquals(Arrays.asList("2024010104", "2024010105"), lucener.retain(0));
+        assertTrue(lucener.partitions().isEmpty());
+        assertEquals(0, lucener.query(new MatchAllDocsQuery(), 10, null).getTotal());
+        lucener.close();
+    }
+
+    @Data
+    @Index(partitionField = "time", partition = Partition.DAY, translog = true)
+    @EqualsAndHashCode(callSuper = true)
+    public static class LoggedEvent extends DocSerializable<LoggedEvent> {
+        @DocId
+        private String did;
+        @LongField(stored = true, sort = true)
+        private Long time;
+
+        @Override
+        public LoggedEvent deserialize(String s) {
+            return Mappers.parseJson(s, new TypeReference<>() {
+            });
+        }
+    }
+
+    @Test
+    public void translogPartitions(@TempDir Path root) throws Exception {
+        // the in memory schema lucener has no translog
+        PartitionedLucener<LoggedEvent> lucener = PartitionedLucener.forClass(LoggedEvent.class, root.toString());
+        LoggedEvent e = new LoggedEvent();
+        e.setDid("logged");
+        e.setTime(BASE);
+        lucener.index(e);
+        lucener.close();
+        lucener = PartitionedLucener.forClass(LoggedEvent.class, root.toString());
+        assertEquals("logged", lucener.get("logged").getDid());
+        lucener.close();
+    }
+}
@@ -0,0 +1,100 @@
+package org.lucener.test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import org.apache.lucene.codecs.lucene99.Lucene99Codec;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.LiveIndexWriterConfig;
+import org.apache.lucene.index.TieredMergePolicy;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.lucener.*;
+import org.lucener.util.Mappers;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * writer profiles , bulk load benchmark for every profile and switching at runtime
+ */
+public class ProfileTest {
+
+    @Data
+    @Index(prefix = "profile/")
+    @EqualsAndHashCode(callSuper = true)
+    public static class ProfileDoc extends DocSerializable<ProfileDoc> {
+        @DocId
+        private String did;
+        @StringField(stored = true)
+        private String name;
+        @LongField(stored = true, sort = true)
+        private Long time;
+        @TextField(stored = true)
+        private String content;
+
+        @Override
+        public ProfileDoc deserialize(String s) {
+            return Mappers.parseJson(s, new TypeReference<>() {
+            });
+        }
+    }
+
+    @Test
+    public void bulkLoad(@TempDir Path root) throws Exception {
+        int size = 50000;
+        // warm up the analyzer and jit
+        Lucener<ProfileDoc> warmup = Lucener.builder(ProfileDoc.class).root(root + "/warmup/").build();
+        load(warmup, size / 2);
+        warmup.close();
+        for (WriterProfile profile : WriterProfile.values()) {
+            Lucener<ProfileDoc> lucener = Lucener.builder(ProfileDoc.class).root(root + "/" + profile + "/").profile(profile).build();
+            long start = System.nanoTime();
+            load(lucener, size);
+            lucener.commit();
+            long elapsed = System.nanoTime() - start;
+            int segments;
+            try (DirectoryReader reader = DirectoryReader.open(lucener.directory())) {
+                segments = reader.leaves().size();
+            }
+            System.out.printf("%s : %d docs in %d ms , %.0f docs/s , %d segments%n", profile, size, elapsed / 1000000,
+                    size * 1e9 / elapsed, segments);
+            assertEquals(size, lucener.docStats().numDocs);
+            lucener.close();
+        }
+    }
+
+    private void load(Lucener<ProfileDoc> lucener, int size) throws Exception {
+        for (int i = 0; i < size; i++) {
+            ProfileDoc d = new ProfileDoc();
+            d.setDid(String.valueOf(i));
+            d.setName("name-" + i % 100);
+            d.setTime((long) i);
+            d.setContent("computer price is so high " + i);
+            lucener.index(d);
+        }
+    }
+
+    @Test
+    public void switchProfile() throws Exception {
+        Lucener<ProfileDoc> lucener = Lucener.builder(ProfileDoc.class).root("./.indices/profile/switch/").profile(WriterProfile.BULK_LOAD).build();
+        LiveIndexWriterConfig config = lucener.indexWriter().getConfig();
+        assertFalse(config.getUseCompoundFile());
+        assertEquals(20, ((TieredMergePolicy) config.getMergePolicy()).getSegmentsPerTier());
+        lucener.profile(WriterProfile.LOW_LATENCY_NRT);
+        assertTrue(config.getUseCompoundFile());
+        assertEquals(Math.min(16, ResourceGovernor.getRamBudgetMB()), config.getRAMBufferSizeMB());
+        assertEquals(10, ((TieredMergePolicy) config.getMergePolicy()).getSegmentsPerTier());
+        // stored fields mode is fixed when opened
+        lucener.profile(WriterProfile.READ_MOSTLY);
+        assertEquals(Lucene99Codec.Mode.BEST_SPEED, lucener.writerSettings().getStoredFieldsMode());
+        assertEquals(4, ((TieredMergePolicy) config.getMergePolicy()).getSegmentsPerTier());
+        // settings of the builder are applied to the open instance , forClass leaves it as is
+        Lucener.builder(ProfileDoc.class).root("./.indices/profile/switch/").settings(WriterProfile.BULK_LOAD.settings().maxBufferedDocs(1000)).build();
+        assertEquals(1000, config.getMaxBufferedDocs());
+        Lucener.forClass(ProfileDoc.class, "./.indices/profile/switch/");
+        assertEquals(1000, config.getMaxBufferedDocs());
+        lucener.close();
+    }
+}
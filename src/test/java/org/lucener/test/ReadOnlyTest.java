@@ -0,0 +1,98 @@
+package org.lucener.test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.lucener.*;
+import org.lucener.util.Mappers;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * read only lucener beside the writer of the index
+ */
+public class ReadOnlyTest {
+
+    @Data
+    @Index(prefix = "readonly/", readOnlyRefreshMillis = 0)
+    @EqualsAndHashCode(callSuper = true)
+    public static class ReadOnlyDoc extends DocSerializable<ReadOnlyDoc> {
+        @DocId
+        private String did;
+        @StringField(stored = true)
+        private String name;
+        @TextField(stored = true)
+        private String content;
+
+        @Override
+        public ReadOnlyDoc deserialize(String s) {
+            return Mappers.parseJson(s, new TypeReference<>() {
+            });
+        }
+    }
+
+    private static long count(Lucener<ReadOnlyDoc> lucener) throws Exception {
+        return lucener.query(new MatchAllDocsQuery(), 1, null).getTotal();
+    }
+
+    private static void index(Lucener<ReadOnlyDoc> lucener, int from, int to) throws Exception {
+        for (int i = from; i < to; i++) {
+            ReadOnlyDoc d = new ReadOnlyDoc();
+            d.setDid(String.valueOf(i));
+            d.setName("name-" + i);
+            d.setContent("computer price is so high " + i);
+            lucener.index(d);
+        }
+    }
+
+    @Test
+    public void readOnly(@TempDir Path root) throws Exception {
+        Lucener<ReadOnlyDoc> writer = Lucener.forClass(ReadOnlyDoc.class, root.toString());
+        index(writer, 0, 500);
+        writer.commit();
+        // no write lock , opens beside the writer
+        Lucener<ReadOnlyDoc> reader = Lucener.builder(ReadOnlyDoc.class).root(root.toString()).readOnly(true).build();
+        assertNotSame(writer, reader);
+        assertSame(reader, Lucener.builder(ReadOnlyDoc.class).root(root.toString()).readOnly(true).build());
+        assertSame(writer, Lucener.forClass(ReadOnlyDoc.class, root.toString()));
+        assertTrue(reader.readOnly());
+        assertEquals(500, count(reader));
+        // refreshed by the notification of the new commit , uncommitted writes are not visible
+        index(writer, 500, 600);
+        writer.maybeRefreshBlocking();
+        assertEquals(600, count(writer));
+        assertEquals(500, count(reader));
+        writer.commit();
+        long deadline = System.currentTimeMillis() + 10000;
+        while (count(reader) != 600 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(600, count(reader));
+        assertEquals(600, reader.docStats().numDocs);
+        assertEquals("name-599", reader.get("599").getName());
+        // writes fail fast
+        ReadOnlyDoc d = new ReadOnlyDoc();
+        d.setDid("x");
+        assertThrows(RuntimeException.class, () -> reader.index(d));
+        assertThrows(RuntimeException.class, () -> reader.deleteDocuments(new MatchAllDocsQuery()));
+        assertThrows(RuntimeException.class, () -> reader.forceMerge(1, true));
+        reader.close();
+        writer.close();
+
+        // open latency
+        long start = System.nanoTime();
+        Lucener<ReadOnlyDoc> w = Lucener.forClass(ReadOnlyDoc.class, root.toString());
+        long writerOpen = System.nanoTime() - start;
+        w.close();
+        start = System.nanoTime();
+        Lucener<ReadOnlyDoc> r = Lucener.builder(ReadOnlyDoc.class).root(root.toString()).readOnly(true).build();
+        long readerOpen = System.nanoTime() - start;
+        r.close();
+        System.out.println("open writer : " + writerOpen / 1000 + " us , read only : " + readerOpen / 1000 + " us");
+    }
+}
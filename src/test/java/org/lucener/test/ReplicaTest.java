@@ -0,0 +1,102 @@
+package org.lucener.test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.junit.jupiter.api.Test;
+import org.lucener.*;
+import org.lucener.util.Mappers;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * segments published by the writer to read only replicas
+ */
+public class ReplicaTest {
+
+    @Data
+    @Index(prefix = "replica/", replicaPath = "./.indices/replica/published", replicaPublishMillis = 0, readOnlyRefreshMillis = 50)
+    @EqualsAndHashCode(callSuper = true)
+    public static class ReplicaDoc extends DocSerializable<ReplicaDoc> {
+        @DocId
+        private String did;
+        @StringField(stored = true)
+        private String name;
+        @LongField(stored = true, sort = true)
+        private Long time;
+
+        @Override
+        public ReplicaDoc deserialize(String s) {
+            return Mappers.parseJson(s, new TypeReference<>() {
+            });
+        }
+    }
+
+    @Data
+    @Index(prefix = "replica/", replicaPath = "./.indices/replica/split", shards = 2, partitionField = "time")
+    @EqualsAndHashCode(callSuper = true)
+    public static class SplitReplicaDoc extends DocSerializable<SplitReplicaDoc> {
+        @DocId
+        private String did;
+        @LongField(stored = true, sort = true)
+        private Long time;
+
+        @Override
+        public SplitReplicaDoc deserialize(String s) {
+            return Mappers.parseJson(s, new TypeReference<>() {
+            });
+        }
+    }
+
+    private static long count(Lucener<ReplicaDoc> lucener) throws Exception {
+        return lucener.query(new MatchAllDocsQuery(), 1, null).getTotal();
+    }
+
+    private static void await(Lucener<ReplicaDoc> replica, long expected) throws Exception {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (count(replica) != expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(expected, count(replica));
+    }
+
+    @Test
+    public void replicate() throws Exception {
+        Lucener<ReplicaDoc> primary = Lucener.forClass(ReplicaDoc.class);
+        Lucener<ReplicaDoc> replica = Lucener.replica(ReplicaDoc.class);
+        assertTrue(replica.readOnly());
+        assertFalse(primary.readOnly());
+        for (int i = 0; i < 500; i++) {
+            ReplicaDoc d = new ReplicaDoc();
+            d.setDid(String.valueOf(i));
+            d.setName("name-" + i);
+            d.setTime((long) i);
+            primary.index(d);
+        }
+        assertTrue(primary.publish());
+        assertFalse(primary.publish());
+        await(replica, 500);
+        assertEquals("name-42", replica.get("42").getName());
+        // deletes are published with the segments
+        primary.deleteDocuments(primary.buildRangeQuery("time", 0L, 99L));
+        primary.publish();
+        await(replica, 400);
+        assertNull(replica.get("42"));
+        // writes fail fast
+        ReplicaDoc d = new ReplicaDoc();
+        d.setDid("x");
+        assertThrows(RuntimeException.class, () -> replica.index(d));
+        assertThrows(RuntimeException.class, () -> replica.deleteDocuments(new MatchAllDocsQuery()));
+        assertThrows(RuntimeException.class, replica::commit);
+        replica.close();
+        primary.close();
+    }
+
+    @Test
+    public void splitIndexes() {
+        // shards or partitions would all publish to the one replica path
+        assertThrows(RuntimeException.class, () -> ShardedLucener.forClass(SplitReplicaDoc.class));
+        assertThrows(RuntimeException.class, () -> PartitionedLucener.forClass(SplitReplicaDoc.class));
+    }
+}
@@ -0,0 +1,87 @@
+package org.lucener.test;
+
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Sort;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.lucener.QueryResult;
+import org.lucener.ShardedLucener;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ShardedTest {
+
+    static ShardedLucener<TestShard> lucener = null;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        lucener = ShardedLucener.forClass(TestShard.class);
+        TestShard[] docs = new TestShard[1000];
+        for (int i = 0; i < docs.length; i++) {
+            docs[i] = TestShard.builder()
+                    .did(String.valueOf(i))
+                    .category(i % 2 == 0 ? "even" : "odd")
+                    .rank(i % 10)
+                    .content(i % 3 == 0 ? "computer price is so high" : "天气也不错")
+                    .build();
+        }
+        lucener.index(docs);
+        lucener.maybeRefreshBlocking();
+    }
+
+    @Test
+    public void routing() throws Exception {
+        assertEquals(4, lucener.shards());
+        for (int i = 0; i < lucener.shards(); i++) {
+            long count = lucener.shard(i).docStats().numDocs;
+            System.out.println("shard " + i + " : " + count);
+            assertTrue(count > 0);
+        }
+        TestShard t = lucener.get("42");
+        assertEquals("42", t.getDid());
+        assertEquals(lucener.shardOf("42"), t.shardIndex);
+        assertTrue(lucener.exist("42"));
+        QueryResult<TestShard> ret = lucener.query("category", "odd", 10, null);
+        assertEquals(500, ret.getTotal());
+        assertEquals(10, ret.size());
+    }
+
+    @Test
+    public void pageAcrossShards() throws Exception {
+        // many ties on rank , cursors must break them by shard and doc as the merge does
+        Sort sort = new Sort(lucener.sortField("rank", false));
+        Query query = new MatchAllDocsQuery();
+        Set<String> seen = new HashSet<>();
+        int last = -1;
+        TestShard after = null;
+        while (true) {
+            QueryResult<TestShard> page = lucener.query(after, query, 37, sort);
+            if (page.size() == 0) {
+                break;
+            }
+            for (TestShard t : page.getResult()) {
+                assertTrue(seen.add(t.getDid()), "duplicate " + t.getDid());
+                assertTrue(t.getRank() >= last);
+                last = t.getRank();
+            }
+            after = page.getResult().get(page.size() - 1);
+        }
+        assertEquals(1000, seen.size());
+        // by score
+        seen.clear();
+        after = null;
+        Query text = lucener.shard(0).parse("content", "computer");
+        while (true) {
+            QueryResult<TestShard> page = lucener.query(after, text, 50, null);
+            if (page.size() == 0) {
+                break;
+            }
+            page.getResult().forEach(t -> assertTrue(seen.add(t.getDid())));
+            after = page.getResult().get(page.size() - 1);
+        }
+        assertEquals(334, seen.size());
+    }
+}
@@ -39,19 +39,23 @@ public class TestEntity extends DocSerializable<TestEntity> {
     private Double d;
     @DoubleField(sort = true, stored = true)
     private double dd;
-    @StringField(stored = true)
+    @StringField(stored = true, sort = true)
     private String desc;
-    @TextField(stored = true)
+    @TextField(stored = true, offsets = true)
     private String content;
+    @IntField(index = false, sort = true)
+    private Integer rank;
+    @StringField(index = false, sort = true)
+    private String code;
 
-    @BigIntegerField(stored = true)
+    @BigIntegerField(stored = true, sort = true)
     private BigInteger big;
 
-    @BooleanField(stored = true)
+    @BooleanField(stored = true, facet = true)
     private boolean valid;
 
     @SizeField(stored = true, sort = true)
-    @StringField(stored = false)
+    @StringField(stored = false, facet = true)
     private Set<String> tags;
 
     @SizeField(stored = true, sort = true)
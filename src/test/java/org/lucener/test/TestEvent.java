@@ -0,0 +1,32 @@
+package org.lucener.test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.lucener.*;
+import org.lucener.util.Mappers;
+
+/**
+ * for time partitioned test
+ */
+@Index(partitionField = "time", partition = Partition.HOUR)
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class TestEvent extends DocSerializable<TestEvent> {
+    @DocId
+    private String did;
+    @LongField(stored = true, sort = true)
+    private Long time;
+    @StringField(stored = true)
+    private String type;
+
+    @Override
+    public TestEvent deserialize(String s) {
+        return Mappers.parseJson(s, new TypeReference<>() {
+        });
+    }
+}
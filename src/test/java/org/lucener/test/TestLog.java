@@ -0,0 +1,34 @@
+package org.lucener.test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.lucener.*;
+import org.lucener.util.Mappers;
+
+/**
+ * for translog test
+ */
+@Index(translog = true)
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class TestLog extends DocSerializable<TestLog> {
+    @DocId
+    private String did;
+    @StringField(stored = true)
+    private String name;
+    @LongField(stored = true, sort = true)
+    private Long time;
+    @TextField(stored = true)
+    private String content;
+
+    @Override
+    public TestLog deserialize(String s) {
+        return Mappers.parseJson(s, new TypeReference<>() {
+        });
+    }
+}
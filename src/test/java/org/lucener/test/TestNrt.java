@@ -0,0 +1,30 @@
+package org.lucener.test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.lucener.*;
+import org.lucener.util.Mappers;
+
+/**
+ * for managed refresh test
+ */
+@Index(persistence = false, maxStaleMillis = 5000, minStaleMillis = 10)
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class TestNrt extends DocSerializable<TestNrt> {
+    @DocId
+    private String did;
+    @StringField(stored = true)
+    private String name;
+
+    @Override
+    public TestNrt deserialize(String s) {
+        return Mappers.parseJson(s, new TypeReference<>() {
+        });
+    }
+}
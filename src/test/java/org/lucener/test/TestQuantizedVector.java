@@ -0,0 +1,35 @@
+package org.lucener.test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.lucener.DocId;
+import org.lucener.DocSerializable;
+import org.lucener.Index;
+import org.lucener.VectorField;
+import org.lucener.util.Mappers;
+
+/**
+ * same vector in float and int8 quantized format , for recall benchmark
+ */
+@Index(persistence = false)
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class TestQuantizedVector extends DocSerializable<TestQuantizedVector> {
+    @DocId
+    private String did;
+    @VectorField(dims = 64)
+    private float[] full;
+    @VectorField(dims = 64, quantized = true)
+    private float[] quantized;
+
+    @Override
+    public TestQuantizedVector deserialize(String s) {
+        return Mappers.parseJson(s, new TypeReference<>() {
+        });
+    }
+}
@@ -0,0 +1,34 @@
+package org.lucener.test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.lucener.*;
+import org.lucener.util.Mappers;
+
+/**
+ * for sharded test
+ */
+@Index(persistence = false, shards = 4)
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class TestShard extends DocSerializable<TestShard> {
+    @DocId
+    private String did;
+    @StringField(stored = true)
+    private String category;
+    @IntField(stored = true, sort = true)
+    private Integer rank;
+    @TextField(stored = true)
+    private String content;
+
+    @Override
+    public TestShard deserialize(String s) {
+        return Mappers.parseJson(s, new TypeReference<>() {
+        });
+    }
+}
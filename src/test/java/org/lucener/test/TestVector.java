@@ -0,0 +1,34 @@
+package org.lucener.test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.lucener.*;
+import org.lucener.util.Mappers;
+
+/**
+ * for vector test
+ */
+@Index(persistence = false)
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class TestVector extends DocSerializable<TestVector> {
+    @DocId
+    private String did;
+    @StringField(stored = true)
+    private String category;
+    @TextField(stored = true)
+    private String content;
+    @VectorField(dims = 8, m = 8, beamWidth = 50)
+    private float[] embedding;
+
+    @Override
+    public TestVector deserialize(String s) {
+        return Mappers.parseJson(s, new TypeReference<>() {
+        });
+    }
+}
@@ -0,0 +1,49 @@
+package org.lucener.test;
+
+import org.apache.lucene.index.Term;
+import org.junit.jupiter.api.Test;
+import org.lucener.Lucener;
+
+import java.io.File;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TranslogTest {
+
+    @Test
+    public void replay() throws Exception {
+        Lucener<TestLog> lucener = Lucener.forClass(TestLog.class);
+        int size = 100000;
+        int batch = 100;
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < size; i += batch) {
+            TestLog[] logs = new TestLog[batch];
+            for (int j = 0; j < batch; j++) {
+                int k = i + j;
+                logs[j] = TestLog.builder().did("log-" + k).name("name-" + k % 100).time((long) k).content("computer price is so high " + k).build();
+            }
+            // acknowledged after the translog fsync
+            lucener.index(logs);
+        }
+        lucener.deleteDocuments(new Term("did", "log-0"));
+        System.out.println("index " + size + " with translog : " + (System.currentTimeMillis() - start) + " ms");
+
+        // crash , nothing committed
+        lucener.indexWriter().rollback();
+        lucener.close();
+
+        start = System.currentTimeMillis();
+        lucener = Lucener.forClass(TestLog.class);
+        long cost = System.currentTimeMillis() - start;
+        System.out.println("replay " + lucener.replayed() + " ops : " + cost + " ms , " + lucener.replayed() * 1000 / Math.max(1, cost) + " ops/s");
+        assertEquals(size + 1, lucener.replayed());
+        lucener.maybeRefreshBlocking();
+        assertEquals(size - 1, lucener.docStats().numDocs);
+        assertNull(lucener.get("log-0"));
+        assertEquals("name-42", lucener.get("log-42").getName());
+        // old logs are deleted by the commit after replay
+        File[] logs = new File(lucener.indexPath()).listFiles((dir, name) -> name.endsWith(".tlog"));
+        assertEquals(1, logs.length);
+        lucener.close();
+    }
+}
@@ -0,0 +1,231 @@
+package org.lucener.test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.TermQuery;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.lucener.*;
+import org.lucener.util.Mappers;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * expiry of docs by a Ttl field
+ */
+public class TtlTest {
+
+    @Data
+    @Index(prefix = "ttl/", ttlPurgeMillis = 0, ttlPurgeBatch = 100, ttlDropSegments = true)
+    @EqualsAndHashCode(callSuper = true)
+    public static class Session extends DocSerializable<Session> {
+        @DocId
+        private String did;
+        @StringField(stored = true)
+        private String user;
+        @Ttl
+        private Long expireAt;
+
+        @Override
+        public Session deserialize(String s) {
+            return Mappers.parseJson(s, new TypeReference<>() {
+            });
+        }
+    }
+
+    @Data
+    @Index(prefix = "ttl/", ttlPurgeMillis = 100, softDeletes = true)
+    @EqualsAndHashCode(callSuper = true)
+    public static class CacheEntry extends DocSerializable<CacheEntry> {
+        @DocId
+        private String did;
+        @Ttl
+        @LongField(stored = true)
+        private long expireAt;
+
+        @Override
+        public CacheEntry deserialize(String s) {
+            return Mappers.parseJson(s, new TypeReference<>() {
+            });
+        }
+    }
+
+    @Data
+    @Index(prefix = "ttl/", persistence = false)
+    @EqualsAndHashCode(callSuper = true)
+    public static class VectorSession extends DocSerializable<VectorSession> {
+        @DocId
+        private String did;
+        @TextField(stored = true)
+        private String content;
+        @VectorField(dims = 4)
+        private float[] embedding;
+        @Ttl
+        private Long expireAt;
+
+        @Override
+        public VectorSession deserialize(String s) {
+            return Mappers.parseJson(s, new TypeReference<>() {
+            });
+        }
+    }
+
+    @Data
+    @Index(prefix = "ttl/", ttlPurgeMillis = 0, ttlPurgeBatch = 100, ttlPurgeDocsPerSec = 0, softDeletes = true)
+    @EqualsAndHashCode(callSuper = true)
+    public static class RenewedEntry extends DocSerializable<RenewedEntry> {
+        @DocId
+        private String did;
+        @Ttl
+        @LongField(stored = true)
+        private long expireAt;
+
+        @Override
+        public RenewedEntry deserialize(String s) {
+            return Mappers.parseJson(s, new TypeReference<>() {
+            });
+        }
+    }
+
+    private static Session session(int i, Long expireAt) {
+        Session s = new Session();
+        s.setDid(String.valueOf(i));
+        s.setUser("user-" + i);
+        s.setExpireAt(expireAt);
+        return s;
+    }
+
+    private static long count(Lucener<?> lucener) throws Exception {
+        return lucener.query(new MatchAllDocsQuery(), 1, null).getTotal();
+    }
+
+    @Test
+    public void hideAndPurge(@TempDir Path root) throws Exception {
+        Lucener<Session> lucener = Lucener.forClass(Session.class, root.toString());
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 500; i++) {
+            lucener.index(session(i, now - 1000));
+        }
+        lucener.commit();
+        for (int i = 500; i < 1000; i++) {
+            lucener.index(session(i, i % 2 == 0 ? now - 1000 : null));
+        }
+        long soon = System.currentTimeMillis() + 2000;
+        lucener.index(session(1000, soon));
+        lucener.maybeRefreshBlocking();
+        // expired docs are hidden before the purge
+        assertEquals(251, count(lucener));
+        assertNull(lucener.get("0"));
+        assertNull(lucener.get("500"));
+        assertEquals("user-501", lucener.get("501").getUser());
+        assertNotNull(lucener.get("1000"));
+        Thread.sleep(Math.max(0, soon - System.currentTimeMillis()) + 100);
+        assertNull(lucener.get("1000"));
+        assertEquals(1001, lucener.docStats().numDocs);
+
+        // the committed segment is dropped at once , the rest in batches
+        long start = System.nanoTime();
+        assertEquals(751, lucener.purgeExpired());
+        System.out.println("purged 751 expired docs in " + (System.nanoTime() - start) / 1000 + "us");
+        lucener.commit();
+        assertEquals(250, lucener.docStats().numDocs);
+        assertEquals(250, count(lucener));
+        assertEquals(0, lucener.purgeExpired());
+        lucener.close();
+    }
+
+    @Test
+    public void knnSkipsExpired() throws Exception {
+        Lucener<VectorSession> lucener = Lucener.forClass(VectorSession.class);
+        long now = System.currentTimeMillis();
+        // the expired docs are the nearest to the query
+        for (int i = 0; i < 100; i++) {
+            VectorSession s = new VectorSession();
+            s.setDid(String.valueOf(i));
+            s.setContent("session " + i);
+            s.setEmbedding(i < 50 ? new float[]{1, 0.001f * i, 0.1f, 0.1f} : new float[]{0.1f, 1, 0.001f * i, 0.1f});
+            s.setExpireAt(i < 50 ? now - 1000 : null);
+            lucener.index(s);
+        }
+        lucener.maybeRefreshBlocking();
+        float[] target = {1, 0, 0.1f, 0.1f};
+        List<VectorSession> hits = lucener.knn("embedding", target, 5, null).getResult();
+        assertEquals(5, hits.size());
+        assertTrue(hits.stream().allMatch(s -> Integer.parseInt(s.getDid()) >= 50));
+        hits = lucener.knn("embedding", target, 5, null, 3).getResult();
+        assertEquals(5, hits.size());
+        assertTrue(hits.stream().allMatch(s -> Integer.parseInt(s.getDid()) >= 50));
+        hits = lucener.hybrid(new TermQuery(new Term("content", "session")), "embedding", target, 5, null, Fusion.rrf()).getResult();
+        assertEquals(5, hits.size());
+        assertTrue(hits.stream().allMatch(s -> Integer.parseInt(s.getDid()) >= 50));
+        lucener.close();
+    }
+
+    @Test
+    public void scheduledPurgeWithHistory(@TempDir Path root) throws Exception {
+        Lucener<CacheEntry> lucener = Lucener.forClass(CacheEntry.class, root.toString());
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 200; i++) {
+            CacheEntry e = new CacheEntry();
+            e.setDid(String.valueOf(i));
+            e.setExpireAt(i < 100 ? now - 1 : 0);
+            lucener.index(e);
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        while (lucener.docStats().numDocs > 100 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        lucener.maybeRefreshBlocking();
+        assertEquals(100, count(lucener));
+        // expired docs leave tombstones in the history of changes
+        List<Change<CacheEntry>> changes = lucener.changesSince(0, 1000);
+        assertEquals(300, changes.size());
+        List<Change<CacheEntry>> deletes = changes.stream().filter(c -> c.getOp() == Change.Op.DELETE).collect(Collectors.toList());
+        assertEquals(100, deletes.size());
+        assertTrue(deletes.stream().allMatch(c -> Integer.parseInt(c.getId()) < 100));
+        lucener.close();
+    }
+
+    @Test
+    public void purgeWithRenewals(@TempDir Path root) throws Exception {
+        Lucener<RenewedEntry> lucener = Lucener.forClass(RenewedEntry.class, root.toString());
+        long now = System.currentTimeMillis();
+        int size = 2000;
+        for (int i = 0; i < size; i++) {
+            RenewedEntry e = new RenewedEntry();
+            e.setDid(String.valueOf(i));
+            e.setExpireAt(now - 1);
+            lucener.index(e);
+        }
+        lucener.maybeRefreshBlocking();
+        // even ids are renewed while the expired docs are purged , no renewed doc is lost
+        Thread renew = new Thread(() -> {
+            try {
+                for (int i = 0; i < size; i += 2) {
+                    RenewedEntry e = new RenewedEntry();
+                    e.setDid(String.valueOf(i));
+                    lucener.index(e);
+                }
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        renew.start();
+        lucener.purgeExpired();
+        renew.join();
+        lucener.purgeExpired();
+        lucener.maybeRefreshBlocking();
+        assertEquals(size / 2, count(lucener));
+        for (int i = 0; i < size; i += 2) {
+            assertNotNull(lucener.get(String.valueOf(i)));
+        }
+        lucener.close();
+    }
+}
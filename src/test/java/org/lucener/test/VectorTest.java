@@ -0,0 +1,131 @@
+package org.lucener.test;
+
+import org.apache.lucene.search.Query;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.lucener.Fusion;
+import org.lucener.Lucener;
+import org.lucener.QueryResult;
+
+import org.apache.lucene.index.VectorSimilarityFunction;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class VectorTest {
+
+    static Lucener<TestVector> lucener = null;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        lucener = Lucener.forClass(TestVector.class);
+        Random random = new Random(7);
+        for (int i = 0; i < 1000; i++) {
+            float[] v = new float[8];
+            for (int j = 0; j < v.length; j++) {
+                v[j] = random.nextFloat();
+            }
+            TestVector tv = TestVector.builder()
+                    .did(String.valueOf(i))
+                    .category(i % 2 == 0 ? "even" : "odd")
+                    .content(i % 3 == 0 ? "computer price is so high " + i : "天气也不错")
+                    .embedding(v)
+                    .build();
+            lucener.index(tv);
+        }
+        lucener.maybeRefreshBlocking();
+    }
+
+    @Test
+    public void knn() throws Exception {
+        TestVector target = lucener.get("42");
+        long start = System.currentTimeMillis();
+        QueryResult<TestVector> ret = lucener.knn("embedding", target.getEmbedding(), 5, null);
+        System.out.println(System.currentTimeMillis() - start);
+        System.out.println(ret);
+        assertEquals(5, ret.size());
+        assertEquals("42", ret.getResult().get(0).getDid());
+    }
+
+    @Test
+    public void knnWithFilter() throws Exception {
+        TestVector target = lucener.get("42");
+        Query filter = lucener.buildExactQuery("category", "odd");
+        QueryResult<TestVector> ret = lucener.knn("embedding", target.getEmbedding(), 5, filter);
+        System.out.println(ret);
+        assertEquals(5, ret.size());
+        ret.getResult().forEach(tv -> assertEquals("odd", tv.getCategory()));
+    }
+
+    @Test
+    public void hybrid() throws Exception {
+        TestVector target = lucener.get("42");
+        Query lexical = lucener.parse("content", "computer 42");
+        for (Fusion fusion : new Fusion[]{Fusion.rrf(), Fusion.weighted(0.5f)}) {
+            QueryResult<TestVector> ret = lucener.hybrid(lexical, "embedding", target.getEmbedding(), 5, null, fusion);
+            System.out.println(fusion + " : " + ret);
+            assertEquals(5, ret.size());
+            // 42 is the best of both lists
+            assertEquals("42", ret.getResult().get(0).getDid());
+        }
+        Query filter = lucener.buildExactQuery("category", "odd");
+        QueryResult<TestVector> ret = lucener.hybrid(lexical, "embedding", target.getEmbedding(), 5, filter, Fusion.rrf());
+        assertEquals(5, ret.size());
+        ret.getResult().forEach(tv -> assertEquals("odd", tv.getCategory()));
+    }
+
+    @Test
+    public void quantizedRecall() throws Exception {
+        Lucener<TestQuantizedVector> ql = Lucener.forClass(TestQuantizedVector.class);
+        int size = 5000;
+        int k = 10;
+        Random random = new Random(11);
+        List<float[]> vectors = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            float[] v = new float[64];
+            for (int j = 0; j < v.length; j++) {
+                v[j] = (float) random.nextGaussian();
+            }
+            vectors.add(v);
+            ql.index(TestQuantizedVector.builder().did(String.valueOf(i)).full(v).quantized(v).build());
+        }
+        ql.commit();
+        ql.maybeRefreshBlocking();
+        int queries = 50;
+        double[] recall = new double[3];
+        long[] nanos = new long[3];
+        for (int q = 0; q < queries; q++) {
+            float[] target = new float[64];
+            for (int j = 0; j < target.length; j++) {
+                target[j] = (float) random.nextGaussian();
+            }
+            // exact top k by brute force
+            Integer[] ids = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                ids[i] = i;
+            }
+            Arrays.sort(ids, (a, b) -> Float.compare(VectorSimilarityFunction.COSINE.compare(target, vectors.get(b)), VectorSimilarityFunction.COSINE.compare(target, vectors.get(a))));
+            Set<String> exact = Arrays.stream(ids, 0, k).map(String::valueOf).collect(Collectors.toSet());
+            // all take k * 3 candidates from the graph
+            for (int m = 0; m < 3; m++) {
+                long start = System.nanoTime();
+                List<TestQuantizedVector> ret = m == 0 ? ql.knn("full", target, k, null, 3).getResult()
+                        : m == 1 ? ql.knn("quantized", target, k * 3, null).getResult().subList(0, k)
+                        : ql.knn("quantized", target, k, null, 3).getResult();
+                nanos[m] += System.nanoTime() - start;
+                assertEquals(k, ret.size());
+                recall[m] += ret.stream().filter(t -> exact.contains(t.getDid())).count() / (double) k;
+            }
+        }
+        String[] names = {"float32", "int8", "int8 + rescore"};
+        for (int m = 0; m < 3; m++) {
+            System.out.printf("%s recall@%d of %d candidates : %.3f , latency : %.3f ms%n", names[m], k, k * 3, recall[m] / queries, nanos[m] / 1e6 / queries);
+        }
+        // rescoring brings int8 back to the recall of float32 at the same candidates
+        assertTrue(recall[2] / queries >= recall[0] / queries - 0.05);
+        assertTrue(recall[2] / queries >= recall[1] / queries);
+    }
+}